@@ -16,6 +16,7 @@ import javax.servlet.http.HttpServlet;
 import javax.sql.DataSource;
 
 import org.jasig.cas.client.session.SingleSignOutHttpSessionListener;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.jdbc.DataSourceBuilder;
@@ -35,6 +36,7 @@ import com.databasepreservation.common.client.ViewerConstants;
 import com.databasepreservation.common.filter.OnOffFilter;
 import com.databasepreservation.common.server.BrowserServiceImpl;
 import com.databasepreservation.common.server.ViewerConfiguration;
+import com.databasepreservation.common.server.ViewerFactory;
 
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
@@ -105,6 +107,15 @@ public class DBVTK {
     return filter;
   }
 
+  /**
+   * Destroyed with the other beans, before the web server stops and the
+   * servlets close the Solr client
+   */
+  @Bean
+  public DisposableBean viewerFactoryShutdown() {
+    return ViewerFactory::shutdown;
+  }
+
   /*********************
    * Authentication
    *********************/
@@ -13,7 +13,6 @@ import java.io.OutputStream;
 import java.nio.file.Path;
 
 import org.apache.commons.io.IOUtils;
-import org.roda.core.data.exceptions.NotFoundException;
 
 import com.databasepreservation.common.api.common.ConsumesOutputStream;
 import com.databasepreservation.common.client.ViewerConstants;
@@ -43,10 +42,7 @@ public class DownloadUtils {
     };
   }
 
-  public static StreamResponse getReportResourceStreamResponse(final Path filepath, InputStream inputStream)
-    throws IOException, NotFoundException {
-    StreamResponse streamResponse = null;
-
+  public static StreamResponse getReportResourceStreamResponse(final Path filepath) {
     String resourceId = filepath.getFileName().toString();
     String mimeType;
     if (resourceId.endsWith(".html")) {
@@ -66,26 +62,7 @@ public class DownloadUtils {
       mimeType = ViewerConstants.MEDIA_TYPE_APPLICATION_OCTET_STREAM;
     }
 
-    ConsumesOutputStream stream = new ConsumesOutputStream() {
-      @Override
-      public String getMediaType() {
-        return mimeType;
-      }
-
-      @Override
-      public String getFileName() {
-        return resourceId;
-      }
-
-      @Override
-      public void consumeOutputStream(OutputStream out) throws IOException {
-        IOUtils.copy(inputStream, out);
-      }
-    };
-
-    streamResponse = new StreamResponse(resourceId, mimeType, stream);
-
-    return streamResponse;
+    return new FileStreamResponse(filepath, resourceId, mimeType);
   }
 
 }
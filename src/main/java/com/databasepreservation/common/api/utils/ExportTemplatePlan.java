@@ -0,0 +1,252 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.api.utils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.databasepreservation.common.client.ViewerConstants;
+import com.databasepreservation.common.client.exceptions.RESTException;
+import com.databasepreservation.common.client.models.status.collection.ColumnStatus;
+import com.databasepreservation.common.client.models.status.collection.NestedColumnStatus;
+import com.databasepreservation.common.client.models.status.collection.TableStatus;
+import com.databasepreservation.common.client.models.structure.ViewerCell;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.client.models.structure.ViewerType;
+import com.databasepreservation.common.client.tools.MimeTypeUtils;
+import com.databasepreservation.common.client.tools.ViewerStringUtils;
+import com.databasepreservation.common.utils.FilenameUtils;
+import com.databasepreservation.common.utils.LobManagerUtils;
+import com.github.jknack.handlebars.Template;
+
+/**
+ * The templates of a table resolved once for a whole export: which columns
+ * have export, MIME type and nested templates (already compiled) and the
+ * names under which each cell is given to the templates. Row values are then
+ * obtained without looking at the table configuration again.
+ */
+public class ExportTemplatePlan {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExportTemplatePlan.class);
+
+  private final TableStatus configTable;
+  private final List<ColumnStatus> columns = new ArrayList<>();
+  private final List<String> templateKeys = new ArrayList<>();
+  private final Map<Integer, ColumnStatus> binaryColumns = new HashMap<>();
+  private final Map<Integer, Template> exportTemplates = new HashMap<>();
+  private final Map<Integer, Template> mimeTypeTemplates = new HashMap<>();
+  private final Map<String, Template> nestedTemplates = new HashMap<>();
+
+  public ExportTemplatePlan(TableStatus configTable) {
+    this.configTable = configTable;
+    final String autoDetectMimeTypeTemplate = MimeTypeUtils.getAutoDetectMimeTypeTemplate();
+
+    for (ColumnStatus column : configTable.getColumns()) {
+      columns.add(column);
+      templateKeys.add(ViewerStringUtils.replaceAllFor(column.getCustomName(), "\\s", "_"));
+
+      if (ViewerType.dbTypes.BINARY.equals(column.getType())) {
+        binaryColumns.putIfAbsent(column.getColumnIndex(), column);
+      }
+
+      final String template = column.getExportStatus().getTemplateStatus().getTemplate();
+      if (ViewerType.dbTypes.NESTED.equals(column.getType())) {
+        if (template != null && !template.isEmpty()) {
+          nestedTemplates.putIfAbsent(column.getId(), compileNestedTemplate(template));
+        }
+      }
+    }
+
+    // the templates of a column index are those of the first column with it,
+    // as with TableStatus#getColumnByIndex
+    for (ColumnStatus column : columns) {
+      if (configTable.getColumnByIndex(column.getColumnIndex()) != column) {
+        continue;
+      }
+
+      final String template = column.getExportStatus().getTemplateStatus().getTemplate();
+      if (!ViewerStringUtils.isBlank(template)) {
+        exportTemplates.put(column.getColumnIndex(), HandlebarsUtils.compileTemplate(template));
+      }
+
+      final String mimeTypeTemplate = column.getApplicationType();
+      if (!ViewerStringUtils.isBlank(mimeTypeTemplate) && mimeTypeTemplate.equals(autoDetectMimeTypeTemplate)) {
+        mimeTypeTemplates.put(column.getColumnIndex(), HandlebarsUtils.compileTemplate(mimeTypeTemplate));
+      }
+    }
+  }
+
+  public TableStatus getConfigTable() {
+    return configTable;
+  }
+
+  /**
+   * @return the CSV values of the row for the given fields
+   */
+  public List<String> getCellValues(ViewerRow row, List<String> fieldsToReturn) {
+    List<String> values = new ArrayList<>();
+    Map<String, String> rowValues = null;
+
+    for (String solrColumnName : fieldsToReturn) {
+      if (ViewerConstants.SOLR_ROWS_TABLE_ID.equals(solrColumnName)
+        || ViewerConstants.SOLR_ROWS_TABLE_UUID.equals(solrColumnName)) {
+        continue;
+      }
+
+      final ColumnStatus columnConfig = configTable.getColumnById(solrColumnName);
+
+      if (columnConfig != null && ViewerType.dbTypes.NESTED.equals(columnConfig.getType())) {
+        // treat nested
+        if (!row.getNestedRowList().isEmpty()) {
+          final Template template = nestedTemplates.get(solrColumnName);
+          StringBuilder stringBuilder = new StringBuilder();
+          if (template != null) {
+            row.getNestedRowList().forEach(nestedRow -> {
+              if (nestedRow.getNestedUUID().equals(solrColumnName)) {
+                final Map<String, String> map = cellsToJson(nestedRow.getCells(), columnConfig.getNestedColumns());
+                try {
+                  stringBuilder.append(template.apply(map));
+                } catch (IOException e) {
+                  LOGGER.error("Could not apply the template of nested column {}", solrColumnName, e);
+                }
+              }
+            });
+          }
+          values.add(stringBuilder.toString());
+        }
+      } else {
+        // treat non-nested
+        final ViewerCell cell = row.getCells().get(solrColumnName);
+        if (cell == null) {
+          values.add("");
+        } else if (columnConfig != null) {
+          if (rowValues == null) {
+            rowValues = getRowValues(row);
+          }
+          final String applied = apply(exportTemplates.get(columnConfig.getColumnIndex()), rowValues, row,
+            columnConfig.getColumnIndex());
+          if (StringUtils.isNotBlank(applied)) {
+            if (columnConfig.getType().equals(ViewerType.dbTypes.BINARY)) {
+              values.add(FilenameUtils.sanitizeFilename(applied));
+            } else if (columnConfig.getSearchStatus().getList().isShowContent()) {
+              values.add(cell.getValue());
+            } else {
+              values.add(applied);
+            }
+          } else {
+            if (columnConfig.getType().equals(ViewerType.dbTypes.BINARY)) {
+              values.add(LobManagerUtils.getDefaultFilename(row.getUuid()));
+            } else if (columnConfig.getType().equals(ViewerType.dbTypes.NUMERIC_FLOATING_POINT)) {
+              values.add(new BigDecimal(cell.getValue()).toPlainString());
+            } else {
+              values.add(cell.getValue());
+            }
+          }
+        }
+      }
+    }
+
+    return values;
+  }
+
+  /**
+   * @return the export template of the column applied to the row, or null if
+   *         the column has no export template
+   */
+  public String applyExportTemplate(ViewerRow row, int columnIndex) {
+    final Template template = exportTemplates.get(columnIndex);
+    return template == null ? null : apply(template, getRowValues(row), row, columnIndex);
+  }
+
+  /**
+   * @return the auto detected MIME type template of the column applied to the
+   *         row, or null if the column does not use it
+   */
+  public String applyMimeTypeTemplate(ViewerRow row, int columnIndex) {
+    final Template template = mimeTypeTemplates.get(columnIndex);
+    return template == null ? null : apply(template, getRowValues(row), row, columnIndex);
+  }
+
+  private String apply(Template template, Map<String, String> rowValues, ViewerRow row, int columnIndex) {
+    if (template == null) {
+      return null;
+    }
+
+    Map<String, String> map = rowValues;
+    final ColumnStatus binaryColumn = binaryColumns.get(columnIndex);
+    if (binaryColumn != null) {
+      final ViewerCell cell = row.getCells().get(binaryColumn.getId());
+      if (cell != null) {
+        map = new HashMap<>(rowValues);
+        map.put(ViewerConstants.TEMPLATE_LOB_ROW_INDEX, row.getUuid());
+        map.put(ViewerConstants.TEMPLATE_LOB_COLUMN_INDEX, String.valueOf(columnIndex));
+
+        if (StringUtils.isNotBlank(cell.getMimeType())) {
+          map.put(ViewerConstants.TEMPLATE_LOB_AUTO_DETECTED_MIME_TYPE, cell.getMimeType());
+        }
+
+        if (StringUtils.isNotBlank(cell.getFileExtension())) {
+          map.put(ViewerConstants.TEMPLATE_LOB_AUTO_DETECTED_EXTENSION, cell.getFileExtension());
+        }
+      }
+    }
+
+    try {
+      return template.apply(map);
+    } catch (IOException e) {
+      throw new RESTException(e);
+    }
+  }
+
+  private Map<String, String> getRowValues(ViewerRow row) {
+    final Map<String, ViewerCell> cells = row.getCells();
+    Map<String, String> map = new HashMap<>();
+
+    for (int i = 0; i < columns.size(); i++) {
+      ViewerCell cell = cells.get(columns.get(i).getId());
+      if (cell != null) {
+        map.put(templateKeys.get(i), cell.getValue());
+      }
+    }
+
+    return map;
+  }
+
+  private static Template compileNestedTemplate(String template) {
+    try {
+      return HandlebarsUtils.compileTemplate(template);
+    } catch (RESTException e) {
+      LOGGER.error("Could not compile nested column template {}", template, e);
+      return null;
+    }
+  }
+
+  private static Map<String, String> cellsToJson(Map<String, ViewerCell> cells, NestedColumnStatus nestedConfig) {
+    final List<String> nestedFields = nestedConfig.getNestedFields();
+    final List<String> nestedSolrNames = nestedConfig.getNestedSolrNames();
+    int index = 0;
+
+    Map<String, String> nestedValues = new HashMap<>();
+
+    if (cells != null && !cells.isEmpty()) {
+      for (String nestedField : nestedFields) {
+        final String solrName = nestedSolrNames.get(index++);
+        nestedValues.put(nestedField, cells.get(solrName).getValue());
+      }
+    }
+
+    return nestedValues;
+  }
+}
@@ -0,0 +1,40 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.api.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.databasepreservation.common.api.common.ConsumesOutputStream;
+
+/**
+ * A stream response of a whole file, sent with {@link FileTransfer}
+ */
+public class FileStreamResponse extends StreamResponse {
+
+  public FileStreamResponse(final Path file, final String filename, final String mediaType) {
+    super(filename, mediaType, new ConsumesOutputStream() {
+      @Override
+      public void consumeOutputStream(OutputStream out) throws IOException {
+        FileTransfer.transfer(file, 0, Files.size(file), out);
+      }
+
+      @Override
+      public String getFileName() {
+        return filename;
+      }
+
+      @Override
+      public String getMediaType() {
+        return mediaType;
+      }
+    });
+  }
+}
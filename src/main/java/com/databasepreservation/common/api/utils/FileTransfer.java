@@ -0,0 +1,113 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.api.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.databasepreservation.common.server.ViewerConfiguration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Sends a part of a file to a response. When the servlet container supports
+ * it (Tomcat's sendfile), the file is handed to the container with
+ * {@link #sendfile}, and the container sends it after the request is processed
+ * without copying it through the heap. Otherwise {@link #transfer} reads the
+ * file into a buffer of download.buffer.size_bytes, reused by each thread, and
+ * writes it straight to the output stream.
+ *
+ * The bytes sent and the time spent in each mode are exposed in the
+ * dbvtk.download.bytes and dbvtk.download.transfers metrics. With sendfile the
+ * time is only that of handing the file to the container.
+ */
+public class FileTransfer {
+  private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+  private static final boolean SENDFILE = ViewerConfiguration.getInstance().getViewerConfigurationAsBoolean(true,
+    ViewerConfiguration.PROPERTY_DOWNLOAD_SENDFILE_ENABLED);
+  private static final int BUFFER_SIZE = Math.max(4096, ViewerConfiguration.getInstance()
+    .getViewerConfigurationAsInt(64 * 1024, ViewerConfiguration.PROPERTY_DOWNLOAD_BUFFER_SIZE));
+
+  private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+  private static final Counter SENDFILE_BYTES = Metrics.counter("dbvtk.download.bytes", "mode", "sendfile");
+  private static final Counter STREAM_BYTES = Metrics.counter("dbvtk.download.bytes", "mode", "stream");
+  private static final Timer SENDFILE_TRANSFERS = Metrics.timer("dbvtk.download.transfers", "mode", "sendfile");
+  private static final Timer STREAM_TRANSFERS = Metrics.timer("dbvtk.download.transfers", "mode", "stream");
+
+  private FileTransfer() {
+  }
+
+  /**
+   * Hands count bytes of the file, from the given position, to the servlet
+   * container, if it supports sendfile and it is enabled
+   * (download.sendfile.enabled). The response must then have no entity, but
+   * must declare its Content-Length.
+   *
+   * @return true if the container sends the file, false if it must be written
+   *         with {@link #transfer}
+   */
+  public static boolean sendfile(HttpServletRequest request, Path path, long position, long count) {
+    if (!SENDFILE || request == null || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+      return false;
+    }
+
+    long start = System.nanoTime();
+    request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+    request.setAttribute(SENDFILE_START, position);
+    // exclusive
+    request.setAttribute(SENDFILE_END, position + count);
+    SENDFILE_BYTES.increment(count);
+    SENDFILE_TRANSFERS.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    return true;
+  }
+
+  /**
+   * Writes count bytes of the file, from the given position, to the output
+   * (which is not closed)
+   *
+   * @throws EOFException
+   *           if the file ends before
+   */
+  public static void transfer(Path path, long position, long count, OutputStream out) throws IOException {
+    long start = System.nanoTime();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      byte[] buffer = BUFFERS.get();
+      ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+      long current = position;
+      long end = position + count;
+      while (current < end) {
+        wrapper.clear();
+        wrapper.limit((int) Math.min(buffer.length, end - current));
+        int read = channel.read(wrapper, current);
+        if (read < 0) {
+          throw new EOFException("Unexpected end of " + path);
+        }
+        out.write(buffer, 0, read);
+        current += read;
+      }
+      STREAM_BYTES.increment(current - position);
+    } finally {
+      STREAM_TRANSFERS.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+}
@@ -0,0 +1,285 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.api.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.io.IOUtils;
+import org.roda.core.data.exceptions.GenericException;
+
+import com.databasepreservation.common.utils.SiardArchiveCache;
+import com.google.common.hash.Hashing;
+
+/**
+ * A download that supports HTTP conditional and range requests: the response
+ * carries an ETag and a Last-Modified date, answers 304 when the client copy
+ * is still valid (If-None-Match, If-Modified-Since) and 206 with a single byte
+ * range when asked (Range, If-Range), so that media can be scrubbed and large
+ * downloads resumed. Multiple ranges are not supported, the whole content is
+ * sent instead.
+ *
+ * Files are sent with {@link FileTransfer} (handed to the container when it
+ * supports sendfile) and so are the entries stored (uncompressed) inside a ZIP
+ * archive such as a SIARD; compressed entries are inflated from their start
+ * and skipped up to the range.
+ */
+public class RangeDownload {
+  private static final String ACCEPT_RANGES = "Accept-Ranges";
+  private static final String CONTENT_RANGE = "Content-Range";
+  private static final String RANGE = "Range";
+  private static final String IF_RANGE = "If-Range";
+  private static final String IF_NONE_MATCH = "If-None-Match";
+  private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+  private static final String BYTES_UNIT = "bytes";
+
+  /**
+   * Writes a part of the content
+   */
+  @FunctionalInterface
+  public interface Source {
+    void write(OutputStream out, long offset, long length) throws IOException;
+  }
+
+  private final String filename;
+  private final String mediaType;
+  private final long length;
+  private final long lastModified;
+  private final String etag;
+  private final Source source;
+  private boolean inline = false;
+  // the content is a part of this file, from fileOffset, if not null
+  private Path file = null;
+  private long fileOffset = 0;
+
+  public RangeDownload(String filename, String mediaType, long length, long lastModified, String etag,
+    Source source) {
+    this.filename = filename;
+    this.mediaType = mediaType;
+    this.length = length;
+    this.lastModified = lastModified;
+    this.etag = "\"" + etag + "\"";
+    this.source = source;
+  }
+
+  public static RangeDownload ofFile(Path path, String filename, String mediaType) throws IOException {
+    long size = Files.size(path);
+    long lastModified = Files.getLastModifiedTime(path).toMillis();
+    String etag = fingerprint(path.toAbsolutePath().toString(), size, lastModified);
+    return new RangeDownload(filename, mediaType, size, lastModified, etag,
+      (out, offset, length) -> writeFileRange(path, 0, out, offset, length)).setFile(path, 0);
+  }
+
+  public static RangeDownload ofBytes(byte[] bytes, String filename, String mediaType) {
+    String etag = Hashing.murmur3_128().hashBytes(bytes).toString();
+    return new RangeDownload(filename, mediaType, bytes.length, 0, etag,
+      (out, offset, length) -> out.write(bytes, (int) offset, (int) length));
+  }
+
+  /**
+   * @throws GenericException
+   *           if the archive has no such entry
+   */
+  public static RangeDownload ofZipEntry(Path zipPath, String entryName, String filename, String mediaType)
+    throws IOException, GenericException {
+    ZipArchiveEntry entry;
+    try (SiardArchiveCache.Lease lease = SiardArchiveCache.acquire(zipPath.toString())) {
+      entry = lease.getZipFile().getEntry(entryName);
+    }
+    if (entry == null || entry.getSize() < 0) {
+      throw new GenericException("Zip archive entry is missing");
+    }
+
+    long lastModified = Files.getLastModifiedTime(zipPath).toMillis();
+    String etag = fingerprint(zipPath.toAbsolutePath() + "!" + entryName + "@" + entry.getCrc(), entry.getSize(),
+      lastModified);
+
+    if (entry.getMethod() == ZipArchiveEntry.STORED) {
+      long dataOffset = entry.getDataOffset();
+      return new RangeDownload(filename, mediaType, entry.getSize(), lastModified, etag,
+        (out, offset, length) -> writeFileRange(zipPath, dataOffset, out, offset, length)).setFile(zipPath,
+          dataOffset);
+    }
+
+    return new RangeDownload(filename, mediaType, entry.getSize(), lastModified, etag, (out, offset, length) -> {
+      try (SiardArchiveCache.Lease lease = SiardArchiveCache.acquire(zipPath.toString());
+        InputStream in = lease.getZipFile().getInputStream(entry)) {
+        IOUtils.copyLarge(in, out, offset, length);
+      }
+    });
+  }
+
+  private RangeDownload setFile(Path file, long fileOffset) {
+    this.file = file;
+    this.fileOffset = fileOffset;
+    return this;
+  }
+
+  public RangeDownload setInline(boolean inline) {
+    this.inline = inline;
+    return this;
+  }
+
+  /**
+   * @return the response to the request: not modified, the whole content, a
+   *         part of it or range not satisfiable
+   */
+  public Response toResponse(HttpServletRequest request) {
+    if (isNotModified(request)) {
+      Response.ResponseBuilder builder = Response.notModified().header(HttpHeaders.ETAG, etag);
+      if (lastModified > 0) {
+        builder.lastModified(new Date(lastModified));
+      }
+      return builder.build();
+    }
+
+    long start = 0;
+    long end = length - 1;
+    boolean partial = false;
+    String range = request.getHeader(RANGE);
+    if (range != null && isRangeValid(request)) {
+      long[] bounds = parseRange(range);
+      if (bounds != null) {
+        if (bounds[0] >= length || bounds[0] > bounds[1]) {
+          return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+            .header(CONTENT_RANGE, BYTES_UNIT + " */" + length).header(ACCEPT_RANGES, BYTES_UNIT).build();
+        }
+        start = bounds[0];
+        end = Math.min(bounds[1], length - 1);
+        partial = true;
+      }
+    }
+
+    final long offset = start;
+    final long count = end - start + 1;
+
+    Response.ResponseBuilder builder = partial ? Response.status(Response.Status.PARTIAL_CONTENT) : Response.ok();
+    // with sendfile the container writes the content, the response has no
+    // entity
+    if (count <= 0 || file == null || !FileTransfer.sendfile(request, file, fileOffset + offset, count)) {
+      StreamingOutput output = out -> {
+        if (count > 0) {
+          source.write(out, offset, count);
+        }
+      };
+      builder.entity(output);
+    }
+    builder.type(mediaType).header(HttpHeaders.CONTENT_LENGTH, count)
+      .header(ACCEPT_RANGES, BYTES_UNIT).header(HttpHeaders.ETAG, etag)
+      .header(HttpHeaders.CONTENT_DISPOSITION,
+        (inline ? "inline; " : "attachment; ") + "filename=\"" + filename + "\"");
+    if (partial) {
+      builder.header(CONTENT_RANGE, BYTES_UNIT + " " + start + "-" + end + "/" + length);
+    }
+    if (lastModified > 0) {
+      builder.lastModified(new Date(lastModified));
+    }
+    return builder.build();
+  }
+
+  private boolean isNotModified(HttpServletRequest request) {
+    String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      for (String tag : ifNoneMatch.split(",")) {
+        String candidate = tag.trim();
+        if (candidate.startsWith("W/")) {
+          candidate = candidate.substring(2);
+        }
+        if ("*".equals(candidate) || etag.equals(candidate)) {
+          return true;
+        }
+      }
+      // If-Modified-Since is ignored when If-None-Match is present
+      return false;
+    }
+
+    long ifModifiedSince = getDateHeader(request, IF_MODIFIED_SINCE);
+    return lastModified > 0 && ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+  }
+
+  /**
+   * @return true if there is no If-Range or it matches the current content
+   */
+  private boolean isRangeValid(HttpServletRequest request) {
+    String ifRange = request.getHeader(IF_RANGE);
+    if (ifRange == null) {
+      return true;
+    }
+    ifRange = ifRange.trim();
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      // only a strong comparison is allowed
+      return etag.equals(ifRange);
+    }
+    long date = getDateHeader(request, IF_RANGE);
+    return lastModified > 0 && date >= 0 && lastModified / 1000 == date / 1000;
+  }
+
+  /**
+   * @return the first and last byte positions of a single byte range (the last
+   *         one may exceed the content), or null if the header is not a single
+   *         byte range and must be ignored
+   */
+  private long[] parseRange(String range) {
+    String value = range.trim();
+    if (!value.startsWith(BYTES_UNIT + "=") || value.indexOf(',') >= 0) {
+      return null;
+    }
+    value = value.substring(BYTES_UNIT.length() + 1).trim();
+    int dash = value.indexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+
+    try {
+      String first = value.substring(0, dash).trim();
+      String last = value.substring(dash + 1).trim();
+      if (first.isEmpty()) {
+        // suffix range: the last n bytes
+        long suffix = Long.parseLong(last);
+        if (suffix <= 0) {
+          return new long[] {length, length};
+        }
+        return new long[] {Math.max(0, length - suffix), length - 1};
+      }
+      long start = Long.parseLong(first);
+      long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+      return start < 0 ? null : new long[] {start, end};
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static long getDateHeader(HttpServletRequest request, String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException e) {
+      return -1;
+    }
+  }
+
+  private static String fingerprint(String identity, long size, long lastModified) {
+    return Hashing.murmur3_128().hashString(identity + "|" + size + "|" + lastModified, StandardCharsets.UTF_8)
+      .toString();
+  }
+
+  private static void writeFileRange(Path path, long base, OutputStream out, long offset, long length)
+    throws IOException {
+    FileTransfer.transfer(path, base + offset, length, out);
+  }
+}
@@ -10,12 +10,8 @@ package com.databasepreservation.common.api.v1;
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_INDEX_ROW_COLLECTION_NAME_PREFIX;
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_SEARCHES_DATABASE_UUID;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -23,8 +19,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
@@ -36,16 +30,18 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.StringUtils;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.utils.JsonUtils;
 import org.roda.core.data.v2.index.sublist.Sublist;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersBuilder;
 import org.springframework.batch.core.JobParametersInvalidException;
@@ -62,6 +58,7 @@ import org.springframework.stereotype.Service;
 import com.databasepreservation.common.api.utils.ApiUtils;
 import com.databasepreservation.common.api.utils.DownloadUtils;
 import com.databasepreservation.common.api.utils.HandlebarsUtils;
+import com.databasepreservation.common.api.utils.RangeDownload;
 import com.databasepreservation.common.api.utils.StreamResponse;
 import com.databasepreservation.common.api.utils.ViewerStreamingOutput;
 import com.databasepreservation.common.api.v1.utils.IterableIndexResultsCSVOutputStream;
@@ -86,6 +83,7 @@ import com.databasepreservation.common.client.models.status.collection.TableStat
 import com.databasepreservation.common.client.models.status.denormalization.DenormalizeConfiguration;
 import com.databasepreservation.common.client.models.structure.ViewerDatabase;
 import com.databasepreservation.common.client.models.structure.ViewerDatabaseStatus;
+import com.databasepreservation.common.client.models.structure.ViewerJobStatus;
 import com.databasepreservation.common.client.models.structure.ViewerRow;
 import com.databasepreservation.common.client.models.structure.ViewerTable;
 import com.databasepreservation.common.client.models.structure.ViewerType;
@@ -101,12 +99,17 @@ import com.databasepreservation.common.server.controller.SIARDController;
 import com.databasepreservation.common.server.index.DatabaseRowsSolrManager;
 import com.databasepreservation.common.server.index.factory.SolrClientFactory;
 import com.databasepreservation.common.server.index.schema.SolrDefaultCollectionRegistry;
+import com.databasepreservation.common.server.index.schema.SolrRowsCollectionRegistry;
+import com.databasepreservation.common.server.index.utils.CursorMarkCheckpoints;
+import com.databasepreservation.common.server.index.utils.DatabaseMetadataCache;
 import com.databasepreservation.common.server.index.utils.IterableIndexResult;
 import com.databasepreservation.common.server.index.utils.JsonTransformer;
 import com.databasepreservation.common.server.index.utils.SolrUtils;
+import com.databasepreservation.common.server.jobs.LobConsolidationBatchConfiguration;
 import com.databasepreservation.common.utils.ControllerAssistant;
 import com.databasepreservation.common.utils.LobManagerUtils;
 import com.databasepreservation.common.utils.UserUtility;
+import com.databasepreservation.utils.FileUtils;
 
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -117,6 +120,9 @@ import io.swagger.annotations.ApiParam;
 @Service
 @Path(ViewerConstants.ENDPOINT_DATABASE)
 public class CollectionResource implements CollectionService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CollectionResource.class);
+  private static final int LOB_CONSOLIDATION_INSTANCES_PAGE = 100;
+
   @Context
   private HttpServletRequest request;
 
@@ -124,6 +130,10 @@ public class CollectionResource implements CollectionService {
   @Qualifier("denormalizeJob")
   Job job;
 
+  @Autowired
+  @Qualifier(LobConsolidationBatchConfiguration.LOB_CONSOLIDATION_JOB)
+  Job lobConsolidationJob;
+
   @Autowired
   @Qualifier("customJobLauncher")
   JobLauncher jobLauncher;
@@ -156,10 +166,8 @@ public class CollectionResource implements CollectionService {
         throw new NotFoundException("Missing report file: " + filename);
       }
 
-      InputStream reportStream = Files.newInputStream(reportPath);
-
-      return ApiUtils.okResponse(DownloadUtils.getReportResourceStreamResponse(reportPath, reportStream));
-    } catch (NotFoundException | IOException e) {
+      return ApiUtils.okResponse(DownloadUtils.getReportResourceStreamResponse(reportPath));
+    } catch (NotFoundException e) {
       state = LogEntryState.FAILURE;
       throw new RESTException(e);
     } finally {
@@ -193,7 +201,18 @@ public class CollectionResource implements CollectionService {
 
     try {
       final ViewerDatabase database = ViewerFactory.getSolrManager().retrieve(ViewerDatabase.class, databaseUUID);
-      return SIARDController.loadFromLocal(database.getPath(), databaseUUID);
+      String collectionUUID = SIARDController.loadFromLocal(database.getPath(), databaseUUID);
+      if (ViewerConfiguration.getInstance().getViewerConfigurationAsBoolean(false,
+        ViewerConfiguration.PROPERTY_LOBS_CONSOLIDATION_AUTO)) {
+        try {
+          launchLobConsolidation(databaseUUID);
+        } catch (JobExecutionAlreadyRunningException | JobRestartException | JobInstanceAlreadyCompleteException
+          | JobParametersInvalidException | RESTException e) {
+          // the database is loaded, the consolidation can be started later
+          LOGGER.error("Could not start the consolidation of the LOBs of {}", databaseUUID, e);
+        }
+      }
+      return collectionUUID;
     } catch (GenericException | NotFoundException e) {
       state = LogEntryState.FAILURE;
       throw new RESTException(e);
@@ -211,7 +230,7 @@ public class CollectionResource implements CollectionService {
     User user = controllerAssistant.checkRoles(request);
 
     try {
-      return ProgressData.getInstance(databaseUUID);
+      return ProgressData.find(databaseUUID);
     } finally {
       // register action
       controllerAssistant.registerAction(user, state, ViewerConstants.CONTROLLER_DATABASE_ID_PARAM, databaseUUID);
@@ -228,14 +247,26 @@ public class CollectionResource implements CollectionService {
     try {
       final String collectionName = SOLR_INDEX_ROW_COLLECTION_NAME_PREFIX + databaseUUID;
       if (SolrClientFactory.get().deleteCollection(collectionName)) {
+        SolrRowsCollectionRegistry.unregister(databaseUUID);
+        CursorMarkCheckpoints.invalidate(databaseUUID);
+        DatabaseMetadataCache.invalidate(databaseUUID);
+        // the LOBs extracted or consolidated from the rows
+        FileUtils
+          .deleteDirectoryRecursiveQuietly(ViewerFactory.getViewerConfiguration().getLobPath().resolve(databaseUUID));
         Filter savedSearchFilter = new Filter(new SimpleFilterParameter(SOLR_SEARCHES_DATABASE_UUID, databaseUUID));
         SolrUtils.delete(ViewerFactory.getSolrClient(), SolrDefaultCollectionRegistry.get(SavedSearch.class),
           savedSearchFilter);
 
+        // a new ingestion starts with its LOBs inside the SIARD again
+        CollectionStatus collectionStatus = ViewerFactory.getConfigurationManager()
+          .getConfigurationCollectionForUpdate(databaseUUID, databaseUUID);
+        collectionStatus.setConsolidateProperty(LargeObjectConsolidateProperty.NOT_CONSOLIDATED);
+        ViewerFactory.getConfigurationManager().updateCollectionStatus(databaseUUID, collectionStatus);
+
         ViewerFactory.getSolrManager().markDatabaseCollection(databaseUUID, ViewerDatabaseStatus.METADATA_ONLY);
         return true;
       }
-    } catch (GenericException | RequestNotValidException e) {
+    } catch (GenericException | RequestNotValidException | ViewerException e) {
       state = LogEntryState.FAILURE;
       throw new RESTException(e);
     } finally {
@@ -366,9 +397,11 @@ public class CollectionResource implements CollectionService {
         ViewerConstants.DENORMALIZATION_STATUS_PREFIX + tableUUID);
       java.nio.file.Path path = ViewerConfiguration.getInstance().getDatabasesPath().resolve(databaseUUID)
         .resolve(ViewerConstants.DENORMALIZATION_STATUS_PREFIX + tableUUID + ViewerConstants.JSON_EXTENSION);
-      if (Files.exists(path)) {
-        Files.delete(path);
-      }
+      Files.deleteIfExists(path);
+      java.nio.file.Path appliedPath = ViewerConfiguration.getInstance().getDatabasesPath().resolve(databaseUUID)
+        .resolve(ViewerConstants.DENORMALIZATION_STATUS_PREFIX + tableUUID
+          + ViewerConstants.DENORMALIZATION_APPLIED_SUFFIX + ViewerConstants.JSON_EXTENSION);
+      Files.deleteIfExists(appliedPath);
     } catch (GenericException | IOException e) {
       state = LogEntryState.FAILURE;
       throw new RESTException(e.getMessage());
@@ -396,13 +429,17 @@ public class CollectionResource implements CollectionService {
       }
     }
 
-    JobParametersBuilder jobBuilder = new JobParametersBuilder();
-    jobBuilder.addDate(ViewerConstants.SOLR_SEARCHES_DATE_ADDED, new Date());
-    jobBuilder.addString(ViewerConstants.INDEX_ID, SolrUtils.randomUUID());
-    jobBuilder.addString(ViewerConstants.CONTROLLER_COLLECTION_ID_PARAM, collectionUUID);
-    jobBuilder.addString(ViewerConstants.CONTROLLER_DATABASE_ID_PARAM, databaseUUID);
-    jobBuilder.addString(ViewerConstants.CONTROLLER_TABLE_ID_PARAM, tableUUID);
-    JobParameters jobParameters = jobBuilder.toJobParameters();
+    // a failed job of an unchanged configuration is restarted where it stopped
+    JobParameters jobParameters = getFailedDenormalizeJobParameters(databaseUUID, tableUUID);
+    if (jobParameters == null) {
+      JobParametersBuilder jobBuilder = new JobParametersBuilder();
+      jobBuilder.addDate(ViewerConstants.SOLR_SEARCHES_DATE_ADDED, new Date());
+      jobBuilder.addString(ViewerConstants.INDEX_ID, SolrUtils.randomUUID());
+      jobBuilder.addString(ViewerConstants.CONTROLLER_COLLECTION_ID_PARAM, collectionUUID);
+      jobBuilder.addString(ViewerConstants.CONTROLLER_DATABASE_ID_PARAM, databaseUUID);
+      jobBuilder.addString(ViewerConstants.CONTROLLER_TABLE_ID_PARAM, tableUUID);
+      jobParameters = jobBuilder.toJobParameters();
+    }
 
     try {
       JobController.addMinimalSolrBatchJob(jobParameters);
@@ -423,6 +460,116 @@ public class CollectionResource implements CollectionService {
     }
   }
 
+  /**
+   * @return the parameters of the last execution of the denormalization job of
+   *         the table if it failed and the configuration was not changed since,
+   *         null otherwise
+   */
+  private JobParameters getFailedDenormalizeJobParameters(String databaseUUID, String tableUUID) {
+    java.nio.file.Path path = ViewerConfiguration.getInstance().getDatabasesPath().resolve(databaseUUID)
+      .resolve(ViewerConstants.DENORMALIZATION_STATUS_PREFIX + tableUUID + ViewerConstants.JSON_EXTENSION);
+    try {
+      if (!Files.exists(path)) {
+        return null;
+      }
+      DenormalizeConfiguration configuration = JsonTransformer.readObjectFromFile(path,
+        DenormalizeConfiguration.class);
+      if (!ViewerJobStatus.FAILED.equals(configuration.getState()) || configuration.getJob() == null) {
+        return null;
+      }
+      JobInstance jobInstance = jobExplorer.getJobInstance(configuration.getJob());
+      if (jobInstance == null) {
+        return null;
+      }
+      List<JobExecution> jobExecutions = jobExplorer.getJobExecutions(jobInstance);
+      if (jobExecutions.isEmpty()) {
+        return null;
+      }
+      JobExecution lastExecution = jobExecutions.get(0);
+      if (lastExecution.getStatus() == BatchStatus.FAILED || lastExecution.getStatus() == BatchStatus.STOPPED) {
+        return lastExecution.getJobParameters();
+      }
+    } catch (ViewerException e) {
+      LOGGER.debug("Could not read the denormalization configuration of {}/{}", databaseUUID, tableUUID, e);
+    }
+    return null;
+  }
+
+  @Override
+  public void consolidateLobs(String databaseUUID, String collectionUUID) {
+    ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    LogEntryState state = LogEntryState.SUCCESS;
+    User user = controllerAssistant.checkRoles(request);
+
+    try {
+      launchLobConsolidation(databaseUUID);
+    } catch (JobExecutionAlreadyRunningException | JobRestartException | JobInstanceAlreadyCompleteException
+      | JobParametersInvalidException e) {
+      state = LogEntryState.FAILURE;
+      throw new RESTException(e.getMessage());
+    } finally {
+      // register action
+      controllerAssistant.registerAction(user, databaseUUID, state, ViewerConstants.CONTROLLER_DATABASE_ID_PARAM,
+        databaseUUID);
+    }
+  }
+
+  /**
+   * Starts the consolidation of the LOBs of the database in the background,
+   * restarting the last one if it failed or was stopped
+   */
+  private synchronized void launchLobConsolidation(String databaseUUID) throws JobExecutionAlreadyRunningException,
+    JobRestartException, JobInstanceAlreadyCompleteException, JobParametersInvalidException {
+    for (JobExecution runningExecution : jobExplorer
+      .findRunningJobExecutions(LobConsolidationBatchConfiguration.LOB_CONSOLIDATION_JOB)) {
+      if (databaseUUID
+        .equals(runningExecution.getJobParameters().getString(ViewerConstants.CONTROLLER_DATABASE_ID_PARAM))) {
+        throw new RESTException("The LOBs of this database are already being consolidated",
+          com.google.gwt.http.client.Response.SC_CONFLICT);
+      }
+    }
+
+    // the instances are listed from the most recent, the first one of the
+    // database is its last consolidation
+    JobParameters jobParameters = null;
+    boolean found = false;
+    for (int start = 0; !found; start += LOB_CONSOLIDATION_INSTANCES_PAGE) {
+      List<JobInstance> jobInstances = jobExplorer.getJobInstances(
+        LobConsolidationBatchConfiguration.LOB_CONSOLIDATION_JOB, start, LOB_CONSOLIDATION_INSTANCES_PAGE);
+      if (jobInstances.isEmpty()) {
+        break;
+      }
+      for (JobInstance jobInstance : jobInstances) {
+        List<JobExecution> jobExecutions = jobExplorer.getJobExecutions(jobInstance);
+        if (!jobExecutions.isEmpty() && databaseUUID
+          .equals(jobExecutions.get(0).getJobParameters().getString(ViewerConstants.CONTROLLER_DATABASE_ID_PARAM))) {
+          BatchStatus lastStatus = jobExecutions.get(0).getStatus();
+          if (lastStatus == BatchStatus.FAILED || lastStatus == BatchStatus.STOPPED) {
+            jobParameters = jobExecutions.get(0).getJobParameters();
+          }
+          found = true;
+          break;
+        }
+      }
+    }
+
+    if (jobParameters == null) {
+      JobParametersBuilder jobBuilder = new JobParametersBuilder();
+      jobBuilder.addDate(ViewerConstants.SOLR_SEARCHES_DATE_ADDED, new Date());
+      jobBuilder.addString(ViewerConstants.INDEX_ID, SolrUtils.randomUUID());
+      jobBuilder.addString(ViewerConstants.CONTROLLER_DATABASE_ID_PARAM, databaseUUID);
+      jobParameters = jobBuilder.toJobParameters();
+    }
+
+    JobExecution jobExecution = jobLauncher.run(lobConsolidationJob, jobParameters);
+    if (jobExecution.getStatus().equals(BatchStatus.FAILED)) {
+      throw new RESTException("Queue is full, please try later",
+        com.google.gwt.http.client.Response.SC_SERVICE_UNAVAILABLE);
+    }
+    LOGGER.info("Consolidation of the LOBs of {} started", databaseUUID);
+  }
+
   /*******************************************************************************
    * Collection Resource - Data Sub-resource
    ******************************************************************************/
@@ -528,17 +675,14 @@ public class CollectionResource implements CollectionService {
   private Response handleConsolidatedLobDownload(String databaseUUID, TableStatus tableConfiguration, int columnIndex,
     ViewerRow row, String rowIndex) throws IOException {
     final java.nio.file.Path consolidatedPath = LobManagerUtils.getConsolidatedPath(
-      ViewerFactory.getViewerConfiguration(), databaseUUID, tableConfiguration.getUuid(), columnIndex, rowIndex);
+      ViewerFactory.getViewerConfiguration(), databaseUUID, row.getTableId(), columnIndex, rowIndex);
     String handlebarsFilename = HandlebarsUtils.applyExportTemplate(row, tableConfiguration, columnIndex);
     if (ViewerStringUtils.isBlank(handlebarsFilename)) {
       handlebarsFilename = consolidatedPath.getFileName().toString();
     }
 
-    return ApiUtils.okResponse(
-      new StreamResponse(handlebarsFilename, tableConfiguration.getColumnByIndex(columnIndex).getApplicationType(),
-        DownloadUtils
-          .stream(Files.newInputStream(LobManagerUtils.getConsolidatedPath(ViewerFactory.getViewerConfiguration(),
-            databaseUUID, row.getTableId(), columnIndex, rowIndex)))));
+    return RangeDownload.ofFile(consolidatedPath, handlebarsFilename,
+      tableConfiguration.getColumnByIndex(columnIndex).getApplicationType()).toResponse(request);
   }
 
   private Response handleClobDownload(TableStatus tableConfiguration, ViewerRow row, int columnIndex) {
@@ -548,15 +692,15 @@ public class CollectionResource implements CollectionService {
       handlebarsFilename = "file_" + columnIndex;
     }
 
-    ByteArrayInputStream inputStream = new ByteArrayInputStream(
-      row.getCells().get(tableConfiguration.getColumnByIndex(columnIndex).getId()).getValue().getBytes());
+    byte[] bytes = row.getCells().get(tableConfiguration.getColumnByIndex(columnIndex).getId()).getValue().getBytes();
 
-    return ApiUtils.okResponse(new StreamResponse(handlebarsFilename,
-      tableConfiguration.getColumnByIndex(columnIndex).getApplicationType(), DownloadUtils.stream(inputStream)));
+    return RangeDownload
+      .ofBytes(bytes, handlebarsFilename, tableConfiguration.getColumnByIndex(columnIndex).getApplicationType())
+      .toResponse(request);
   }
 
   private Response handleExternalLobDownload(TableStatus tableConfiguration, ViewerRow row, int columnIndex)
-    throws FileNotFoundException {
+    throws IOException {
     final String lobLocation = row.getCells().get(tableConfiguration.getColumnByIndex(columnIndex).getId()).getValue();
     final java.nio.file.Path lobPath = Paths.get(lobLocation);
     final java.nio.file.Path completeLobPath = ViewerFactory.getViewerConfiguration().getSIARDFilesPath()
@@ -574,8 +718,10 @@ public class CollectionResource implements CollectionService {
       handlebarsMimeType = tableConfiguration.getColumnByIndex(columnIndex).getApplicationType();
     }
 
-    return ApiUtils.okResponse(new StreamResponse(handlebarsFilename, handlebarsMimeType,
-      DownloadUtils.stream(new FileInputStream(completeLobPath.toFile()))));
+    if (!Files.isRegularFile(completeLobPath)) {
+      throw new FileNotFoundException(completeLobPath.toString());
+    }
+    return RangeDownload.ofFile(completeLobPath, handlebarsFilename, handlebarsMimeType).toResponse(request);
   }
 
   private Response handleInternalLobDownload(String databasePath, TableStatus tableConfiguration, ViewerRow row,
@@ -592,24 +738,24 @@ public class CollectionResource implements CollectionService {
       handlebarsMimeType = tableConfiguration.getColumnByIndex(columnIndex).getApplicationType();
     }
 
-    if (LobManagerUtils.isLobEmbedded(tableConfiguration, row, columnIndex)) {
-      // handle lob as embedded
-      String lobCellValue = LobManagerUtils.getLobCellValue(tableConfiguration, row, columnIndex);
-      lobCellValue = lobCellValue.replace(ViewerConstants.SIARD_EMBEDDED_LOB_PREFIX, "");
-      String decodedString = new String(Base64.decodeBase64(lobCellValue.getBytes()));
-
-      return ApiUtils.okResponse(new StreamResponse(handlebarsFilename, handlebarsMimeType,
-        DownloadUtils.stream(new BufferedInputStream(new ByteArrayInputStream(decodedString.getBytes())))));
+    if (LobManagerUtils.isLobStored(tableConfiguration, row, columnIndex)) {
+      // handle lob as embedded, extracted to the lob folder at ingest
+      final java.nio.file.Path storedPath = LobManagerUtils.getStoredLobPath(ViewerFactory.getViewerConfiguration(),
+        LobManagerUtils.getLobCellValue(tableConfiguration, row, columnIndex));
+      if (!Files.isRegularFile(storedPath)) {
+        throw new FileNotFoundException(storedPath.toString());
+      }
+      return RangeDownload.ofFile(storedPath, handlebarsFilename, handlebarsMimeType).toResponse(request);
+    } else if (LobManagerUtils.isLobEmbedded(tableConfiguration, row, columnIndex)) {
+      // handle lob as embedded in the cell (databases ingested before)
+      byte[] lob = LobManagerUtils
+        .decodeEmbeddedLob(LobManagerUtils.getLobCellValue(tableConfiguration, row, columnIndex));
+      return RangeDownload.ofBytes(lob, handlebarsFilename, handlebarsMimeType).toResponse(request);
     } else {
       // handle lob as internal on separated folder
-      ZipFile zipFile = new ZipFile(databasePath);
-      final ZipEntry entry = zipFile.getEntry(LobManagerUtils.getZipFilePath(tableConfiguration, columnIndex, row));
-      if (entry == null) {
-        throw new GenericException("Zip archive entry is missing");
-      }
-
-      return ApiUtils.okResponse(new StreamResponse(handlebarsFilename, handlebarsMimeType,
-        DownloadUtils.stream(new BufferedInputStream(zipFile.getInputStream(entry)))));
+      return RangeDownload.ofZipEntry(Paths.get(databasePath),
+        LobManagerUtils.getZipFilePath(tableConfiguration, columnIndex, row), handlebarsFilename, handlebarsMimeType)
+        .toResponse(request);
     }
   }
 
@@ -772,12 +918,11 @@ public class CollectionResource implements CollectionService {
     final boolean exportDescription, String fieldsToHeader) {
     List<String> fields = findRequest.fieldsToReturn;
     fields.add(ViewerConstants.INDEX_ID);
+    final long offset = findRequest.sublist != null ? findRequest.sublist.getFirstElementIndex() : 0;
     final IterableIndexResult allRows = solrManager.findAllRows(databaseUUID, findRequest.filter, findRequest.sorter,
-      fields, findRequest.extraParameters);
-    final IterableIndexResult clone = solrManager.findAllRows(databaseUUID, findRequest.filter, findRequest.sorter,
-      fields, findRequest.extraParameters);
+      fields, findRequest.extraParameters, offset);
     return ApiUtils.okResponse(new StreamResponse(new ZipOutputStreamMultiRow(configurationCollection, database,
-      configTable, allRows, clone, zipFilename, filename, findRequest.sublist, exportDescription, fieldsToHeader)));
+      configTable, allRows, zipFilename, filename, findRequest.sublist, exportDescription, fieldsToHeader)));
   }
 
   private Object[] appendValue(Object[] obj, Object newObj) {
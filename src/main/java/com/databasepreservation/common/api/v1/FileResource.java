@@ -7,7 +7,6 @@
  */
 package com.databasepreservation.common.api.v1;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Paths;
@@ -40,6 +39,7 @@ import org.springframework.stereotype.Service;
 
 import com.databasepreservation.common.api.utils.ApiResponseMessage;
 import com.databasepreservation.common.api.utils.ApiUtils;
+import com.databasepreservation.common.api.utils.RangeDownload;
 import com.databasepreservation.common.client.ViewerConstants;
 import com.databasepreservation.common.client.exceptions.RESTException;
 import com.databasepreservation.common.client.models.activity.logs.LogEntryState;
@@ -47,6 +47,7 @@ import com.databasepreservation.common.client.models.user.User;
 import com.databasepreservation.common.server.ViewerConfiguration;
 import com.databasepreservation.common.server.controller.Browser;
 import com.databasepreservation.common.utils.ControllerAssistant;
+import com.databasepreservation.common.utils.SiardArchiveCache;
 import com.google.common.io.Files;
 
 import io.swagger.annotations.Api;
@@ -109,13 +110,12 @@ public class FileResource {
       if (java.nio.file.Files.exists(siardPath) && !java.nio.file.Files.isDirectory(siardPath)
         && (ViewerConfiguration.checkPathIsWithin(siardPath, siardFilesPath)
           || ViewerConfiguration.checkPathIsWithin(siardPath, basePath))) {
-        Response.ResponseBuilder responseBuilder = Response.ok(siardPath.toFile());
-        responseBuilder.header("Content-Disposition", "attachment; filename=\"" + siardPath.toFile().getName() + "\"");
-        return responseBuilder.build();
+        return RangeDownload.ofFile(siardPath, siardPath.getFileName().toString(), MediaType.APPLICATION_OCTET_STREAM)
+          .toResponse(request);
       } else {
         throw new NotFoundException("SIARD file not found");
       }
-    } catch (NotFoundException e) {
+    } catch (NotFoundException | IOException e) {
       state = LogEntryState.FAILURE;
       throw new RESTException(e);
     } finally {
@@ -135,7 +135,10 @@ public class FileResource {
 
     try {
       java.nio.file.Files.walk(ViewerConfiguration.getInstance().getSIARDFilesPath()).map(java.nio.file.Path::toFile)
-        .filter(p -> p.getName().equals(filename)).forEach(File::delete);
+        .filter(p -> p.getName().equals(filename)).forEach(p -> {
+          SiardArchiveCache.invalidate(p.getPath());
+          p.delete();
+        });
       LOGGER.info("SIARD file removed from system ({})", filename);
     } catch (IOException e) {
       state = LogEntryState.FAILURE;
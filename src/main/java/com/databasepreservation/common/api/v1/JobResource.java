@@ -14,6 +14,7 @@ import javax.ws.rs.core.Context;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.utils.JsonUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.databasepreservation.common.client.ViewerConstants;
@@ -25,6 +26,7 @@ import com.databasepreservation.common.client.models.structure.ViewerJob;
 import com.databasepreservation.common.client.models.user.User;
 import com.databasepreservation.common.client.services.JobService;
 import com.databasepreservation.common.server.ViewerFactory;
+import com.databasepreservation.common.server.jobs.JobProgressReporter;
 import com.databasepreservation.common.utils.ControllerAssistant;
 import com.databasepreservation.common.utils.I18nUtility;
 import com.databasepreservation.common.utils.UserUtility;
@@ -38,6 +40,9 @@ public class JobResource implements JobService {
   @Context
   private HttpServletRequest request;
 
+  @Autowired
+  private JobProgressReporter progressReporter;
+
   @Override
   public IndexResult<ViewerJob> find(FindRequest findRequest, String locale) {
     ControllerAssistant controllerAssistant = new ControllerAssistant() {};
@@ -48,6 +53,7 @@ public class JobResource implements JobService {
     try {
       final IndexResult<ViewerJob> result = ViewerFactory.getSolrManager().find(ViewerJob.class, findRequest.filter,
         findRequest.sorter, findRequest.sublist, findRequest.facets);
+      result.getResults().forEach(progressReporter::fill);
       return I18nUtility.translate(result, ViewerJob.class, locale);
     } catch (GenericException | RequestNotValidException e) {
       state = LogEntryState.FAILURE;
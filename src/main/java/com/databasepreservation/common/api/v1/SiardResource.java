@@ -8,6 +8,7 @@
 package com.databasepreservation.common.api.v1;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -25,6 +26,7 @@ import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.springframework.stereotype.Service;
 
+import com.databasepreservation.common.api.utils.RangeDownload;
 import com.databasepreservation.common.client.ViewerConstants;
 import com.databasepreservation.common.client.exceptions.RESTException;
 import com.databasepreservation.common.client.models.activity.logs.LogEntryState;
@@ -116,7 +118,7 @@ public class SiardResource implements SiardService {
     User user = controllerAssistant.checkRoles(request);
 
     try {
-      return ValidationProgressData.getInstance(databaseUUID);
+      return ValidationProgressData.find(databaseUUID);
     } finally {
       // register action
       controllerAssistant.registerAction(user, state, ViewerConstants.CONTROLLER_DATABASE_ID_PARAM, databaseUUID);
@@ -144,10 +146,9 @@ public class SiardResource implements SiardService {
         throw new RESTException(new NotFoundException("validation report file not found"));
       }
 
-      Response.ResponseBuilder responseBuilder = Response.ok(file);
-      responseBuilder.header("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"");
-      return responseBuilder.build();
-    } catch (NotFoundException | GenericException e) {
+      return RangeDownload.ofFile(file.toPath(), file.getName(), MediaType.APPLICATION_OCTET_STREAM)
+        .toResponse(request);
+    } catch (NotFoundException | GenericException | IOException e) {
       state = LogEntryState.FAILURE;
       throw new RESTException(e);
     } finally {
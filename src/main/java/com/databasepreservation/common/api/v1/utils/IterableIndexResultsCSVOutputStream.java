@@ -16,7 +16,7 @@ import java.util.stream.Stream;
 
 import org.apache.commons.csv.CSVPrinter;
 
-import com.databasepreservation.common.api.utils.HandlebarsUtils;
+import com.databasepreservation.common.api.utils.ExportTemplatePlan;
 import com.databasepreservation.common.client.models.status.collection.TableStatus;
 import com.databasepreservation.common.client.models.structure.ViewerRow;
 import com.databasepreservation.common.server.index.utils.IterableIndexResult;
@@ -30,6 +30,7 @@ public class IterableIndexResultsCSVOutputStream extends CSVOutputStream {
   private final TableStatus configTable;
   private final List<String> fieldsToReturn;
   private final boolean exportDescription;
+  private final ExportTemplatePlan templatePlan;
 
   /**
    * Constructor.
@@ -48,6 +49,7 @@ public class IterableIndexResultsCSVOutputStream extends CSVOutputStream {
     this.configTable = configTable;
     this.fieldsToReturn = Stream.of(fieldsToHeader.split(",")).collect(Collectors.toList());
     this.exportDescription = exportDescription;
+    this.templatePlan = new ExportTemplatePlan(configTable);
   }
 
   @Override
@@ -64,7 +66,7 @@ public class IterableIndexResultsCSVOutputStream extends CSVOutputStream {
         isFirst = false;
       }
 
-      printer.printRecord(HandlebarsUtils.getCellValues(row, configTable, fieldsToReturn));
+      printer.printRecord(templatePlan.getCellValues(row, fieldsToReturn));
 
     }
 
@@ -17,7 +17,7 @@ import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import com.databasepreservation.common.api.utils.HandlebarsUtils;
+import com.databasepreservation.common.api.utils.ExportTemplatePlan;
 import org.apache.commons.csv.CSVPrinter;
 
 import com.databasepreservation.common.client.ViewerConstants;
@@ -41,6 +41,7 @@ public class ResultsCSVOutputStream extends CSVOutputStream {
   private final ViewerRow row;
   private final List<String> fieldsToReturn;
   private final boolean exportDescription;
+  private final ExportTemplatePlan templatePlan;
 
   /**
    * Constructor.
@@ -60,6 +61,7 @@ public class ResultsCSVOutputStream extends CSVOutputStream {
     this.fieldsToReturn = Stream.of(fieldsToHeader.split(",")).collect(Collectors.toList());
     ;
     this.exportDescription = exportDescription;
+    this.templatePlan = new ExportTemplatePlan(configTable);
     this.row = null;
   }
 
@@ -71,6 +73,7 @@ public class ResultsCSVOutputStream extends CSVOutputStream {
     this.configTable = configTable;
     this.fieldsToReturn = Stream.of(fieldsToHeader.split(",")).collect(Collectors.toList());
     this.exportDescription = exportDescription;
+    this.templatePlan = new ExportTemplatePlan(configTable);
   }
 
   @Override
@@ -90,7 +93,7 @@ public class ResultsCSVOutputStream extends CSVOutputStream {
   private void singleRow(OutputStreamWriter writer) throws IOException {
     CSVPrinter printer = getFormat()
       .withHeader(configTable.getCSVHeaders(fieldsToReturn, exportDescription).toArray(new String[0])).print(writer);
-    printer.printRecord(HandlebarsUtils.getCellValues(row, configTable, fieldsToReturn));
+    printer.printRecord(templatePlan.getCellValues(row, fieldsToReturn));
   }
 
   private void multiRow(OutputStreamWriter writer, CSVPrinter printer) throws IOException {
@@ -103,7 +106,7 @@ public class ResultsCSVOutputStream extends CSVOutputStream {
         isFirst = false;
       }
 
-      printer.printRecord(HandlebarsUtils.getCellValues(row, configTable, fieldsToReturn));
+      printer.printRecord(templatePlan.getCellValues(row, fieldsToReturn));
     }
   }
 }
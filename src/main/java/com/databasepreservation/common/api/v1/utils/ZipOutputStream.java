@@ -7,20 +7,18 @@
  */
 package com.databasepreservation.common.api.v1.utils;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
-import java.util.Map;
-import java.util.zip.ZipFile;
 
 import com.databasepreservation.common.api.utils.ExtraMediaType;
-import com.databasepreservation.common.api.utils.HandlebarsUtils;
+import com.databasepreservation.common.api.utils.ExportTemplatePlan;
 import com.databasepreservation.common.client.ViewerConstants;
 import com.databasepreservation.common.client.models.status.collection.ColumnStatus;
 import com.databasepreservation.common.client.models.status.collection.LargeObjectConsolidateProperty;
@@ -31,9 +29,9 @@ import com.databasepreservation.common.client.tools.ViewerStringUtils;
 import com.databasepreservation.common.server.ViewerFactory;
 import com.databasepreservation.common.utils.FilenameUtils;
 import com.databasepreservation.common.utils.LobManagerUtils;
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.io.IOUtils;
 import org.roda.core.data.v2.index.sublist.Sublist;
 
@@ -53,6 +51,7 @@ public abstract class ZipOutputStream extends CSVOutputStream {
   private final String csvFilename;
   private final List<String> fieldsToReturn;
   private final boolean exportDescriptions;
+  private final ExportTemplatePlan templatePlan;
 
   public ZipOutputStream(CollectionStatus configurationCollection, ViewerDatabase database, TableStatus configTable,
     String zipFilename, String csvFilename, List<String> fieldsToReturn, boolean exportDescriptions) {
@@ -64,6 +63,7 @@ public abstract class ZipOutputStream extends CSVOutputStream {
     this.csvFilename = csvFilename;
     this.fieldsToReturn = fieldsToReturn;
     this.exportDescriptions = exportDescriptions;
+    this.templatePlan = new ExportTemplatePlan(configTable);
   }
 
   public CollectionStatus getConfigurationCollection() {
@@ -78,6 +78,10 @@ public abstract class ZipOutputStream extends CSVOutputStream {
     return configTable;
   }
 
+  public ExportTemplatePlan getTemplatePlan() {
+    return templatePlan;
+  }
+
   public String getZipFilename() {
     return zipFilename;
   }
@@ -107,29 +111,20 @@ public abstract class ZipOutputStream extends CSVOutputStream {
   @Override
   public abstract void consumeOutputStream(OutputStream out) throws IOException;
 
-  protected ColumnStatus findLobColumn(final List<ColumnStatus> columns, final String cell) {
-    for (ColumnStatus column : columns) {
-      if (column.getId().equals(cell)) {
-        return column;
-      }
-    }
-    return null;
-  }
-
   protected void writeToZipFile(ZipFile siardArchive, ZipArchiveOutputStream out, ViewerRow row,
                               List<ColumnStatus> binaryColumns) throws IOException {
 
-    for (Map.Entry<String, ViewerCell> cellEntry : row.getCells().entrySet()) {
-      final ColumnStatus binaryColumn = findLobColumn(binaryColumns, cellEntry.getKey());
+    for (ColumnStatus binaryColumn : binaryColumns) {
+      final ViewerCell cell = row.getCells().get(binaryColumn.getId());
 
-      if (binaryColumn != null) {
+      if (cell != null) {
         if (ViewerType.dbTypes.CLOB.equals(binaryColumn.getType())) {
           handleWriteClob(out, binaryColumn, row);
         } else if (configurationCollection.getConsolidateProperty().equals(LargeObjectConsolidateProperty.CONSOLIDATED)) {
           handleWriteConsolidateLobs(out, binaryColumn, row);
         } else {
           if (configTable.getColumnByIndex(binaryColumn.getColumnIndex()).isExternalLob()) {
-            handleWriteExternalLobs(out, binaryColumn, row, cellEntry.getValue());
+            handleWriteExternalLobs(out, binaryColumn, row, cell);
           } else {
             handleWriteInternalLobs(out, siardArchive, binaryColumn, row);
           }
@@ -144,21 +139,23 @@ public abstract class ZipOutputStream extends CSVOutputStream {
         database.getUuid(), configTable.getId(), binaryColumn.getColumnIndex(), row.getUuid());
 
     InputStream in = new FileInputStream(consolidatedPath.toFile());
-    final String templateFilename = FilenameUtils.getTemplateFilename(row, configTable, binaryColumn,
+    final String templateFilename = FilenameUtils.getTemplateFilename(row, templatePlan, binaryColumn,
         consolidatedPath.getFileName().toString());
     addEntryToZip(out, in, templateFilename);
   }
 
   private void handleWriteInternalLobs(ZipArchiveOutputStream out, ZipFile siardArchive, ColumnStatus binaryColumn,
                                        ViewerRow row) throws IOException {
-    final String templateFilename = FilenameUtils.getTemplateFilename(row, configTable, binaryColumn);
-
-    if (LobManagerUtils.isLobEmbedded(configTable, row, binaryColumn.getColumnIndex())) {
-      String lobCellValue = LobManagerUtils.getLobCellValue(configTable, row, binaryColumn.getColumnIndex());
-      lobCellValue = lobCellValue.replace(ViewerConstants.SIARD_EMBEDDED_LOB_PREFIX, "");
-      String decodedString = new String(Base64.decodeBase64(lobCellValue.getBytes()));
-
-      addEntryToZip(out, new BufferedInputStream(new ByteArrayInputStream(decodedString.getBytes())), templateFilename);
+    final String templateFilename = FilenameUtils.getTemplateFilename(row, templatePlan, binaryColumn);
+
+    if (LobManagerUtils.isLobStored(configTable, row, binaryColumn.getColumnIndex())) {
+      final Path storedPath = LobManagerUtils.getStoredLobPath(ViewerFactory.getViewerConfiguration(),
+          LobManagerUtils.getLobCellValue(configTable, row, binaryColumn.getColumnIndex()));
+      addEntryToZip(out, Files.newInputStream(storedPath), templateFilename);
+    } else if (LobManagerUtils.isLobEmbedded(configTable, row, binaryColumn.getColumnIndex())) {
+      byte[] lob = LobManagerUtils
+          .decodeEmbeddedLob(LobManagerUtils.getLobCellValue(configTable, row, binaryColumn.getColumnIndex()));
+      addEntryToZip(out, new ByteArrayInputStream(lob), templateFilename);
     } else {
       final InputStream in = siardArchive.getInputStream(
           siardArchive.getEntry(LobManagerUtils.getZipFilePath(configTable, binaryColumn.getColumnIndex(), row)));
@@ -172,7 +169,7 @@ public abstract class ZipOutputStream extends CSVOutputStream {
     final Path lobPath = Paths.get(lobLocation);
     final Path completeLobPath = ViewerFactory.getViewerConfiguration().getSIARDFilesPath().resolve(lobPath);
 
-    final String templateFilename = FilenameUtils.getTemplateFilename(row, configTable, binaryColumn,
+    final String templateFilename = FilenameUtils.getTemplateFilename(row, templatePlan, binaryColumn,
         completeLobPath.getFileName().toString());
     InputStream inputStream = new FileInputStream(lobPath.toFile());
     addEntryToZip(out, inputStream, templateFilename);
@@ -181,7 +178,7 @@ public abstract class ZipOutputStream extends CSVOutputStream {
   private void handleWriteClob(ZipArchiveOutputStream out, ColumnStatus binaryColumn, ViewerRow row)
       throws IOException {
 
-    String handlebarsFilename = HandlebarsUtils.applyExportTemplate(row, configTable, binaryColumn.getColumnIndex());
+    String handlebarsFilename = templatePlan.applyExportTemplate(row, binaryColumn.getColumnIndex());
 
     if (ViewerStringUtils.isBlank(handlebarsFilename)) {
       handlebarsFilename = "file_" + binaryColumn.getCustomName();
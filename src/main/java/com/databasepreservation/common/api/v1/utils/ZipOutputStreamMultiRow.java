@@ -7,119 +7,108 @@
  */
 package com.databasepreservation.common.api.v1.utils;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.ZipFile;
 
 import org.apache.commons.compress.archivers.zip.Zip64Mode;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.io.IOUtils;
 import org.roda.core.data.v2.index.sublist.Sublist;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.databasepreservation.common.api.utils.HandlebarsUtils;
 import com.databasepreservation.common.client.models.status.collection.CollectionStatus;
 import com.databasepreservation.common.client.models.status.collection.ColumnStatus;
 import com.databasepreservation.common.client.models.status.collection.TableStatus;
 import com.databasepreservation.common.client.models.structure.ViewerDatabase;
 import com.databasepreservation.common.client.models.structure.ViewerRow;
 import com.databasepreservation.common.server.index.utils.IterableIndexResult;
+import com.databasepreservation.common.utils.SiardArchiveCache;
 
 /**
+ * Writes the LOBs of the exported rows and the CSV with their values to a ZIP
+ * archive in a single pass over the results. As a ZIP entry must be complete
+ * before the next one starts, the CSV records are spilled to a temporary file
+ * while the LOB entries are written and the file is added as the last entry,
+ * so memory usage does not depend on the number of rows.
+ *
  * @author Miguel Guimarães <mguimaraes@keep.pt>
  */
 public class ZipOutputStreamMultiRow extends ZipOutputStream {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ZipOutputStreamMultiRow.class);
+
   private final IterableIndexResult viewerRows;
-  private final IterableIndexResult viewerRowsClone;
   private Sublist sublist;
 
   public ZipOutputStreamMultiRow(final CollectionStatus configurationCollection, final ViewerDatabase database,
-    final TableStatus configTable, final IterableIndexResult viewerRows, final IterableIndexResult viewerRowsClone,
-    final String zipFilename, final String csvFilename, Sublist sublist, boolean exportDescriptions,
-    String fieldsToHeader) {
+    final TableStatus configTable, final IterableIndexResult viewerRows, final String zipFilename,
+    final String csvFilename, Sublist sublist, boolean exportDescriptions, String fieldsToHeader) {
     super(configurationCollection, database, configTable, zipFilename, csvFilename,
       Stream.of(fieldsToHeader.split(",")).collect(Collectors.toList()), exportDescriptions);
     this.viewerRows = viewerRows;
     this.sublist = sublist;
-    this.viewerRowsClone = viewerRowsClone;
   }
 
   @Override
   public void consumeOutputStream(OutputStream out) throws IOException {
-    ZipFile siardArchive = new ZipFile(getDatabase().getPath());
-
     boolean all = false;
     if (sublist == null) {
       sublist = Sublist.NONE;
       all = true;
     }
-    Iterator<ViewerRow> iterator = viewerRows.iterator();
     int nIndex = 0;
 
-    int maxIndex = sublist.getFirstElementIndex() + sublist.getMaximumElementCount();
-
-    try (ZipArchiveOutputStream zipArchiveOutputStream = new ZipArchiveOutputStream(out)) {
+    final Path csvSpillFile = Files.createTempFile("dbvtk-export-", ".csv");
+    try (SiardArchiveCache.Lease siardArchive = SiardArchiveCache.acquire(getDatabase().getPath());
+      ZipArchiveOutputStream zipArchiveOutputStream = new ZipArchiveOutputStream(out);
+      Writer csvWriter = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(csvSpillFile)))) {
       zipArchiveOutputStream.setUseZip64(Zip64Mode.AsNeeded);
       zipArchiveOutputStream.setMethod(ZipArchiveOutputStream.DEFLATED);
 
+      CSVPrinter printer = null;
       final List<ColumnStatus> lobColumns = getConfigTable().getLobColumns();
-      while (iterator.hasNext() && (nIndex < maxIndex || all)) {
+      Iterator<ViewerRow> iterator = viewerRows.iterator();
+      // the rows already start at the first element of the sublist
+      while (iterator.hasNext() && (nIndex < sublist.getMaximumElementCount() || all)) {
         ViewerRow row = iterator.next();
-        if (nIndex < (sublist.getFirstElementIndex())) {
-          nIndex++;
-          continue;
-        } else {
-          writeToZipFile(siardArchive, zipArchiveOutputStream, row, lobColumns);
+        if (printer == null) {
+          printer = new CSVPrinter(csvWriter, getFormat().withHeader(
+            getConfigTable().getCSVHeaders(getFieldsToReturn(), isExportDescriptions()).toArray(new String[0])));
         }
+
+        writeToZipFile(siardArchive.getZipFile(), zipArchiveOutputStream, row, lobColumns);
+        printer.printRecord(getTemplatePlan().getCellValues(row, getFieldsToReturn()));
         nIndex++;
       }
+      viewerRows.close();
+      csvWriter.close();
 
-      nIndex = 0;
-      final ByteArrayOutputStream byteArrayOutputStream = writeCSVFile(nIndex, all);
       zipArchiveOutputStream.putArchiveEntry(new ZipArchiveEntry(getCsvFilename()));
-      zipArchiveOutputStream.write(byteArrayOutputStream.toByteArray());
-      byteArrayOutputStream.close();
+      try (InputStream in = Files.newInputStream(csvSpillFile)) {
+        IOUtils.copy(in, zipArchiveOutputStream);
+      }
       zipArchiveOutputStream.closeArchiveEntry();
 
       zipArchiveOutputStream.finish();
       zipArchiveOutputStream.flush();
-    }
-  }
-
-  private ByteArrayOutputStream writeCSVFile(int nIndex, boolean all) throws IOException {
-    ByteArrayOutputStream listBytes = new ByteArrayOutputStream();
-    try (final OutputStreamWriter writer = new OutputStreamWriter(listBytes)) {
-      CSVPrinter printer = null;
-      boolean isFirst = true;
-
-      int maxIndex = sublist.getFirstElementIndex() + sublist.getMaximumElementCount();
-
-      Iterator<ViewerRow> iterator = viewerRowsClone.iterator();
-      while (iterator.hasNext() && (nIndex < maxIndex || all)) {
-        ViewerRow row = iterator.next();
-        if (nIndex < sublist.getFirstElementIndex()) {
-          nIndex++;
-          continue;
-        } else {
-          if (isFirst) {
-            printer = new CSVPrinter(writer, getFormat().withHeader(
-              getConfigTable().getCSVHeaders(getFieldsToReturn(), isExportDescriptions()).toArray(new String[0])));
-            isFirst = false;
-          }
-
-          printer.printRecord(HandlebarsUtils.getCellValues(row, getConfigTable(), getFieldsToReturn()));
-        }
-        nIndex++;
+    } finally {
+      try {
+        Files.deleteIfExists(csvSpillFile);
+      } catch (IOException e) {
+        LOGGER.warn("Could not delete temporary CSV file {}", csvSpillFile, e);
       }
-      viewerRowsClone.close();
     }
-
-    return listBytes;
   }
 }
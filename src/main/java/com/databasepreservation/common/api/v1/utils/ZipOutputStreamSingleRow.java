@@ -12,19 +12,18 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.util.List;
-import java.util.zip.ZipFile;
 
 import org.apache.commons.compress.archivers.zip.Zip64Mode;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.csv.CSVPrinter;
 
-import com.databasepreservation.common.api.utils.HandlebarsUtils;
 import com.databasepreservation.common.client.models.status.collection.CollectionStatus;
 import com.databasepreservation.common.client.models.status.collection.ColumnStatus;
 import com.databasepreservation.common.client.models.status.collection.TableStatus;
 import com.databasepreservation.common.client.models.structure.ViewerDatabase;
 import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.utils.SiardArchiveCache;
 
 /**
  * @author Miguel Guimarães <mguimaraes@keep.pt>
@@ -41,12 +40,13 @@ public class ZipOutputStreamSingleRow extends ZipOutputStream {
 
   @Override
   public void consumeOutputStream(OutputStream out) throws IOException {
-    try (ZipArchiveOutputStream zipArchiveOutputStream = new ZipArchiveOutputStream(out)) {
+    try (SiardArchiveCache.Lease siardArchive = SiardArchiveCache.acquire(getDatabase().getPath());
+      ZipArchiveOutputStream zipArchiveOutputStream = new ZipArchiveOutputStream(out)) {
       zipArchiveOutputStream.setUseZip64(Zip64Mode.AsNeeded);
       zipArchiveOutputStream.setMethod(ZipArchiveOutputStream.DEFLATED);
 
       final List<ColumnStatus> binaryColumns = getConfigTable().getLobColumns();
-      writeToZipFile(new ZipFile(getDatabase().getPath()), zipArchiveOutputStream, row, binaryColumns);
+      writeToZipFile(siardArchive.getZipFile(), zipArchiveOutputStream, row, binaryColumns);
 
       final ByteArrayOutputStream byteArrayOutputStream = writeCSVFile();
       zipArchiveOutputStream.putArchiveEntry(new ZipArchiveEntry(getCsvFilename()));
@@ -64,7 +64,7 @@ public class ZipOutputStreamSingleRow extends ZipOutputStream {
     try (final OutputStreamWriter writer = new OutputStreamWriter(listBytes)) {
       CSVPrinter printer = new CSVPrinter(writer, getFormat().withHeader(
         getConfigTable().getCSVHeaders(getFieldsToReturn(), isExportDescriptions()).toArray(new String[0])));
-      printer.printRecord(HandlebarsUtils.getCellValues(row, getConfigTable(), getFieldsToReturn()));
+      printer.printRecord(getTemplatePlan().getCellValues(row, getFieldsToReturn()));
     }
     return listBytes;
   }
@@ -87,6 +87,7 @@ public class ViewerConstants {
   public static final String CUSTOM_VIEW_PREFIX = "CUSTOM_VIEW_";
   public static final String DATABASE_STATUS_PREFIX = "database-";
   public static final String DENORMALIZATION_STATUS_PREFIX = "denormalization-";
+  public static final String DENORMALIZATION_APPLIED_SUFFIX = "-applied";
 
   public static final String INTERNAL_ZIP_LOB_FOLDER = "lobs/";
 
@@ -171,6 +172,8 @@ public class ViewerConstants {
   public static final String SOLR_BATCH_JOB_EXIT_DESCRIPTION = "exitCodeDescription";
   public static final String SOLR_BATCH_JOB_ROWS_TO_PROCESS = "rowsToProcess";
   public static final String SOLR_BATCH_JOB_ROWS_PROCESSED = "rowsProcessed";
+  public static final String SOLR_BATCH_JOB_ROWS_PER_SECOND = "rowsPerSecond";
+  public static final String SOLR_BATCH_JOB_ESTIMATED_END_TIME = "estimatedEndTime";
 
   public static final String ACTIVITY_LOG_PROPERTY = "activityLogEntry";
 
@@ -533,6 +536,8 @@ public class ViewerConstants {
   public static final String SIARD_LOB_OUTSIDE_PREFIX = "external:";
   public static final String SIARD_LOB_INSIDE_PREFIX = "internal:";
   public static final String SIARD_EMBEDDED_LOB_PREFIX = "base64:";
+  // LOB stored inside table.xml, extracted to the LOB folder at ingest
+  public static final String SIARD_STORED_LOB_PREFIX = "stored:";
   public static final String SIARD_LOB_FILE_EXTENSION = ".bin";
 
   public static final String DEFAULT_USERNAME = "admin";
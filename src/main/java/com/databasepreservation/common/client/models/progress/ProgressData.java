@@ -8,8 +8,9 @@
 package com.databasepreservation.common.client.models.progress;
 
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Miguel Guimarães <mguimaraes@keep.pt>
@@ -30,12 +31,30 @@ public class ProgressData implements Serializable {
   private boolean finished = false;
   private boolean databaseStructureRetrieved = false;
 
-  private static HashMap<String, ProgressData> instances = new HashMap<>();
+  private long finishedTime = 0;
+
+  private static final Map<String, ProgressData> instances = new ConcurrentHashMap<>();
 
   public static ProgressData getInstance(String uuid) {
     return instances.computeIfAbsent(uuid, k -> new ProgressData());
   }
 
+  /**
+   * @return the progress of the given uuid, or an empty progress that is not
+   *         kept if there is none
+   */
+  public static ProgressData find(String uuid) {
+    ProgressData progressData = instances.get(uuid);
+    return progressData != null ? progressData : new ProgressData();
+  }
+
+  /**
+   * Removes the progress of the runs that finished before the given time
+   */
+  public static void evictFinished(long finishedBefore) {
+    instances.values().removeIf(progressData -> progressData.finished && progressData.finishedTime < finishedBefore);
+  }
+
   public ProgressData() {
   }
 
@@ -134,6 +153,7 @@ public class ProgressData implements Serializable {
 
   public void setFinished(boolean finished) {
     this.finished = finished;
+    this.finishedTime = finished ? System.currentTimeMillis() : 0;
   }
 
   public boolean isDatabaseStructureRetrieved() {
@@ -164,6 +184,10 @@ public class ProgressData implements Serializable {
       getProcessedSchemas(), getTotalSchemas(), getCurrentTableName(), getCurrentSchemaName());
   }
 
+  public static void clear(String uuid) {
+    instances.remove(uuid);
+  }
+
   public void reset() {
     processedRows = 0;
     totalRows = 0;
@@ -176,6 +200,7 @@ public class ProgressData implements Serializable {
     currentTableName = "";
     currentSchemaName = "";
     finished = false;
+    finishedTime = 0;
     databaseStructureRetrieved = false;
   }
 }
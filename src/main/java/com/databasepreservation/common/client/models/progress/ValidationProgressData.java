@@ -11,8 +11,9 @@ import com.databasepreservation.common.client.models.validation.ValidationRequir
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ValidationProgressData implements Serializable {
   private boolean finished = false;
@@ -25,12 +26,30 @@ public class ValidationProgressData implements Serializable {
   private int numberOfWarnings;
   private int numberOfSkipped;
 
-  private static HashMap<String, ValidationProgressData> instances = new HashMap<>();
+  private long finishedTime = 0;
+
+  private static final Map<String, ValidationProgressData> instances = new ConcurrentHashMap<>();
 
   public static ValidationProgressData getInstance(String uuid) {
     return instances.computeIfAbsent(uuid, k -> new ValidationProgressData());
   }
 
+  /**
+   * @return the progress of the given uuid, or an empty progress that is not
+   *         kept if there is none
+   */
+  public static ValidationProgressData find(String uuid) {
+    ValidationProgressData progressData = instances.get(uuid);
+    return progressData != null ? progressData : new ValidationProgressData();
+  }
+
+  /**
+   * Removes the progress of the runs that finished before the given time
+   */
+  public static void evictFinished(long finishedBefore) {
+    instances.values().removeIf(progressData -> progressData.finished && progressData.finishedTime < finishedBefore);
+  }
+
   public ValidationProgressData() {
   }
 
@@ -77,6 +96,7 @@ public class ValidationProgressData implements Serializable {
 
   public void setFinished(boolean status) {
     finished = status;
+    finishedTime = status ? System.currentTimeMillis() : 0;
   }
 
   public void setIndicators(int passed, int ok, int failed, int errors, int warnings, int skipped) {
@@ -138,6 +158,7 @@ public class ValidationProgressData implements Serializable {
 
   public void reset() {
     this.finished = false;
+    this.finishedTime = 0;
     this.requirementsList = new ArrayList<>();
     this.requirement = null;
     this.numberOfPassed = 0;
@@ -37,6 +37,11 @@ public class CollectionStatus implements Serializable {
   private List<SavedSearch> savedSearches;
   private Set<String> denormalizations;
 
+  @JsonIgnore
+  private transient LookupIndex<String, TableStatus> tablesByUuid;
+  @JsonIgnore
+  private transient LookupIndex<String, TableStatus> tablesById;
+
   public CollectionStatus() {
     tables = new ArrayList<>();
     savedSearches = new ArrayList<>();
@@ -106,6 +111,7 @@ public class CollectionStatus implements Serializable {
 
   public void setTables(List<TableStatus> tables) {
     this.tables = tables;
+    clearTableIndexes();
   }
 
   public List<SavedSearch> getSavedSearches() {
@@ -118,6 +124,7 @@ public class CollectionStatus implements Serializable {
 
   public void addTableStatus(TableStatus status) {
     this.tables.add(status);
+    clearTableIndexes();
   }
 
   public Set<String> getDenormalizations() {
@@ -169,55 +176,46 @@ public class CollectionStatus implements Serializable {
 
   @JsonIgnore
   public TableStatus getTableStatus(String uuid) {
-    for (TableStatus table : tables) {
-      if (table.getUuid().equals(uuid))
-        return table;
+    LookupIndex<String, TableStatus> index = tablesByUuid;
+    if (index == null || !index.isFor(tables)) {
+      index = new LookupIndex<>(tables, TableStatus::getUuid);
+      tablesByUuid = index;
     }
-
-    return null;
+    return index.get(uuid);
   }
 
   @JsonIgnore
   public TableStatus getTableStatusByTableId(String id) {
-    for (TableStatus table : tables) {
-      if (table.getId().equals(id))
-        return table;
+    LookupIndex<String, TableStatus> index = tablesById;
+    if (index == null || !index.isFor(tables)) {
+      index = new LookupIndex<>(tables, TableStatus::getId);
+      tablesById = index;
     }
-
-    return null;
+    return index.get(id);
   }
 
   public boolean showTable(String id) {
-    for (TableStatus table : tables) {
-      if (table.getUuid().equals(id)) {
-        return table.isShow();
-      }
+    final TableStatus tableStatus = getTableStatus(id);
+    if (tableStatus != null) {
+      return tableStatus.isShow();
     }
 
     return true;
   }
 
   public boolean showColumn(String tableId, String columnId) {
-    final TableStatus tableStatus = getTableStatus(tableId);
-    if (tableStatus != null) {
-      for (ColumnStatus column : tableStatus.getColumns()) {
-        if (column.getId().equals(columnId)) {
-          return column.getSearchStatus().getList().isShow();
-        }
-      }
+    final ColumnStatus column = getColumnByTableAndColumn(tableId, columnId);
+    if (column != null) {
+      return column.getSearchStatus().getList().isShow();
     }
 
     return true;
   }
 
   public boolean showColumnInDetail(String tableId, String columnId) {
-    final TableStatus tableStatus = getTableStatus(tableId);
-    if (tableStatus != null) {
-      for (ColumnStatus column : tableStatus.getColumns()) {
-        if (column.getId().equals(columnId)) {
-          return column.getDetailsStatus().isShow();
-        }
-      }
+    final ColumnStatus column = getColumnByTableAndColumn(tableId, columnId);
+    if (column != null) {
+      return column.getDetailsStatus().isShow();
     }
 
     return true;
@@ -226,11 +224,7 @@ public class CollectionStatus implements Serializable {
   public ColumnStatus getColumnByTableIdAndColumn(String tableId, String columnId) {
     final TableStatus tableStatus = getTableStatusByTableId(tableId);
     if (tableStatus != null) {
-      for (ColumnStatus column : tableStatus.getColumns()) {
-        if (column.getId().equals(columnId)) {
-          return column;
-        }
-      }
+      return tableStatus.getColumnById(columnId);
     }
 
     return null;
@@ -239,23 +233,15 @@ public class CollectionStatus implements Serializable {
   public ColumnStatus getColumnByTableAndColumn(String tableUUID, String columnId) {
     final TableStatus tableStatus = getTableStatus(tableUUID);
     if (tableStatus != null) {
-      for (ColumnStatus column : tableStatus.getColumns()) {
-        if (column.getId().equals(columnId)) {
-          return column;
-        }
-      }
+      return tableStatus.getColumnById(columnId);
     }
     return null;
   }
 
   public boolean showAdvancedSearch(String tableId, String columnId) {
-    final TableStatus tableStatus = getTableStatus(tableId);
-    if (tableStatus != null) {
-      for (ColumnStatus column : tableStatus.getColumns()) {
-        if (column.getId().equals(columnId)) {
-          return column.getSearchStatus().getAdvanced().isFixed();
-        }
-      }
+    final ColumnStatus column = getColumnByTableAndColumn(tableId, columnId);
+    if (column != null) {
+      return column.getSearchStatus().getAdvanced().isFixed();
     }
 
     return true;
@@ -307,4 +293,9 @@ public class CollectionStatus implements Serializable {
       + MimeTypeUtils.getColIndexTemplate() + MimeTypeUtils.getAutoDetectedExtensionTemplate();
     columnStatus.getExportStatus().getTemplateStatus().setTemplate(template);
   }
+
+  private void clearTableIndexes() {
+    tablesByUuid = null;
+    tablesById = null;
+  }
 }
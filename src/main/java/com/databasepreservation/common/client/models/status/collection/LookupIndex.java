@@ -0,0 +1,49 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.client.models.status.collection;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Hash index over a list of status elements, used to avoid linear scans on
+ * lookups done per row or per cell. It is immutable once built: when the
+ * indexed list is replaced or changes size a new index must be built (see
+ * {@link #isFor(List)}). When several elements share the same key the first
+ * one is kept, as the linear scans did.
+ */
+final class LookupIndex<K, V> {
+  private final List<V> source;
+  private final int size;
+  private final Map<K, V> entries;
+
+  LookupIndex(List<V> source, Function<V, K> keyFunction) {
+    this.source = source;
+    this.size = source.size();
+    this.entries = new HashMap<>();
+    for (V element : source) {
+      K key = keyFunction.apply(element);
+      if (!entries.containsKey(key)) {
+        entries.put(key, element);
+      }
+    }
+  }
+
+  /**
+   * @return true if this index is still valid for the given list
+   */
+  boolean isFor(List<V> list) {
+    return source == list && size == list.size();
+  }
+
+  V get(K key) {
+    return entries.get(key);
+  }
+}
@@ -36,6 +36,11 @@ public class TableStatus implements Serializable {
   private boolean show;
   private List<ColumnStatus> columns;
 
+  @JsonIgnore
+  private transient LookupIndex<String, ColumnStatus> columnsById;
+  @JsonIgnore
+  private transient LookupIndex<Integer, ColumnStatus> columnsByIndex;
+
   public TableStatus() {
     columns = new ArrayList<>();
   }
@@ -102,6 +107,7 @@ public class TableStatus implements Serializable {
 
   public void setColumns(List<ColumnStatus> columns) {
     this.columns = columns;
+    clearColumnIndexes();
   }
 
   public String getCustomName() {
@@ -122,6 +128,7 @@ public class TableStatus implements Serializable {
 
   public void addColumnStatus(ColumnStatus status) {
     this.columns.add(status);
+    clearColumnIndexes();
   }
 
   @JsonIgnore
@@ -162,12 +169,27 @@ public class TableStatus implements Serializable {
 
   @JsonIgnore
   public ColumnStatus getColumnById(String id) {
-    return columns.stream().filter(c -> c.getId().equals(id)).findFirst().orElse(null);
+    LookupIndex<String, ColumnStatus> index = columnsById;
+    if (index == null || !index.isFor(columns)) {
+      index = new LookupIndex<>(columns, ColumnStatus::getId);
+      columnsById = index;
+    }
+    return index.get(id);
   }
 
   @JsonIgnore
   public ColumnStatus getColumnByIndex(int index) {
-    return columns.stream().filter(c -> c.getColumnIndex() == index).findFirst().orElse(null);
+    LookupIndex<Integer, ColumnStatus> lookup = columnsByIndex;
+    if (lookup == null || !lookup.isFor(columns)) {
+      lookup = new LookupIndex<>(columns, ColumnStatus::getColumnIndex);
+      columnsByIndex = lookup;
+    }
+    return lookup.get(index);
+  }
+
+  private void clearColumnIndexes() {
+    columnsById = null;
+    columnsByIndex = null;
   }
 
   @JsonIgnore
@@ -35,6 +35,8 @@ public class ViewerJob extends IsIndexed implements Serializable {
   private String exitDescription;
   private Long rowsToProcess;
   private Long processRows;
+  private Long rowsPerSecond;
+  private Date estimatedEndTime;
 
   @Override
   public void setUuid(String uuid) {
@@ -171,6 +173,22 @@ public class ViewerJob extends IsIndexed implements Serializable {
     this.processRows = processRows;
   }
 
+  public Long getRowsPerSecond() {
+    return rowsPerSecond;
+  }
+
+  public void setRowsPerSecond(Long rowsPerSecond) {
+    this.rowsPerSecond = rowsPerSecond;
+  }
+
+  public Date getEstimatedEndTime() {
+    return estimatedEndTime;
+  }
+
+  public void setEstimatedEndTime(Date estimatedEndTime) {
+    this.estimatedEndTime = estimatedEndTime;
+  }
+
   public String getSchemaName() {
     return schemaName;
   }
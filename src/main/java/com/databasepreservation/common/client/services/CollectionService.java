@@ -132,6 +132,12 @@ public interface CollectionService extends DirectRestService {
   void run(@PathParam("databaseUUID") String databaseUUID, @PathParam("collectionUUID") String collectionUUID,
     @PathParam("tableUUID") String tableUUID);
 
+  @POST
+  @Path("{databaseUUID}/collection/{collectionUUID}/lobs/consolidate")
+  @ApiOperation(value = "Copies the LOBs of a database out of its SIARD in the background, so that they can be downloaded without it")
+  void consolidateLobs(@PathParam("databaseUUID") String databaseUUID,
+    @PathParam("collectionUUID") String collectionUUID);
+
   /*******************************************************************************
    * Collection Resource - Data Sub-resource
    *******************************************************************************/
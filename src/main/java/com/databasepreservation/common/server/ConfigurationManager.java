@@ -9,10 +9,13 @@ package com.databasepreservation.common.server;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
@@ -51,6 +54,7 @@ public class ConfigurationManager {
   private final Object databaseStatusFileLock = new Object();
   private final Object collectionStatusFileLock = new Object();
   private long entryLogLineNumber = -1;
+  private final StatusFileCache statusCache = new StatusFileCache();
 
   public ConfigurationManager() {
   }
@@ -72,7 +76,19 @@ public class ConfigurationManager {
         ViewerConstants.SOLR_INDEX_ROW_COLLECTION_NAME_PREFIX + collectionUUID + ViewerConstants.JSON_EXTENSION);
     }
 
-    return JsonUtils.readObjectFromFile(collectionStatusFile, CollectionStatus.class);
+    return statusCache.get(collectionStatusFile, CollectionStatus.class);
+  }
+
+  /**
+   * Same as {@link #getConfigurationCollection(String, String)} but returns a
+   * private copy read from disk, meant to be modified and saved with
+   * {@link #updateCollectionStatus(String, CollectionStatus)}. The object
+   * returned by {@link #getConfigurationCollection(String, String)} is shared
+   * and must not be modified.
+   */
+  public CollectionStatus getConfigurationCollectionForUpdate(String databaseUUID, String collectionUUID)
+    throws GenericException {
+    return getCollectionStatus(databaseUUID, ViewerConstants.SOLR_INDEX_ROW_COLLECTION_NAME_PREFIX + collectionUUID);
   }
 
   public void editSearch(String databaseUUID, String uuid, String name, String description) {
@@ -202,7 +218,7 @@ public class ConfigurationManager {
       databaseDescription, solrCollectionName);
 
     try {
-      final DatabaseStatus databaseStatus = getDatabaseStatus(databaseUUID);
+      final DatabaseStatus databaseStatus = readDatabaseStatus(databaseUUID);
 
       Path collectionFile = getCollectionStatusPath(databaseUUID, solrCollectionName);
       // verify if file exists
@@ -217,6 +233,7 @@ public class ConfigurationManager {
 
         // Save collection file and update database file
         JsonUtils.writeObjectToFile(collectionStatus, collectionFile);
+        statusCache.invalidate(collectionFile);
         synchronized (databaseStatusFileLock) {
           databaseStatus.addBrowseCollection(solrCollectionName);
           updateDatabaseStatus(databaseStatus);
@@ -228,6 +245,10 @@ public class ConfigurationManager {
   }
 
   public DatabaseStatus getDatabaseStatus(String databaseUUID) throws GenericException {
+    return statusCache.get(getDatabaseStatusPath(databaseUUID), DatabaseStatus.class);
+  }
+
+  private DatabaseStatus readDatabaseStatus(String databaseUUID) throws GenericException {
     synchronized (databaseStatusFileLock) {
       final Path databaseStatusFile = getDatabaseStatusPath(databaseUUID);
       return JsonUtils.readObjectFromFile(databaseStatusFile, DatabaseStatus.class);
@@ -271,6 +292,7 @@ public class ConfigurationManager {
 
           // update database file
           JsonTransformer.writeObjectToFile(databaseStatus, databaseFile);
+          statusCache.invalidate(databaseFile);
         }
       } catch (GenericException | ViewerException e) {
         LOGGER.debug(e.getMessage(), e);
@@ -282,6 +304,7 @@ public class ConfigurationManager {
     synchronized (databaseStatusFileLock) {
       Path statusFile = getDatabaseStatusPath(status.getId());
       JsonTransformer.writeObjectToFile(status, statusFile);
+      statusCache.invalidate(statusFile);
     }
   }
 
@@ -289,6 +312,7 @@ public class ConfigurationManager {
     synchronized (collectionStatusFileLock) {
       Path statusFile = getCollectionStatusPath(databaseUUID, status.getId());
       JsonTransformer.writeObjectToFile(status, statusFile);
+      statusCache.invalidate(statusFile);
     }
   }
 
@@ -339,6 +363,7 @@ public class ConfigurationManager {
             dbptkVersion, databaseStatus.getValidationStatus().getIndicators()));
 
           JsonTransformer.writeObjectToFile(databaseStatus, databaseFile);
+          statusCache.invalidate(databaseFile);
         }
       } catch (GenericException | ViewerException e) {
         LOGGER.debug(e.getMessage(), e);
@@ -357,6 +382,7 @@ public class ConfigurationManager {
           Files.createFile(databaseStatusPath);
           // Write file
           JsonUtils.writeObjectToFile(StatusUtils.getDatabaseStatus(database), databaseStatusPath);
+          statusCache.invalidate(databaseStatusPath);
 
           addCollection(database.getUuid(), database.getMetadata().getName(), database.getMetadata().getDescription(),
             ViewerConstants.SOLR_INDEX_ROW_COLLECTION_NAME_PREFIX + database.getUuid());
@@ -390,6 +416,7 @@ public class ConfigurationManager {
 
     try {
       Files.deleteIfExists(denormalizationFilePath);
+      statusCache.invalidate(denormalizationFilePath);
     } catch (IOException e) {
       throw new GenericException(
         "Could not delete the collection file " + collectionUUID + ViewerConstants.JSON_EXTENSION + " from the system",
@@ -407,6 +434,7 @@ public class ConfigurationManager {
 
     try {
       Files.deleteIfExists(denormalizationFilePath);
+      statusCache.invalidate(denormalizationFilePath);
     } catch (IOException e) {
       throw new GenericException("Could not delete the denormalization file " + denormalizationUUID
         + ViewerConstants.JSON_EXTENSION + " from the system", e);
@@ -414,6 +442,27 @@ public class ConfigurationManager {
   }
 
   public void addLogEntry(ActivityLogEntry logEntry, Path logDirectory) throws GenericException {
+    synchronized (logFileLock) {
+      appendLogEntries(Collections.singletonList(logEntry), logDirectory);
+
+      // write to Solr
+      try {
+        ViewerFactory.getSolrManager().addLogEntry(logEntry);
+      } catch (NotFoundException | GenericException e) {
+        // Do nothing
+      }
+    }
+  }
+
+  /**
+   * Appends a group of log entries to the daily log file with a single write,
+   * assigning their line numbers. Does not index them.
+   */
+  public void appendLogEntries(List<ActivityLogEntry> logEntries, Path logDirectory) throws GenericException {
+    if (logEntries.isEmpty()) {
+      return;
+    }
+
     SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
     synchronized (logFileLock) {
       String filename = sdf.format(new Date());
@@ -435,17 +484,22 @@ public class ConfigurationManager {
         entryLogLineNumber = JsonUtils.calculateNumberOfLines(logFile) + 1;
       }
 
-      // write to log file
-      logEntry.setLineNumber(entryLogLineNumber);
-      JsonUtils.appendObjectToFile(logEntry, logFile);
-      entryLogLineNumber++;
+      // write to log file, the line number only advances once written
+      long lineNumber = entryLogLineNumber;
+      StringBuilder lines = new StringBuilder();
+      for (ActivityLogEntry logEntry : logEntries) {
+        logEntry.setLineNumber(lineNumber++);
+        lines.append(JsonUtils.getJsonFromObject(logEntry)).append('\n');
+      }
 
-      // write to Solr
       try {
-        ViewerFactory.getSolrManager().addLogEntry(logEntry);
-      } catch (NotFoundException | GenericException e) {
-        // Do nothing
+        Files.write(logFile, lines.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        // part of the lines may have been written, count them again next time
+        entryLogLineNumber = -1;
+        throw new GenericException("Error writing log entries into " + logFile, e);
       }
+      entryLogLineNumber = lineNumber;
     }
   }
 }
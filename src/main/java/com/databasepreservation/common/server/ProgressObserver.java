@@ -21,6 +21,8 @@ public class ProgressObserver implements ModuleObserver {
   private ProgressData progressData;
 
   public ProgressObserver(String UUID) {
+    ProgressData.evictFinished(System.currentTimeMillis() - ViewerConfiguration.getInstance()
+      .getViewerConfigurationAsInt(86400000, ViewerConfiguration.PROPERTY_PROGRESS_FINISHED_RETENTION));
     progressData = ProgressData.getInstance(UUID);
   }
 
@@ -0,0 +1,135 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the parsed content of the status JSON files (database and collection
+ * status), so that they are not read and parsed on every request.
+ *
+ * The cached objects are shared snapshots and must be treated as read-only,
+ * code that edits a status must read its own copy from disk, write it and
+ * then {@link #invalidate(Path)} the file. Files changed outside the
+ * application are detected with a {@link WatchService} on the directories of
+ * the cached files.
+ */
+class StatusFileCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StatusFileCache.class);
+
+  private final Map<Path, Object> snapshots = new ConcurrentHashMap<>();
+  private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+  private final AtomicLong invalidations = new AtomicLong();
+  private WatchService watchService;
+
+  StatusFileCache() {
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+      Thread watcher = new Thread(this::watch, "status-file-cache-watcher");
+      watcher.setDaemon(true);
+      watcher.start();
+    } catch (IOException | UnsupportedOperationException e) {
+      LOGGER.warn("Could not watch status files for changes, the status cache is disabled", e);
+      watchService = null;
+    }
+  }
+
+  /**
+   * @return the cached snapshot of the file, reading and caching it if needed
+   */
+  <T> T get(Path file, Class<T> objectClass) throws GenericException {
+    if (watchService == null) {
+      return JsonUtils.readObjectFromFile(file, objectClass);
+    }
+
+    Path key = file.toAbsolutePath();
+    Object snapshot = snapshots.get(key);
+    if (objectClass.isInstance(snapshot)) {
+      return objectClass.cast(snapshot);
+    }
+
+    watchDirectory(key.getParent());
+    long generation = invalidations.get();
+    T object = JsonUtils.readObjectFromFile(file, objectClass);
+    // a write that finished while the file was being read makes this copy
+    // stale, in that case it is returned but not cached
+    if (object != null && generation == invalidations.get()) {
+      snapshots.put(key, object);
+      if (generation != invalidations.get()) {
+        snapshots.remove(key, object);
+      }
+    }
+    return object;
+  }
+
+  void invalidate(Path file) {
+    invalidations.incrementAndGet();
+    snapshots.remove(file.toAbsolutePath());
+  }
+
+  private void invalidateDirectory(Path directory) {
+    invalidations.incrementAndGet();
+    snapshots.keySet().removeIf(path -> directory.equals(path.getParent()));
+  }
+
+  private void watchDirectory(Path directory) {
+    if (directory == null || !watchedDirectories.add(directory)) {
+      return;
+    }
+
+    try {
+      directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+        StandardWatchEventKinds.ENTRY_DELETE);
+    } catch (IOException e) {
+      watchedDirectories.remove(directory);
+      LOGGER.debug("Could not watch directory {}", directory, e);
+    }
+  }
+
+  private void watch() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      Path directory = (Path) key.watchable();
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          invalidateDirectory(directory);
+        } else {
+          invalidate(directory.resolve((Path) event.context()));
+        }
+      }
+
+      if (!key.reset()) {
+        // the directory no longer exists (e.g. the database was deleted)
+        watchedDirectories.remove(directory);
+        invalidateDirectory(directory);
+      }
+    }
+  }
+}
@@ -22,6 +22,8 @@ public class ValidationProgressObserver implements ValidationObserver {
 
   public ValidationProgressObserver(String UUID) {
     databaseUUID = UUID;
+    ValidationProgressData.evictFinished(System.currentTimeMillis() - ViewerConfiguration.getInstance()
+      .getViewerConfigurationAsInt(86400000, ViewerConfiguration.PROPERTY_PROGRESS_FINISHED_RETENTION));
     progressData = ValidationProgressData.getInstance(UUID);
   }
 
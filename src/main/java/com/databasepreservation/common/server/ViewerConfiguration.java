@@ -113,9 +113,52 @@ public class ViewerConfiguration extends ViewerAbstractConfiguration {
   public static final String PROPERTY_BATCH_JOBS_CORE_POOL_SIZE = "batch.jobs.corePoolSize";
   public static final String PROPERTY_BATCH_JOBS_MAX_POOL_SIZE = "batch.jobs.maxPoolSize";
   public static final String PROPERTY_BATCH_JOBS_QUEUE_SIZE = "batch.jobs.queueSize";
+  public static final String PROPERTY_BATCH_JOBS_PROGRESS_FLUSH_INTERVAL = "batch.jobs.progress.flushInterval_ms";
+  public static final String PROPERTY_BATCH_JOBS_PROGRESS_FLUSH_ROWS = "batch.jobs.progress.flushRows";
+  public static final String PROPERTY_PROGRESS_FINISHED_RETENTION = "progress.finished.retention_ms";
 
   public static final String PROPERTY_BLOB_PREFIX_NAME ="ui.blob.prefix.name";
 
+  public static final String PROPERTY_INGEST_BATCH_ENABLED = "ingest.batch.enabled";
+  public static final String PROPERTY_INGEST_BATCH_SIZE = "ingest.batch.size";
+  public static final String PROPERTY_INGEST_BATCH_MAX_BYTES = "ingest.batch.maxBytes";
+  public static final String PROPERTY_INGEST_BATCH_SENDER_THREADS = "ingest.batch.senderThreads";
+  public static final String PROPERTY_INGEST_BATCH_QUEUE_SIZE = "ingest.batch.queueSize";
+  public static final String PROPERTY_INGEST_CONVERSION_THREADS = "ingest.conversion.threads";
+  public static final String PROPERTY_INGEST_CONVERSION_MAX_PENDING_ROWS = "ingest.conversion.maxPendingRows";
+  public static final String PROPERTY_INGEST_BULK_LOAD_ENABLED = "ingest.bulkLoad.enabled";
+  public static final String PROPERTY_INGEST_BULK_LOAD_DISABLE_UPDATE_LOG = "ingest.bulkLoad.disableUpdateLog";
+  public static final String PROPERTY_INGEST_BULK_LOAD_MAX_SEGMENTS = "ingest.bulkLoad.optimize.maxSegments";
+  public static final String PROPERTY_ACTIVITY_LOG_ASYNC_ENABLED = "activity.log.async.enabled";
+  public static final String PROPERTY_ACTIVITY_LOG_BUFFER_SIZE = "activity.log.bufferSize";
+  public static final String PROPERTY_ACTIVITY_LOG_BATCH_SIZE = "activity.log.batchSize";
+  public static final String PROPERTY_ACTIVITY_LOG_FLUSH_INTERVAL = "activity.log.flushInterval_ms";
+  public static final String PROPERTY_ACTIVITY_LOG_COMMIT_WITHIN = "activity.log.commitWithin_ms";
+  public static final String PROPERTY_EXPORT_TEMPLATE_CACHE_SIZE = "export.template.cacheSize";
+  public static final String PROPERTY_SEARCH_PREFETCH_DEPTH = "search.prefetch.depth";
+  public static final String PROPERTY_SEARCH_PAGE_TARGET_BYTES = "search.page.targetBytes";
+  public static final String PROPERTY_DENORMALIZE_JOIN_MAX_INDEXED_BYTES = "denormalization.join.maxIndexedBytes";
+  public static final String PROPERTY_DENORMALIZE_PARTITIONS = "denormalization.partitions";
+  public static final String PROPERTY_DENORMALIZE_CHUNK_SIZE = "denormalization.chunkSize";
+  public static final String PROPERTY_LOBS_CONSOLIDATION_AUTO = "lobs.consolidation.auto";
+  public static final String PROPERTY_LOBS_CONSOLIDATION_PARTITIONS = "lobs.consolidation.partitions";
+  public static final String PROPERTY_LOBS_CONSOLIDATION_CHUNK_SIZE = "lobs.consolidation.chunkSize";
+  public static final String PROPERTY_LOBS_CONSOLIDATION_MAX_BYTES_PER_SECOND = "lobs.consolidation.maxBytesPerSecond";
+  public static final String PROPERTY_SOLR_COMMIT_PREFIX = "solr.commit";
+  public static final String PROPERTY_SOLR_COMMIT_POLICY = "policy";
+  public static final String PROPERTY_SOLR_COMMIT_WITHIN = "within_ms";
+  public static final String PROPERTY_DOWNLOAD_SENDFILE_ENABLED = "download.sendfile.enabled";
+  public static final String PROPERTY_DOWNLOAD_BUFFER_SIZE = "download.buffer.size_bytes";
+  public static final String PROPERTY_SIARD_ARCHIVES_CACHE_SIZE = "siard.archives.cacheSize";
+  public static final String PROPERTY_SIARD_ARCHIVES_MAX_OPEN = "siard.archives.maxOpen";
+  public static final String PROPERTY_DATABASE_METADATA_CACHE_SIZE = "database.metadata.cacheSize";
+  public static final String PROPERTY_SOLR_COLLECTION_READINESS_TIMEOUT = "solr.collection.readiness.timeout_ms";
+  public static final String PROPERTY_SOLR_UPDATE_RETRY_TIMEOUT = "solr.update.retry.timeout_ms";
+  public static final String PROPERTY_SOLR_UPDATE_RETRY_INITIAL_BACKOFF = "solr.update.retry.initialBackoff_ms";
+  public static final String PROPERTY_SOLR_UPDATE_RETRY_MAX_BACKOFF = "solr.update.retry.maxBackoff_ms";
+  public static final String PROPERTY_SOLR_UPDATE_BREAKER_FAILURES = "solr.update.breaker.failures";
+  public static final String PROPERTY_SOLR_UPDATE_BREAKER_OPEN = "solr.update.breaker.open_ms";
+
   private static boolean instantiatedWithoutErrors = true;
   private static String applicationEnvironment = ViewerConstants.APPLICATION_ENV_SERVER;
 
@@ -11,6 +11,7 @@ import org.apache.solr.client.solrj.SolrClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.databasepreservation.common.server.activity.log.ActivityLogWriter;
 import com.databasepreservation.common.server.activity.log.strategies.ActivityLogStrategyFactory;
 import com.databasepreservation.common.server.index.DatabaseRowsSolrManager;
 import com.databasepreservation.common.server.index.factory.SolrClientFactory;
@@ -26,6 +27,7 @@ public class ViewerFactory {
   private static ViewerConfiguration configuration;
   private static ConfigurationManager configurationManager;
   private static ActivityLogStrategyFactory activityLogStrategyFactory;
+  private static ActivityLogWriter activityLogWriter;
   private static boolean instantiated = false;
 
   private static synchronized void instantiate() {
@@ -35,10 +37,35 @@ public class ViewerFactory {
       solrManager = new DatabaseRowsSolrManager(solrClient);
       configurationManager = new ConfigurationManager();
       activityLogStrategyFactory = new ActivityLogStrategyFactory();
+      activityLogWriter = createActivityLogWriter();
       instantiated = true;
     }
   }
 
+  private static ActivityLogWriter createActivityLogWriter() {
+    if (!configuration.getViewerConfigurationAsBoolean(true, ViewerConfiguration.PROPERTY_ACTIVITY_LOG_ASYNC_ENABLED)) {
+      return null;
+    }
+
+    ActivityLogWriter writer = new ActivityLogWriter(configurationManager, solrManager,
+      configuration.getActivityLogsPath(),
+      configuration.getViewerConfigurationAsInt(10000, ViewerConfiguration.PROPERTY_ACTIVITY_LOG_BUFFER_SIZE),
+      configuration.getViewerConfigurationAsInt(500, ViewerConfiguration.PROPERTY_ACTIVITY_LOG_BATCH_SIZE),
+      configuration.getViewerConfigurationAsInt(1000, ViewerConfiguration.PROPERTY_ACTIVITY_LOG_FLUSH_INTERVAL));
+    return writer;
+  }
+
+  /**
+   * Writes the activity log entries still buffered. Called when the application
+   * context is closed, before the servlets (and with them the Solr client) are
+   * destroyed.
+   */
+  public static synchronized void shutdown() {
+    if (instantiated && activityLogWriter != null) {
+      activityLogWriter.shutdown();
+    }
+  }
+
   public static Integer getEnvInt(String name, Integer defaultValue) {
     Integer envInt;
     try {
@@ -78,6 +105,15 @@ public class ViewerFactory {
     return configurationManager;
   }
 
+  /**
+   * @return the background activity log writer, or null if activity log
+   *         entries are to be written synchronously
+   */
+  public static ActivityLogWriter getActivityLogWriter() {
+    instantiate();
+    return activityLogWriter;
+  }
+
   public static ActivityLogStrategyFactory getActivityLogStrategyFactory() {
     instantiate();
     return activityLogStrategyFactory;
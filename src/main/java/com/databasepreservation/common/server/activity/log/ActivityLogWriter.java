@@ -0,0 +1,149 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.activity.log;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.databasepreservation.common.client.models.activity.logs.ActivityLogEntry;
+import com.databasepreservation.common.server.ConfigurationManager;
+import com.databasepreservation.common.server.index.DatabaseRowsSolrManager;
+
+/**
+ * Writes activity log entries in the background, so that the REST calls that
+ * register them do not wait for the log file append nor for Solr.
+ *
+ * Entries are kept in a bounded buffer and a single writer thread takes them
+ * in groups: each group is appended to the daily log file in one write and
+ * sent to Solr in one request, committed according to the commit policy of the
+ * logs collection. Callers only block when the
+ * buffer is full.
+ */
+public class ActivityLogWriter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ActivityLogWriter.class);
+
+  private final ConfigurationManager configurationManager;
+  private final DatabaseRowsSolrManager solrManager;
+  private final Path logDirectory;
+  private final BlockingQueue<ActivityLogEntry> buffer;
+  private final int batchSize;
+  private final long flushIntervalMs;
+  private final Thread writerThread;
+
+  // held by add() while it queues an entry, so that no entry is queued after
+  // shutdown() has stopped the writer thread
+  private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+  private volatile boolean running = true;
+
+  public ActivityLogWriter(ConfigurationManager configurationManager, DatabaseRowsSolrManager solrManager,
+    Path logDirectory, int bufferSize, int batchSize, long flushIntervalMs) {
+    this.configurationManager = configurationManager;
+    this.solrManager = solrManager;
+    this.logDirectory = logDirectory;
+    this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+    this.batchSize = Math.max(1, batchSize);
+    this.flushIntervalMs = Math.max(1, flushIntervalMs);
+
+    writerThread = new Thread(this::writeEntries, "activity-log-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Queues a log entry to be written. Blocks only while the buffer is full.
+   */
+  public void add(ActivityLogEntry logEntry) {
+    boolean queued = false;
+    runningLock.readLock().lock();
+    try {
+      if (running) {
+        buffer.put(logEntry);
+        queued = true;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.warn("Interrupted while queueing activity log entry {}, writing it directly", logEntry.getUuid());
+    } finally {
+      runningLock.readLock().unlock();
+    }
+
+    if (!queued) {
+      writeBatch(Collections.singletonList(logEntry));
+    }
+  }
+
+  /**
+   * Stops accepting entries in the background and writes everything still in
+   * the buffer. The writer thread is not interrupted, it finishes the group it
+   * is writing.
+   */
+  public void shutdown() {
+    runningLock.writeLock().lock();
+    try {
+      running = false;
+    } finally {
+      runningLock.writeLock().unlock();
+    }
+
+    try {
+      // the writer thread stops after its current group or poll
+      writerThread.join(TimeUnit.SECONDS.toMillis(30) + flushIntervalMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    drain();
+  }
+
+  private void writeEntries() {
+    while (running) {
+      try {
+        ActivityLogEntry first = buffer.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          List<ActivityLogEntry> batch = new ArrayList<>(batchSize);
+          batch.add(first);
+          buffer.drainTo(batch, batchSize - 1);
+          writeBatch(batch);
+        }
+      } catch (InterruptedException e) {
+        // the remaining entries are drained by shutdown()
+        Thread.currentThread().interrupt();
+        break;
+      } catch (RuntimeException e) {
+        LOGGER.error("Unexpected error writing activity log entries", e);
+      }
+    }
+  }
+
+  private synchronized void drain() {
+    List<ActivityLogEntry> batch = new ArrayList<>(batchSize);
+    while (buffer.drainTo(batch, batchSize) > 0) {
+      writeBatch(batch);
+      batch = new ArrayList<>(batchSize);
+    }
+  }
+
+  private void writeBatch(List<ActivityLogEntry> batch) {
+    try {
+      configurationManager.appendLogEntries(batch, logDirectory);
+    } catch (GenericException e) {
+      LOGGER.error("Error writing {} activity log entries to file", batch.size(), e);
+    }
+    solrManager.addLogEntries(batch);
+  }
+}
@@ -42,6 +42,8 @@ import com.databasepreservation.common.client.index.filter.SimpleFilterParameter
 import com.databasepreservation.common.client.models.dbptk.Module;
 import com.databasepreservation.common.client.models.parameters.PreservationParameter;
 import com.databasepreservation.common.client.models.parameters.SIARDUpdateParameters;
+import com.databasepreservation.common.client.models.progress.ProgressData;
+import com.databasepreservation.common.client.models.progress.ValidationProgressData;
 import com.databasepreservation.common.client.models.status.collection.TableStatus;
 import com.databasepreservation.common.client.models.structure.ViewerDatabase;
 import com.databasepreservation.common.client.models.structure.ViewerDatabaseFromToolkit;
@@ -65,8 +67,10 @@ import com.databasepreservation.common.server.ViewerFactory;
 import com.databasepreservation.common.server.index.DatabaseRowsSolrManager;
 import com.databasepreservation.common.server.index.factory.SolrClientFactory;
 import com.databasepreservation.common.server.index.schema.SolrDefaultCollectionRegistry;
+import com.databasepreservation.common.server.index.schema.SolrRowsCollectionRegistry;
 import com.databasepreservation.common.server.index.utils.SolrUtils;
 import com.databasepreservation.common.transformers.ToolkitStructure2ViewerStructure;
+import com.databasepreservation.common.utils.SiardArchiveCache;
 import com.databasepreservation.common.utils.StatusUtils;
 import com.databasepreservation.model.exception.ModuleException;
 import com.databasepreservation.model.exception.SIARDVersionNotSupportedException;
@@ -86,7 +90,9 @@ import com.databasepreservation.modules.jdbc.in.JDBCImportModule;
 import com.databasepreservation.modules.siard.SIARD2ModuleFactory;
 import com.databasepreservation.modules.siard.SIARDEditFactory;
 import com.databasepreservation.modules.siard.SIARDValidateFactory;
+import com.databasepreservation.modules.viewer.DbvtkExportModule;
 import com.databasepreservation.modules.viewer.DbvtkModuleFactory;
+import com.databasepreservation.utils.FileUtils;
 import com.databasepreservation.utils.ReflectionUtils;
 
 /**
@@ -711,6 +717,15 @@ public class SIARDController {
       throw new GenericException("Could not initialize conversion modules", e);
     } catch (ModuleException | RuntimeException e) {
       throw new GenericException("Could not convert the database.", e);
+    } finally {
+      // releases what the export module holds and restores the rows collection
+      // settings if the conversion did not finish
+      DbvtkExportModule.abort(databaseUUID);
+      try {
+        ViewerFactory.getSolrManager().finishBulkLoad(databaseUUID, false);
+      } catch (ViewerException e) {
+        LOGGER.error("Could not restore the settings of the rows collection of database {}", databaseUUID, e);
+      }
     }
   }
 
@@ -721,6 +736,8 @@ public class SIARDController {
     try (Reporter reporter = getReporter(databaseUUID, ReporterType.EDIT_METADATA)) {
       ViewerSIARDBundle bundleSiard = parameters.getSiardBundle();
       if (new File(siardPath).isFile()) {
+        // the edition rewrites the archive
+        SiardArchiveCache.invalidate(siardPath);
         SIARDEdition siardEdition = SIARDEdition.newInstance();
 
         siardEdition.editModule(new SIARDEditFactory())
@@ -853,6 +870,10 @@ public class SIARDController {
       || database.getStatus().equals(ViewerDatabaseStatus.ERROR)) {
       final String collectionName = SOLR_INDEX_ROW_COLLECTION_NAME_PREFIX + databaseUUID;
       if (SolrClientFactory.get().deleteCollection(collectionName)) {
+        SolrRowsCollectionRegistry.unregister(databaseUUID);
+        // the LOBs extracted or consolidated from the rows
+        FileUtils
+          .deleteDirectoryRecursiveQuietly(ViewerFactory.getViewerConfiguration().getLobPath().resolve(databaseUUID));
         Filter savedSearchFilter = new Filter(new SimpleFilterParameter(SOLR_SEARCHES_DATABASE_UUID, databaseUUID));
         SolrUtils.delete(ViewerFactory.getSolrClient(), SolrDefaultCollectionRegistry.get(SavedSearch.class),
           savedSearchFilter);
@@ -861,6 +882,8 @@ public class SIARDController {
       }
     }
     ViewerFactory.getSolrManager().deleteDatabasesCollection(databaseUUID);
+    ProgressData.clear(databaseUUID);
+    ValidationProgressData.clear(databaseUUID);
     return true;
   }
 
@@ -871,6 +894,7 @@ public class SIARDController {
     }
 
     try {
+      SiardArchiveCache.invalidate(siardPath);
       Files.delete(path);
       LOGGER.info("SIARD file removed from system ({})", path.toAbsolutePath());
       final DatabaseRowsSolrManager solrManager = ViewerFactory.getSolrManager();
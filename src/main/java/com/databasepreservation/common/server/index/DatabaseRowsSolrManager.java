@@ -11,17 +11,21 @@ import java.io.IOException;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.request.CollectionAdminRequest;
-import org.apache.solr.client.solrj.response.UpdateResponse;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
@@ -41,6 +45,7 @@ import com.databasepreservation.common.client.index.IndexResult;
 import com.databasepreservation.common.client.index.IsIndexed;
 import com.databasepreservation.common.client.index.facets.Facets;
 import com.databasepreservation.common.client.index.filter.Filter;
+import com.databasepreservation.common.client.index.filter.OneOfManyFilterParameter;
 import com.databasepreservation.common.client.index.filter.SimpleFilterParameter;
 import com.databasepreservation.common.client.index.sort.Sorter;
 import com.databasepreservation.common.client.models.activity.logs.ActivityLogEntry;
@@ -52,12 +57,17 @@ import com.databasepreservation.common.client.models.structure.ViewerJob;
 import com.databasepreservation.common.client.models.structure.ViewerMetadata;
 import com.databasepreservation.common.client.models.structure.ViewerRow;
 import com.databasepreservation.common.client.models.structure.ViewerTable;
+import com.databasepreservation.common.client.tools.FilterUtils;
 import com.databasepreservation.common.exceptions.ViewerException;
+import com.databasepreservation.common.server.ViewerConfiguration;
 import com.databasepreservation.common.server.ViewerFactory;
+import com.databasepreservation.common.server.index.factory.SolrClientFactory;
 import com.databasepreservation.common.server.index.schema.SolrCollection;
 import com.databasepreservation.common.server.index.schema.SolrDefaultCollectionRegistry;
 import com.databasepreservation.common.server.index.schema.SolrRowsCollectionRegistry;
 import com.databasepreservation.common.server.index.schema.collections.RowsCollection;
+import com.databasepreservation.common.server.index.utils.CursorMarkCheckpoints;
+import com.databasepreservation.common.server.index.utils.DatabaseMetadataCache;
 import com.databasepreservation.common.server.index.utils.IterableIndexResult;
 import com.databasepreservation.common.server.index.utils.IterableNestedIndexResult;
 import com.databasepreservation.common.server.index.utils.JsonTransformer;
@@ -72,12 +82,21 @@ import com.databasepreservation.utils.FileUtils;
  */
 public class DatabaseRowsSolrManager {
   private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseRowsSolrManager.class);
-  private static final long INSERT_DOCUMENT_TIMEOUT = 60000; // 60 seconds
+  private static final int NESTED_CLEANUP_BATCH_SIZE = 1000;
+  // marks the rows that have nested documents
+  private static final String NESTED_PARENT_FIELD = "type" + ViewerConstants.SOLR_DYN_TEXT_GENERAL;
+  private static final String NESTED_PARENT_VALUE = "parent";
 
   private final SolrClient client;
+  private final SolrCommitPolicies commitPolicies;
+  private final SolrBulkLoad bulkLoad;
+  private final SolrUpdateRetry updateRetry;
 
   public DatabaseRowsSolrManager(SolrClient client) {
     this.client = client;
+    this.commitPolicies = new SolrCommitPolicies(ViewerConfiguration.getInstance());
+    this.bulkLoad = new SolrBulkLoad(ViewerConfiguration.getInstance());
+    this.updateRetry = new SolrUpdateRetry(ViewerConfiguration.getInstance());
   }
 
   /**
@@ -89,6 +108,7 @@ public class DatabaseRowsSolrManager {
   public void addDatabaseMetadata(ViewerDatabase database) throws ViewerException {
     // add this database to the collection
     insertDocument(ViewerDatabase.class, database);
+    DatabaseMetadataCache.invalidate(database.getUuid());
     // Delegate
     try {
       ViewerFactory.getConfigurationManager().addDatabase(database);
@@ -98,10 +118,52 @@ public class DatabaseRowsSolrManager {
   }
 
   public void addDatabaseRowCollection(final String databaseUUID) throws ViewerException {
+    // a new ingestion, nothing known of a previous one still holds
+    CursorMarkCheckpoints.invalidate(databaseUUID);
+    DatabaseMetadataCache.invalidate(databaseUUID);
     updateValidationFields(databaseUUID,
       Pair.of(ViewerConstants.SOLR_DATABASES_STATUS, ViewerDatabaseStatus.INGESTING.toString()));
     RowsCollection collection = new RowsCollection(databaseUUID);
-    collection.createRowsCollection();
+    if (!bulkLoad.isEnabled()) {
+      collection.createRowsCollection();
+    } else if (collection.createRowsCollection(bulkLoad.getCreationProperties())) {
+      String collectionName = collection.getIndexName();
+      try {
+        bulkLoad.start(client, collectionName);
+        commitPolicies.startBulkLoad(collectionName);
+      } catch (SolrServerException | IOException | SolrException | ViewerException e) {
+        LOGGER.warn("Could not start the bulk load of collection {}, loading it with the usual settings",
+          collectionName, e);
+        finishBulkLoad(collectionName, false);
+      }
+    }
+  }
+
+  /**
+   * Ends the bulk load of the rows collection of a database: hard commit,
+   * restore the collection settings and, if the ingestion completed, merge its
+   * segments. Does nothing if the collection is not being bulk loaded.
+   *
+   * @param completed
+   *          true if the ingestion completed
+   * @throws ViewerException
+   *           if the settings of the collection could not be restored
+   */
+  public void finishBulkLoad(String databaseUUID, boolean completed) throws ViewerException {
+    RowsCollection rowsCollection = SolrRowsCollectionRegistry.get(databaseUUID);
+    if (rowsCollection != null && commitPolicies.endBulkLoad(rowsCollection.getIndexName())) {
+      finishBulkLoad(rowsCollection.getIndexName(), completed);
+    }
+  }
+
+  private void finishBulkLoad(String collection, boolean completed) throws ViewerException {
+    try {
+      commitPolicies.get(collection).commit(client, collection);
+      bulkLoad.finish(client, collection, completed);
+    } catch (SolrServerException | IOException | SolrException e) {
+      throw new ViewerException("Could not restore the settings of collection " + collection + " after its bulk load",
+        e);
+    }
   }
 
   public void removeDatabase(ViewerDatabase database, Path lobFolder) throws ViewerException {
@@ -114,11 +176,17 @@ public class DatabaseRowsSolrManager {
       }
     }
 
+    CursorMarkCheckpoints.invalidate(database.getUuid());
+    DatabaseMetadataCache.invalidate(database.getUuid());
+
     // delete related rows collection
     String rowsCollectionName = SolrRowsCollectionRegistry.get(database.getUuid()).getIndexName();
     SolrRequest<?> request = CollectionAdminRequest.deleteCollection(rowsCollectionName);
     try {
       client.request(request);
+      SolrRowsCollectionRegistry.unregister(database.getUuid());
+      SolrClientFactory.get().forgetCollection(rowsCollectionName);
+      updateRetry.forget(rowsCollectionName);
       LOGGER.debug("Deleted collection {}", rowsCollectionName);
     } catch (SolrServerException | IOException | SolrException e) {
       throw new ViewerException("Error deleting collection " + rowsCollectionName, e);
@@ -163,6 +231,77 @@ public class DatabaseRowsSolrManager {
     }
   }
 
+  /**
+   * Adds a row through a batch writer instead of sending it on its own
+   *
+   * @see #createRowsBatchWriter(String)
+   */
+  public void addRow(String databaseUUID, ViewerRow row, SolrBatchWriter writer) throws ViewerException {
+    RowsCollection collection = SolrRowsCollectionRegistry.get(databaseUUID);
+
+    try {
+      writer.add(collection.toSolrDocument(row));
+    } catch (RequestNotValidException | GenericException | NotFoundException | AuthorizationDeniedException e) {
+      throw new ViewerException(e);
+    }
+  }
+
+  /**
+   * Creates a batch writer for the rows collection of a database, configured
+   * by the {@code ingest.batch.*} properties. Returns null when batch ingestion
+   * is disabled.
+   *
+   * @param databaseUUID
+   *          the database UUID
+   * @return the batch writer or null
+   */
+  public SolrBatchWriter createRowsBatchWriter(String databaseUUID) {
+    ViewerConfiguration configuration = ViewerFactory.getViewerConfiguration();
+    if (!configuration.getViewerConfigurationAsBoolean(true, ViewerConfiguration.PROPERTY_INGEST_BATCH_ENABLED)) {
+      return null;
+    }
+
+    RowsCollection collection = SolrRowsCollectionRegistry.get(databaseUUID);
+    return new SolrBatchWriter(this, collection.getIndexName(),
+      configuration.getViewerConfigurationAsInt(1000, ViewerConfiguration.PROPERTY_INGEST_BATCH_SIZE),
+      configuration.getViewerConfigurationAsInt(10485760, ViewerConfiguration.PROPERTY_INGEST_BATCH_MAX_BYTES),
+      configuration.getViewerConfigurationAsInt(2, ViewerConfiguration.PROPERTY_INGEST_BATCH_SENDER_THREADS),
+      configuration.getViewerConfigurationAsInt(4, ViewerConfiguration.PROPERTY_INGEST_BATCH_QUEUE_SIZE));
+  }
+
+  /**
+   * Hard commit of the collection, whatever its commit policy, at the end of an
+   * ingestion
+   */
+  public void commit(String collection) throws ViewerException {
+    if (commitPolicies.isBulkLoading(collection)) {
+      LOGGER.debug("Collection {} is being bulk loaded, deferring its commit", collection);
+      return;
+    }
+    try {
+      commitPolicies.get(collection).commit(client, collection);
+    } catch (SolrServerException | IOException | SolrException e) {
+      throw new ViewerException("Could not commit collection " + collection, e);
+    }
+  }
+
+  /**
+   * Commits the rows collection of a database if its commits are deferred to
+   * the end of the work that updated it
+   */
+  public void commitDeferred(String databaseUUID) throws ViewerException {
+    RowsCollection rowsCollection = SolrRowsCollectionRegistry.get(databaseUUID);
+    if (rowsCollection == null) {
+      return;
+    }
+    String collection = rowsCollection.getIndexName();
+    try {
+      commitPolicies.get(collection).commitDeferred(client, collection);
+    } catch (SolrServerException | IOException | SolrException e) {
+      throw new ViewerException("Could not commit collection " + collection, e);
+    }
+  }
+
   public void addRow(ViewerDatabaseFromToolkit viewerDatabase, ViewerRow row) throws ViewerException {
     RowsCollection collection = SolrRowsCollectionRegistry.get(viewerDatabase.getUuid());
 
@@ -220,6 +359,15 @@ public class DatabaseRowsSolrManager {
     return new IterableIndexResult(client, databaseUUID, filter, sorter, fieldsToReturn, extraParameters);
   }
 
+  /**
+   * Same as {@link #findAllRows(String, Filter, Sorter, List, Map)} but
+   * starting at the given row offset.
+   */
+  public IterableIndexResult findAllRows(String databaseUUID, final Filter filter, final Sorter sorter,
+    final List<String> fieldsToReturn, Map<String, String> extraParameters, long offset) {
+    return new IterableIndexResult(client, databaseUUID, filter, sorter, fieldsToReturn, extraParameters, offset);
+  }
+
   public IterableNestedIndexResult findAllRows(String databaseUUID, SolrQuery query, final Sorter sorter) {
     return new IterableNestedIndexResult(client, databaseUUID, query, sorter);
   }
@@ -247,8 +395,7 @@ public class DatabaseRowsSolrManager {
       .get(ActivityLogEntry.class);
     try {
       SolrInputDocument doc = activityLogEntrySolrCollection.toSolrDocument(logEntry);
-      client.add(activityLogEntrySolrCollection.getIndexName(), doc);
-      client.commit(activityLogEntrySolrCollection.getIndexName(), true, true, true);
+      addDocuments(activityLogEntrySolrCollection.getIndexName(), Collections.singletonList(doc));
     } catch (ViewerException | AuthorizationDeniedException | RequestNotValidException e) {
       LOGGER.debug("Solr error while converting to document", e);
     } catch (IOException e) {
@@ -258,12 +405,41 @@ public class DatabaseRowsSolrManager {
     }
   }
 
+  /**
+   * Indexes a group of log entries in a single request, committed according to
+   * the commit policy of the logs instead of once per entry.
+   */
+  public void addLogEntries(List<ActivityLogEntry> logEntries) {
+    SolrCollection<ActivityLogEntry> activityLogEntrySolrCollection = SolrDefaultCollectionRegistry
+      .get(ActivityLogEntry.class);
+    List<SolrInputDocument> docs = new ArrayList<>(logEntries.size());
+    for (ActivityLogEntry logEntry : logEntries) {
+      try {
+        docs.add(activityLogEntrySolrCollection.toSolrDocument(logEntry));
+      } catch (ViewerException | AuthorizationDeniedException | RequestNotValidException | NotFoundException
+        | GenericException e) {
+        LOGGER.debug("Solr error while converting to document", e);
+      }
+    }
+
+    if (docs.isEmpty()) {
+      return;
+    }
+
+    try {
+      addDocuments(activityLogEntrySolrCollection.getIndexName(), docs);
+    } catch (IOException e) {
+      LOGGER.debug("IOException while attempting to save activity log entries", e);
+    } catch (SolrServerException e) {
+      LOGGER.debug("Solr error while attempting to save activity log entries", e);
+    }
+  }
+
   public void addBatchJob(ViewerJob batchJob) throws NotFoundException, GenericException {
     SolrCollection<ViewerJob> viewerJobSolrCollection = SolrDefaultCollectionRegistry.get(ViewerJob.class);
     try {
       SolrInputDocument doc = viewerJobSolrCollection.toSolrDocument(batchJob);
-      client.add(viewerJobSolrCollection.getIndexName(), doc);
-      client.commit(viewerJobSolrCollection.getIndexName(), true, true, true);
+      addDocuments(viewerJobSolrCollection.getIndexName(), Collections.singletonList(doc));
     } catch (ViewerException | AuthorizationDeniedException | RequestNotValidException e) {
       LOGGER.debug("Solr error while converting to document", e);
     } catch (SolrServerException e) {
@@ -274,10 +450,25 @@ public class DatabaseRowsSolrManager {
   }
 
   public void editBatchJob(String jobUUID, long countRows, long processedRows) {
+    editBatchJob(jobUUID, countRows, processedRows, null, null);
+  }
+
+  /**
+   * Updates the progress of a batch job, the throughput and estimated end time
+   * are only updated when not null
+   */
+  public void editBatchJob(String jobUUID, long countRows, long processedRows, Long rowsPerSecond,
+    Date estimatedEndTime) {
     SolrInputDocument doc = new SolrInputDocument();
     doc.addField(ViewerConstants.INDEX_ID, jobUUID);
     doc.addField(ViewerConstants.SOLR_BATCH_JOB_ROWS_TO_PROCESS, SolrUtils.asValueUpdate(countRows));
     doc.addField(ViewerConstants.SOLR_BATCH_JOB_ROWS_PROCESSED, SolrUtils.asValueUpdate(processedRows));
+    if (rowsPerSecond != null) {
+      doc.addField(ViewerConstants.SOLR_BATCH_JOB_ROWS_PER_SECOND, SolrUtils.asValueUpdate(rowsPerSecond));
+    }
+    if (estimatedEndTime != null) {
+      doc.addField(ViewerConstants.SOLR_BATCH_JOB_ESTIMATED_END_TIME, SolrUtils.asValueUpdate(estimatedEndTime));
+    }
     try {
       insertDocument(ViewerConstants.SOLR_INDEX_BATCH_JOBS_COLLECTION_NAME, doc);
     } catch (ViewerException e) {
@@ -306,8 +497,7 @@ public class DatabaseRowsSolrManager {
 
     try {
       SolrInputDocument doc = savedSearchesCollection.toSolrDocument(savedSearch);
-      client.add(savedSearchesCollection.getIndexName(), doc);
-      client.commit(savedSearchesCollection.getIndexName(), true, true, true);
+      addDocuments(savedSearchesCollection.getIndexName(), Collections.singletonList(doc));
       // Delegate
       ViewerFactory.getConfigurationManager().addSearch(savedSearch);
     } catch (ViewerException | RequestNotValidException | AuthorizationDeniedException e) {
@@ -327,8 +517,7 @@ public class DatabaseRowsSolrManager {
     doc.addField(ViewerConstants.SOLR_SEARCHES_NAME, SolrUtils.asValueUpdate(name));
     doc.addField(ViewerConstants.SOLR_SEARCHES_DESCRIPTION, SolrUtils.asValueUpdate(description));
     try {
-      client.add(ViewerConstants.SOLR_INDEX_SEARCHES_COLLECTION_NAME, doc);
-      client.commit(ViewerConstants.SOLR_INDEX_SEARCHES_COLLECTION_NAME, true, true);
+      addDocuments(ViewerConstants.SOLR_INDEX_SEARCHES_COLLECTION_NAME, Collections.singletonList(doc));
       // Delegate
       ViewerFactory.getConfigurationManager().editSearch(databaseUUID, uuid, name, description);
     } catch (SolrException | SolrServerException e) {
@@ -340,8 +529,7 @@ public class DatabaseRowsSolrManager {
 
   public void deleteSavedSearch(String uuid) throws SavedSearchException {
     try {
-      client.deleteById(ViewerConstants.SOLR_INDEX_SEARCHES_COLLECTION_NAME, uuid);
-      client.commit(ViewerConstants.SOLR_INDEX_SEARCHES_COLLECTION_NAME, true, true);
+      deleteDocument(ViewerConstants.SOLR_INDEX_SEARCHES_COLLECTION_NAME, uuid);
     } catch (SolrServerException e) {
       throw new SavedSearchException("Solr error while attempting to save search", e);
     } catch (IOException e) {
@@ -350,9 +538,10 @@ public class DatabaseRowsSolrManager {
   }
 
   public void deleteDatabasesCollection(final String UUID) {
+    CursorMarkCheckpoints.invalidate(UUID);
+    DatabaseMetadataCache.invalidate(UUID);
     try {
-      client.deleteById(ViewerConstants.SOLR_INDEX_DATABASES_COLLECTION_NAME, UUID);
-      client.commit(ViewerConstants.SOLR_INDEX_DATABASES_COLLECTION_NAME, true, true);
+      deleteDocument(ViewerConstants.SOLR_INDEX_DATABASES_COLLECTION_NAME, UUID);
     } catch (SolrServerException e) {
       LOGGER.debug("Solr error while attempting to delete search", e);
     } catch (IOException e) {
@@ -371,62 +560,95 @@ public class DatabaseRowsSolrManager {
   }
 
   /**
-   * The collections are not immediately available after creation, this method
-   * makes sequential attempts to insert a document before giving up (by timeout)
+   * Inserts a document and commits it according to the commit policy of the
+   * collection
    *
    * @throws ViewerException
    *           in case of a fatal error
    */
   private void insertDocument(String collection, SolrInputDocument doc) throws ViewerException {
-    long timeoutStart = System.currentTimeMillis();
-    int tries = 0;
-    boolean insertedAllDocuments = false;
-    do {
-      UpdateResponse response = null;
-      try {
-        response = client.add(collection, doc, 1000);
-        if (response.getStatus() == 0) {
-          insertedAllDocuments = true;
-          break;
-        } else {
-          LOGGER.warn(
-            "Could not insert a document batch in collection " + collection + ". Response: " + response.toString());
-        }
-      } catch (SolrException e) {
-        if (e.code() == 404) {
-          // this means that the collection does not exist yet. retry
-          LOGGER.debug("Collection " + collection + " does not exist (yet). Retrying (" + tries + ")");
-        } else {
-          LOGGER.warn(
-            "Could not insert a document batch in collection" + collection + ". Last response (if any): " + response,
-            e);
-        }
-      } catch (SolrServerException | IOException e) {
-        throw new ViewerException("Problem adding information", e);
-      }
+    updateDocuments(collection, Collections.singletonList(doc));
+  }
 
-      if (!insertedAllDocuments) {
-        // wait a moment and then retry (or reach timeout and fail)
-        try {
-          Thread.sleep(1000);
-        } catch (InterruptedException e) {
-          LOGGER.debug("insertDocument sleep was interrupted", e);
-        }
-        tries++;
-      }
-    } while (System.currentTimeMillis() - timeoutStart < INSERT_DOCUMENT_TIMEOUT && !insertedAllDocuments);
+  /**
+   * Inserts a batch of documents and commits them according to the commit
+   * policy of the collection, retrying on transient errors
+   *
+   * @throws ViewerException
+   *           in case of a fatal error
+   */
+  private void updateDocuments(String collection, Collection<SolrInputDocument> docs) throws ViewerException {
+    SolrCommitPolicy policy = commitPolicies.get(collection);
+    insertDocuments(collection, docs, policy.getCommitWithinMs());
+    try {
+      policy.afterUpdate(client, collection, docs.size());
+    } catch (SolrServerException | IOException | SolrException e) {
+      throw new ViewerException("Could not commit collection " + collection, e);
+    }
+  }
+
+  /**
+   * Inserts a batch of documents without a commitWithin, retrying on transient
+   * errors. The caller commits at the end of the load.
+   *
+   * @throws ViewerException
+   *           in case of a fatal error
+   */
+  void insertDocuments(String collection, Collection<SolrInputDocument> docs) throws ViewerException {
+    insertDocuments(collection, docs, -1);
+  }
 
-    if (!insertedAllDocuments) {
-      throw new ViewerException(
-        "Could not insert a document batch in collection. Reason: Timeout reached while waiting for collection to be available.");
+  private void addDocuments(String collection, Collection<SolrInputDocument> docs)
+    throws SolrServerException, IOException {
+    SolrCommitPolicy policy = commitPolicies.get(collection);
+    client.add(collection, docs, policy.getCommitWithinMs());
+    policy.afterUpdate(client, collection, docs.size());
+  }
+
+  private void deleteDocument(String collection, String id) throws SolrServerException, IOException {
+    SolrCommitPolicy policy = commitPolicies.get(collection);
+    client.deleteById(collection, id, policy.getCommitWithinMs());
+    policy.afterUpdate(client, collection, 1);
+  }
+
+  private void insertDocuments(String collection, Collection<SolrInputDocument> docs, int commitWithinMs)
+    throws ViewerException {
+    awaitCollection(collection);
+    updateRetry.execute(collection, () -> client.add(collection, docs, commitWithinMs));
+  }
+
+  /**
+   * The collections are not immediately available after creation, waits until
+   * the collection is ready (only the first time it is used)
+   *
+   * @throws ViewerException
+   *           if the collection is not ready before the timeout
+   */
+  private void awaitCollection(String collection) throws ViewerException {
+    SolrClientFactory<?> factory = SolrClientFactory.get();
+    if (factory.isCollectionKnownReady(collection)) {
+      return;
+    }
+    try {
+      if (!factory.getCollectionReadiness(collection).get()) {
+        throw new ViewerException(
+          "Could not insert a document batch in collection " + collection + ". Reason: collection is not available");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ViewerException("Interrupted while waiting for collection " + collection, e);
+    } catch (ExecutionException e) {
+      throw new ViewerException("Could not wait for collection " + collection, e);
     }
   }
 
+
   public void markDatabaseCollection(final String databaseUUID, ViewerDatabaseStatus status) {
     updateDatabaseFields(databaseUUID, Pair.of(ViewerConstants.SOLR_DATABASES_STATUS, status.toString()));
   }
 
   public void markDatabaseAsReady(final String databaseUUID) throws ViewerException {
+    DatabaseMetadataCache.invalidate(databaseUUID);
     updateDatabaseFields(databaseUUID,
       Pair.of(ViewerConstants.SOLR_DATABASES_STATUS, ViewerDatabaseStatus.AVAILABLE.toString()),
       Pair.of(ViewerConstants.SOLR_DATABASES_BROWSE_LOAD_DATE, new DateTime().toString()));
@@ -510,6 +732,7 @@ public class DatabaseRowsSolrManager {
       doc.addField(ViewerConstants.SOLR_DATABASES_METADATA,
         SolrUtils.asValueUpdate(JsonTransformer.getJsonFromObject(metadata)));
       insertDocument(ViewerConstants.SOLR_INDEX_DATABASES_COLLECTION_NAME, doc);
+      DatabaseMetadataCache.invalidate(databaseUUID);
       LOGGER.debug("Finish updating database metadata ({})", databaseUUID);
     } catch (ViewerException e) {
       LOGGER.error("Could not update database metadata ({})", databaseUUID, e);
@@ -520,29 +743,105 @@ public class DatabaseRowsSolrManager {
   public final void addDatabaseField(final String databaseUUID, final String documentUUID,
     List<SolrInputDocument> nestedDocuments) {
     RowsCollection collection = SolrRowsCollectionRegistry.get(databaseUUID);
+    try {
+      insertDocument(collection.getIndexName(), createDatabaseFieldDocument(documentUUID, nestedDocuments));
+    } catch (ViewerException e) {
+      LOGGER.error("Could not update database progress for {}", databaseUUID, e);
+    }
+  }
+
+  /**
+   * Same as {@link #addDatabaseField(String, String, List)} for several rows at
+   * once, with documents created by
+   * {@link #createDatabaseFieldDocument(String, List)}. The documents that only
+   * remove the search tokens of a row are dropped if the row has none, found
+   * with a single query for all of them.
+   *
+   * @throws ViewerException
+   *           if the documents could not be sent
+   */
+  public void addDatabaseFields(final String databaseUUID, List<SolrInputDocument> documents)
+    throws ViewerException {
+    List<SolrInputDocument> updates = withoutUnneededTokenRemovals(databaseUUID, documents);
+    if (!updates.isEmpty()) {
+      RowsCollection collection = SolrRowsCollectionRegistry.get(databaseUUID);
+      updateDocuments(collection.getIndexName(), updates);
+    }
+  }
+
+  private List<SolrInputDocument> withoutUnneededTokenRemovals(String databaseUUID,
+    List<SolrInputDocument> documents) throws ViewerException {
+    List<String> rowsToClear = new ArrayList<>();
+    for (SolrInputDocument document : documents) {
+      if (!isNestedParentUpdate(document)) {
+        rowsToClear.add((String) document.getFieldValue(ViewerConstants.INDEX_ID));
+      }
+    }
+    if (rowsToClear.isEmpty()) {
+      return documents;
+    }
+
+    Set<String> parents = new HashSet<>();
+    Filter parentFilter = new Filter(new SimpleFilterParameter(NESTED_PARENT_FIELD, NESTED_PARENT_VALUE),
+      new OneOfManyFilterParameter(ViewerConstants.INDEX_ID, rowsToClear));
+    try (IterableIndexResult rows = findAllRows(databaseUUID, parentFilter, null,
+      Collections.singletonList(ViewerConstants.INDEX_ID))) {
+      for (ViewerRow row : rows) {
+        parents.add(row.getUuid());
+      }
+    } catch (IOException e) {
+      throw new ViewerException("Could not find the rows with search tokens of " + databaseUUID, e);
+    }
+
+    List<SolrInputDocument> updates = new ArrayList<>();
+    for (SolrInputDocument document : documents) {
+      if (isNestedParentUpdate(document) || parents.contains(document.getFieldValue(ViewerConstants.INDEX_ID))) {
+        updates.add(document);
+      }
+    }
+    return updates;
+  }
+
+  private boolean isNestedParentUpdate(SolrInputDocument document) {
+    Object marker = document.getFieldValue(NESTED_PARENT_FIELD);
+    return !(marker instanceof Map) || ((Map<?, ?>) marker).get("set") != null;
+  }
+
+  /**
+   * @return the partial update that replaces the nested documents of a row
+   */
+  public SolrInputDocument createDatabaseFieldDocument(final String documentUUID,
+    List<SolrInputDocument> nestedDocuments) {
+    return createDatabaseFieldDocument(documentUUID, nestedDocuments, nestedDocuments);
+  }
+
+  /**
+   * @return the partial update that adds the given nested documents to a row,
+   *         keeping the ones it already has, and replaces its search tokens
+   *         with the ones of searchDocuments (all the nested documents of the
+   *         row)
+   */
+  public SolrInputDocument createDatabaseFieldDocument(final String documentUUID,
+    List<SolrInputDocument> nestedDocuments, List<SolrInputDocument> searchDocuments) {
     SolrInputDocument doc = new SolrInputDocument();
     doc.addField(ViewerConstants.INDEX_ID, documentUUID);
 
     List<String> fields = new ArrayList<>();
-    for (SolrInputDocument nest : nestedDocuments) {
+    for (SolrInputDocument nest : searchDocuments) {
       for (SolrInputField field : nest) {
         fields.add((String) field.getValue());
       }
     }
 
-    // add a non-stored field for search only
-    doc.addField("token" + ViewerConstants.SOLR_DYN_NEST_MULTI, fields);
+    // add a non-stored field for search only, removed if there are no tokens
+    doc.addField("token" + ViewerConstants.SOLR_DYN_NEST_MULTI, SolrUtils.asValueUpdate(fields));
 
-    doc.addField("type" + ViewerConstants.SOLR_DYN_TEXT_GENERAL, "parent");
+    // only the rows with tokens are parents, as found by deleteNestedDocuments
+    doc.addField(NESTED_PARENT_FIELD, SolrUtils.asValueUpdate(fields.isEmpty() ? null : NESTED_PARENT_VALUE));
 
     // add nested documents to root document
     doc.addField(ViewerConstants.SOLR_ROWS_NESTED, SolrUtils.addValueUpdate(nestedDocuments));
-
-    try {
-      insertDocument(collection.getIndexName(), doc);
-    } catch (ViewerException e) {
-      LOGGER.error("Could not update database progress for {}", databaseUUID, e);
-    }
+    return doc;
   }
 
   public SolrInputDocument createNestedDocument(String uuid, String originalRowUUID, String tableRowUUID,
@@ -563,6 +862,79 @@ public class DatabaseRowsSolrManager {
     return nestedDoc;
   }
 
+  /**
+   * Removes the nested documents of the rows of a table with a delete by query
+   * over the nested documents of the given related tables, then removes the
+   * fields that describe them from the rows that had any, in batches. The time
+   * taken depends on the number of nested documents and not on the number of
+   * rows of the table.
+   *
+   * @return the number of documents deleted or updated
+   * @throws GenericException
+   *           if the documents could not be removed
+   */
+  public long deleteNestedDocuments(String databaseUUID, String tableId, Collection<String> nestedUUIDs)
+    throws GenericException {
+    RowsCollection collection = SolrRowsCollectionRegistry.get(databaseUUID);
+    long affectedDocuments = deleteNestedDocumentsByUUID(databaseUUID, nestedUUIDs);
+
+    try {
+      Filter parentFilter = FilterUtils.filterByTable(
+        new Filter(new SimpleFilterParameter(NESTED_PARENT_FIELD, NESTED_PARENT_VALUE)), tableId);
+      List<SolrInputDocument> parentUpdates = new ArrayList<>();
+      try (IterableIndexResult parents = findAllRows(databaseUUID, parentFilter, null,
+        Collections.singletonList(ViewerConstants.INDEX_ID))) {
+        for (ViewerRow parent : parents) {
+          SolrInputDocument doc = new SolrInputDocument();
+          doc.addField(ViewerConstants.INDEX_ID, parent.getUuid());
+          doc.addField(ViewerConstants.SOLR_ROWS_NESTED, SolrUtils.asValueUpdate(null));
+          doc.addField(NESTED_PARENT_FIELD, SolrUtils.asValueUpdate(null));
+          parentUpdates.add(doc);
+
+          if (parentUpdates.size() >= NESTED_CLEANUP_BATCH_SIZE) {
+            updateDocuments(collection.getIndexName(), parentUpdates);
+            affectedDocuments += parentUpdates.size();
+            parentUpdates = new ArrayList<>();
+          }
+        }
+      }
+      if (!parentUpdates.isEmpty()) {
+        updateDocuments(collection.getIndexName(), parentUpdates);
+        affectedDocuments += parentUpdates.size();
+      }
+    } catch (ViewerException | IOException e) {
+      throw new GenericException("Could not delete the nested documents of table " + tableId, e);
+    }
+
+    return affectedDocuments;
+  }
+
+  /**
+   * Removes the nested documents of the given related tables with a delete by
+   * query, leaving the other nested documents and the rows untouched
+   *
+   * @return the number of documents deleted
+   * @throws GenericException
+   *           if the documents could not be removed
+   */
+  public long deleteNestedDocumentsByUUID(String databaseUUID, Collection<String> nestedUUIDs)
+    throws GenericException {
+    if (nestedUUIDs.isEmpty()) {
+      return 0;
+    }
+
+    RowsCollection collection = SolrRowsCollectionRegistry.get(databaseUUID);
+    Filter nestedFilter = new Filter(
+      new OneOfManyFilterParameter(ViewerConstants.SOLR_ROWS_NESTED_UUID, new ArrayList<>(nestedUUIDs)));
+    try {
+      long deletedDocuments = countRows(databaseUUID, nestedFilter);
+      SolrUtils.delete(client, collection, nestedFilter);
+      return deletedDocuments;
+    } catch (RequestNotValidException e) {
+      throw new GenericException("Could not delete the nested documents " + nestedUUIDs, e);
+    }
+  }
+
   public void deleteNestedDocuments(String databaseUUID, String documentUUID) {
     RowsCollection collection = SolrRowsCollectionRegistry.get(databaseUUID);
     SolrInputDocument doc = new SolrInputDocument();
@@ -0,0 +1,253 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.databasepreservation.common.exceptions.ViewerException;
+
+/**
+ * Buffers Solr documents into batches (bounded by number of documents and by
+ * an estimate of their size) and hands them to one or more sender threads
+ * through a bounded queue. The producer only blocks when the queue is full,
+ * so converting the next rows overlaps with indexing the previous ones.
+ *
+ * Nothing is committed by the writer itself, callers are expected to call
+ * {@link #commit()} at the end of a logical unit (e.g. a schema).
+ */
+public class SolrBatchWriter implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SolrBatchWriter.class);
+
+  private static final List<SolrInputDocument> END_OF_BATCHES = new ArrayList<>();
+
+  private final DatabaseRowsSolrManager solrManager;
+  private final String collection;
+  private final int maxDocuments;
+  private final long maxBytes;
+  private final BlockingQueue<List<SolrInputDocument>> queue;
+  private final List<Thread> senders = new ArrayList<>();
+
+  private final Object inFlightLock = new Object();
+  private int inFlight = 0;
+  private volatile ViewerException failure = null;
+  private boolean closed = false;
+
+  private List<SolrInputDocument> buffer;
+  private long bufferBytes = 0;
+
+  SolrBatchWriter(DatabaseRowsSolrManager solrManager, String collection, int maxDocuments, long maxBytes,
+    int senderThreads, int queueSize) {
+    this.solrManager = solrManager;
+    this.collection = collection;
+    this.maxDocuments = Math.max(1, maxDocuments);
+    this.maxBytes = Math.max(1, maxBytes);
+    this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+    this.buffer = new ArrayList<>(this.maxDocuments);
+
+    for (int i = 0; i < Math.max(1, senderThreads); i++) {
+      Thread sender = new Thread(this::sendBatches, "solr-batch-writer-" + collection + "-" + i);
+      sender.setDaemon(true);
+      sender.start();
+      senders.add(sender);
+    }
+  }
+
+  public String getCollection() {
+    return collection;
+  }
+
+  /**
+   * Adds a document to the current batch, handing the batch to the senders
+   * when it is full. Blocks if all senders are busy and the queue is full.
+   *
+   * @throws ViewerException
+   *           if a previous batch could not be indexed or the writer is closed
+   */
+  public synchronized void add(SolrInputDocument document) throws ViewerException {
+    checkFailure();
+    if (closed) {
+      throw new ViewerException("Batch writer for collection " + collection + " is already closed");
+    }
+
+    buffer.add(document);
+    bufferBytes += estimateSize(document);
+
+    if (buffer.size() >= maxDocuments || bufferBytes >= maxBytes) {
+      enqueueBuffer();
+    }
+  }
+
+  /**
+   * Hands the current (partial) batch to the senders and waits until every
+   * batch given so far has been indexed.
+   */
+  public synchronized void flush() throws ViewerException {
+    checkFailure();
+    enqueueBuffer();
+    synchronized (inFlightLock) {
+      while (inFlight > 0 && failure == null) {
+        try {
+          inFlightLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ViewerException("Interrupted while waiting for batches of collection " + collection, e);
+        }
+      }
+    }
+    checkFailure();
+  }
+
+  /**
+   * Flushes all pending documents and issues a single commit to the
+   * collection.
+   */
+  public synchronized void commit() throws ViewerException {
+    flush();
+    solrManager.commit(collection);
+  }
+
+  /**
+   * Flushes all pending documents and stops the sender threads. Does not
+   * commit.
+   */
+  @Override
+  public synchronized void close() throws ViewerException {
+    if (closed) {
+      return;
+    }
+
+    try {
+      flush();
+    } finally {
+      stopSenders();
+    }
+  }
+
+  /**
+   * Discards the pending documents and stops the sender threads, without
+   * waiting for the batches that were not sent yet. Used when the ingestion
+   * failed; does nothing if the writer is already closed.
+   */
+  public void abort() {
+    if (failure == null) {
+      failure = new ViewerException("Batch writer for collection " + collection + " was aborted");
+    }
+    // the senders discard the queued batches after a failure, which also
+    // unblocks a producer waiting for space in the queue
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      buffer.clear();
+      bufferBytes = 0;
+      try {
+        stopSenders();
+      } catch (ViewerException e) {
+        LOGGER.debug("Could not stop the senders of collection {}", collection, e);
+      }
+    }
+  }
+
+  private void stopSenders() throws ViewerException {
+    closed = true;
+    for (int i = 0; i < senders.size(); i++) {
+      putInQueue(END_OF_BATCHES);
+    }
+    for (Thread sender : senders) {
+      try {
+        sender.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOGGER.debug("Interrupted while waiting for sender {} to finish", sender.getName(), e);
+      }
+    }
+  }
+
+  private void enqueueBuffer() throws ViewerException {
+    if (buffer.isEmpty()) {
+      return;
+    }
+
+    List<SolrInputDocument> batch = buffer;
+    buffer = new ArrayList<>(maxDocuments);
+    bufferBytes = 0;
+
+    synchronized (inFlightLock) {
+      inFlight++;
+    }
+    putInQueue(batch);
+  }
+
+  private void putInQueue(List<SolrInputDocument> batch) throws ViewerException {
+    try {
+      queue.put(batch);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ViewerException("Interrupted while queueing a batch for collection " + collection, e);
+    }
+  }
+
+  private void sendBatches() {
+    try {
+      while (true) {
+        List<SolrInputDocument> batch = queue.take();
+        if (batch == END_OF_BATCHES) {
+          break;
+        }
+
+        try {
+          // after a failure the remaining batches are discarded, so that the
+          // producer does not stay blocked on a full queue
+          if (failure == null) {
+            solrManager.insertDocuments(collection, batch);
+          }
+        } catch (ViewerException e) {
+          LOGGER.error("Could not index a batch of {} documents in collection {}", batch.size(), collection, e);
+          failure = e;
+        } finally {
+          synchronized (inFlightLock) {
+            inFlight--;
+            inFlightLock.notifyAll();
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.debug("Batch sender for collection {} was interrupted", collection, e);
+    }
+  }
+
+  private void checkFailure() throws ViewerException {
+    if (failure != null) {
+      throw new ViewerException("Could not index documents in collection " + collection, failure);
+    }
+  }
+
+  private static long estimateSize(SolrInputDocument document) {
+    long size = 0;
+    for (SolrInputField field : document) {
+      size += field.getName().length();
+      for (Object value : field) {
+        if (value instanceof CharSequence) {
+          size += ((CharSequence) value).length();
+        } else {
+          size += Long.BYTES;
+        }
+      }
+    }
+    return size;
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.index;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.GenericSolrRequest;
+import org.apache.solr.client.solrj.request.RequestWriter;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+
+import com.databasepreservation.common.exceptions.ViewerException;
+import com.databasepreservation.common.server.ViewerConfiguration;
+import com.databasepreservation.common.server.ViewerFactory;
+import com.databasepreservation.common.server.index.utils.JsonTransformer;
+
+/**
+ * Settings of a rows collection while it is populated by a new ingestion: the
+ * collection is created without the update log, then automatic soft commits
+ * are disabled through the Config API. When the load ends both are restored
+ * and the segments can be merged down to a target count.
+ *
+ * The update log is kept when the collection has more than one replica, as
+ * the replicas recover from it.
+ */
+public class SolrBulkLoad {
+  private static final String CONFIG_PATH = "/config";
+  private static final String UPDATE_LOG_PROPERTY = "solr.ulog.enable";
+  private static final String SOFT_COMMIT_PROPERTY = "solr.autoSoftCommit.maxTime";
+  private static final String OVERLAY_PATH = CONFIG_PATH + "/overlay";
+
+  private final boolean enabled;
+  private final boolean disableUpdateLog;
+  private final int maxSegments;
+
+  public SolrBulkLoad(ViewerConfiguration configuration) {
+    enabled = configuration.getViewerConfigurationAsBoolean(true,
+      ViewerConfiguration.PROPERTY_INGEST_BULK_LOAD_ENABLED);
+    disableUpdateLog = configuration.getViewerConfigurationAsBoolean(true,
+      ViewerConfiguration.PROPERTY_INGEST_BULK_LOAD_DISABLE_UPDATE_LOG)
+      && ViewerFactory.getEnvInt("SOLR_REPLICATION_FACTOR", 1) <= 1;
+    maxSegments = configuration.getViewerConfigurationAsInt(0,
+      ViewerConfiguration.PROPERTY_INGEST_BULK_LOAD_MAX_SEGMENTS);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return the core properties to create the collection with
+   */
+  public Map<String, String> getCreationProperties() {
+    if (enabled && disableUpdateLog) {
+      return Collections.singletonMap(UPDATE_LOG_PROPERTY, Boolean.FALSE.toString());
+    }
+    return Collections.emptyMap();
+  }
+
+  public void start(SolrClient client, String collection) throws SolrServerException, IOException, ViewerException {
+    sendConfigCommands(client, collection,
+      Collections.singletonMap("set-user-property", Collections.singletonMap(SOFT_COMMIT_PROPERTY, "-1")));
+  }
+
+  /**
+   * Restores the settings of the collection, which must be committed before
+   * (the collection is reloaded), and merges its segments if configured and
+   * the load completed
+   *
+   * @throws ViewerException
+   *           if the update log could not be enabled again, the collection
+   *           must not be used as it is
+   */
+  public void finish(SolrClient client, String collection, boolean completed)
+    throws SolrServerException, IOException, ViewerException {
+    sendConfigCommands(client, collection,
+      Collections.singletonMap("unset-user-property", SOFT_COMMIT_PROPERTY));
+
+    if (disableUpdateLog) {
+      // on its own, so that it is not rejected together with another command
+      sendConfigCommands(client, collection, Collections.singletonMap("set-user-property",
+        Collections.singletonMap(UPDATE_LOG_PROPERTY, Boolean.TRUE.toString())));
+      if (!Boolean.TRUE.toString().equals(getUserProperty(client, collection, UPDATE_LOG_PROPERTY))) {
+        throw new ViewerException("The update log of collection " + collection + " could not be enabled again");
+      }
+    }
+
+    if (completed && maxSegments > 0) {
+      client.optimize(collection, true, true, maxSegments);
+    }
+  }
+
+  private String getUserProperty(SolrClient client, String collection, String property)
+    throws SolrServerException, IOException {
+    NamedList<Object> response = new GenericSolrRequest(SolrRequest.METHOD.GET, OVERLAY_PATH,
+      new ModifiableSolrParams()).process(client, collection).getResponse();
+    Object userProperties = get(get(response, "overlay"), "userProps");
+    Object value = get(userProperties, property);
+    return value != null ? value.toString() : null;
+  }
+
+  private static Object get(Object container, String key) {
+    if (container instanceof Map) {
+      return ((Map<?, ?>) container).get(key);
+    } else if (container instanceof NamedList) {
+      return ((NamedList<?>) container).get(key);
+    }
+    return null;
+  }
+
+  private void sendConfigCommands(SolrClient client, String collection, Map<String, Object> commands)
+    throws SolrServerException, IOException, ViewerException {
+    String json = JsonTransformer.getJsonFromObject(commands);
+    SolrRequest<?> request = new GenericSolrRequest(SolrRequest.METHOD.POST, CONFIG_PATH,
+      new ModifiableSolrParams()) {
+      @Override
+      public RequestWriter.ContentWriter getContentWriter(String expectedType) {
+        return new RequestWriter.StringPayloadContentWriter(json, "application/json");
+      }
+    };
+    request.process(client, collection);
+  }
+}
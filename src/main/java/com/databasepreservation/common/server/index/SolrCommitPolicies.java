@@ -0,0 +1,72 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.index;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.databasepreservation.common.client.ViewerConstants;
+import com.databasepreservation.common.server.ViewerConfiguration;
+import com.databasepreservation.common.server.index.SolrCommitPolicy.Mode;
+
+/**
+ * The commit policies of each type of collection, found by collection name.
+ * Rows collections being bulk loaded (see {@link SolrBulkLoad}) have their
+ * commits deferred until the load ends.
+ */
+public class SolrCommitPolicies {
+  private final SolrCommitPolicy rows;
+  private final SolrCommitPolicy databases;
+  private final SolrCommitPolicy logs;
+  private final SolrCommitPolicy jobs;
+  private final SolrCommitPolicy searches;
+  private final SolrCommitPolicy bulkLoad = new SolrCommitPolicy("rows", Mode.DEFERRED, -1);
+  private final Set<String> bulkLoading = ConcurrentHashMap.newKeySet();
+
+  public SolrCommitPolicies(ViewerConfiguration configuration) {
+    rows = SolrCommitPolicy.fromConfiguration(configuration, "rows", Mode.WITHIN, 1000, true);
+    databases = SolrCommitPolicy.fromConfiguration(configuration, "databases", Mode.WITHIN, 1000, false);
+    logs = SolrCommitPolicy.fromConfiguration(configuration, "logs", Mode.WITHIN,
+      configuration.getViewerConfigurationAsInt(5000, ViewerConfiguration.PROPERTY_ACTIVITY_LOG_COMMIT_WITHIN), false);
+    jobs = SolrCommitPolicy.fromConfiguration(configuration, "jobs", Mode.SOFT, 1000, false);
+    searches = SolrCommitPolicy.fromConfiguration(configuration, "searches", Mode.SOFT, 1000, false);
+  }
+
+  public SolrCommitPolicy get(String collection) {
+    if (bulkLoading.contains(collection)) {
+      return bulkLoad;
+    }
+    switch (collection) {
+      case ViewerConstants.SOLR_INDEX_DATABASES_COLLECTION_NAME:
+        return databases;
+      case ViewerConstants.SOLR_INDEX_ACTIVITY_LOGS_COLLECTION_NAME:
+        return logs;
+      case ViewerConstants.SOLR_INDEX_BATCH_JOBS_COLLECTION_NAME:
+        return jobs;
+      case ViewerConstants.SOLR_INDEX_SEARCHES_COLLECTION_NAME:
+        return searches;
+      default:
+        return rows;
+    }
+  }
+
+  public void startBulkLoad(String collection) {
+    bulkLoading.add(collection);
+  }
+
+  /**
+   * @return true if the collection was being bulk loaded
+   */
+  public boolean endBulkLoad(String collection) {
+    return bulkLoading.remove(collection);
+  }
+
+  public boolean isBulkLoading(String collection) {
+    return bulkLoading.contains(collection);
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.index;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.databasepreservation.common.server.ViewerConfiguration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * How the updates sent to a type of collection (rows, databases, logs, jobs or
+ * searches) are made visible:
+ * <ul>
+ * <li>hard: a hard commit, waiting for the new searcher, after each update</li>
+ * <li>soft: a soft commit (near real time) after each update</li>
+ * <li>within: the update asks Solr to commit within a time window</li>
+ * <li>deferred: no commit on update, a single hard commit when the work that
+ * sends the updates (an ingestion or a batch job) ends. Only rows collections
+ * are updated by such work, so the other types do not accept it</li>
+ * </ul>
+ * Configured with solr.commit.&lt;type&gt;.policy and
+ * solr.commit.&lt;type&gt;.within_ms. The updates and commits are counted in
+ * the dbvtk.solr.updates and dbvtk.solr.commits metrics.
+ */
+public class SolrCommitPolicy {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SolrCommitPolicy.class);
+
+  public enum Mode {
+    HARD, SOFT, WITHIN, DEFERRED
+  }
+
+  private final String type;
+  private final Mode mode;
+  private final int commitWithinMs;
+  private final Counter updates;
+  private final Timer hardCommits;
+  private final Timer softCommits;
+
+  public SolrCommitPolicy(String type, Mode mode, int commitWithinMs) {
+    this.type = type;
+    this.mode = mode;
+    this.commitWithinMs = commitWithinMs;
+    String modeTag = mode.name().toLowerCase(Locale.ROOT);
+    updates = Metrics.counter("dbvtk.solr.updates", "collection", type, "policy", modeTag);
+    hardCommits = Metrics.timer("dbvtk.solr.commits", "collection", type, "policy", modeTag, "commit", "hard");
+    softCommits = Metrics.timer("dbvtk.solr.commits", "collection", type, "policy", modeTag, "commit", "soft");
+  }
+
+  /**
+   * @param deferrable
+   *          whether the collections of the type are only updated by work that
+   *          commits when it ends, see {@link #commitDeferred}
+   * @return the policy of the given type of collection, falling back to the
+   *         given defaults when not configured or invalid
+   */
+  public static SolrCommitPolicy fromConfiguration(ViewerConfiguration configuration, String type, Mode defaultMode,
+    int defaultCommitWithinMs, boolean deferrable) {
+    String modeName = configuration.getViewerConfigurationAsString(defaultMode.name(),
+      ViewerConfiguration.PROPERTY_SOLR_COMMIT_PREFIX, type, ViewerConfiguration.PROPERTY_SOLR_COMMIT_POLICY);
+    Mode mode = defaultMode;
+    try {
+      mode = Mode.valueOf(modeName.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Invalid commit policy '{}' for {} collections, using {}", modeName, type, defaultMode);
+    }
+    if (mode == Mode.DEFERRED && !deferrable) {
+      // nothing would ever commit the updates
+      LOGGER.warn("Commit policy {} is not supported for {} collections, using {}", mode, type, defaultMode);
+      mode = defaultMode;
+    }
+    int commitWithinMs = configuration.getViewerConfigurationAsInt(defaultCommitWithinMs,
+      ViewerConfiguration.PROPERTY_SOLR_COMMIT_PREFIX, type, ViewerConfiguration.PROPERTY_SOLR_COMMIT_WITHIN);
+    LOGGER.debug("Commit policy for {} collections: {} ({} ms)", type, mode, commitWithinMs);
+    return new SolrCommitPolicy(type, mode, commitWithinMs);
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * @return the commitWithin to send with the updates, -1 for none
+   */
+  public int getCommitWithinMs() {
+    return mode == Mode.WITHIN ? commitWithinMs : -1;
+  }
+
+  /**
+   * Commits, if the policy commits on each update, after the given number of
+   * documents were sent to the collection
+   */
+  public void afterUpdate(SolrClient client, String collection, int documents)
+    throws SolrServerException, IOException {
+    updates.increment(documents);
+    if (mode == Mode.HARD) {
+      commit(client, collection);
+    } else if (mode == Mode.SOFT) {
+      long start = System.nanoTime();
+      client.commit(collection, true, true, true);
+      softCommits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Hard commit of the collection, whatever the policy (e.g. at the end of an
+   * ingestion)
+   */
+  public void commit(SolrClient client, String collection) throws SolrServerException, IOException {
+    long start = System.nanoTime();
+    client.commit(collection, true, true);
+    hardCommits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Hard commit of the collection if its commits are deferred to the end of
+   * the work that updated it
+   */
+  public void commitDeferred(SolrClient client, String collection) throws SolrServerException, IOException {
+    if (mode == Mode.DEFERRED) {
+      commit(client, collection);
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.index;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.databasepreservation.common.exceptions.ViewerException;
+import com.databasepreservation.common.server.ViewerConfiguration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Retries the updates sent to a collection on transient errors (server errors
+ * and connection problems) with an exponential backoff with jitter, until a
+ * timeout. Client errors are not retried.
+ *
+ * After a number of consecutive updates to a collection failed, its circuit
+ * opens and the updates fail immediately for a while, instead of each one
+ * waiting for the timeout; the next update after that period is tried again.
+ *
+ * The retries and the rejected updates of each collection are counted in the
+ * dbvtk.solr.update.retries and dbvtk.solr.update.rejected metrics.
+ */
+public class SolrUpdateRetry {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SolrUpdateRetry.class);
+
+  @FunctionalInterface
+  public interface Update {
+    UpdateResponse send() throws SolrServerException, IOException;
+  }
+
+  private final long timeoutMs;
+  private final long initialBackoffMs;
+  private final long maxBackoffMs;
+  private final int breakerFailures;
+  private final long breakerOpenMs;
+  private final Map<String, CollectionState> states = new ConcurrentHashMap<>();
+
+  public SolrUpdateRetry(ViewerConfiguration configuration) {
+    timeoutMs = configuration.getViewerConfigurationAsInt(60000,
+      ViewerConfiguration.PROPERTY_SOLR_UPDATE_RETRY_TIMEOUT);
+    initialBackoffMs = Math.max(1, configuration.getViewerConfigurationAsInt(100,
+      ViewerConfiguration.PROPERTY_SOLR_UPDATE_RETRY_INITIAL_BACKOFF));
+    maxBackoffMs = Math.max(initialBackoffMs, configuration.getViewerConfigurationAsInt(5000,
+      ViewerConfiguration.PROPERTY_SOLR_UPDATE_RETRY_MAX_BACKOFF));
+    breakerFailures = configuration.getViewerConfigurationAsInt(3,
+      ViewerConfiguration.PROPERTY_SOLR_UPDATE_BREAKER_FAILURES);
+    breakerOpenMs = configuration.getViewerConfigurationAsInt(30000,
+      ViewerConfiguration.PROPERTY_SOLR_UPDATE_BREAKER_OPEN);
+  }
+
+  /**
+   * Sends the update, retrying it on transient errors
+   *
+   * @throws ViewerException
+   *           if the update failed with a client error, the timeout was reached
+   *           or the circuit of the collection is open
+   */
+  public void execute(String collection, Update update) throws ViewerException {
+    CollectionState state = states.computeIfAbsent(collection, CollectionState::new);
+    if (state.isOpen()) {
+      state.rejected.increment();
+      throw new ViewerException(
+        "Could not update collection " + collection + ". Reason: too many consecutive failures, retrying later");
+    }
+
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    long backoff = initialBackoffMs;
+    while (true) {
+      Exception failure;
+      try {
+        UpdateResponse response = update.send();
+        if (response.getStatus() == 0) {
+          state.succeeded();
+          return;
+        }
+        failure = new ViewerException("Response: " + response);
+      } catch (SolrException e) {
+        if (e.code() < 500) {
+          throw new ViewerException("Could not update collection " + collection, e);
+        }
+        failure = e;
+      } catch (SolrServerException | IOException e) {
+        // the server could not be reached or the connection was lost, the
+        // update is sent again as a whole
+        failure = e;
+      }
+
+      // equal jitter: half of the backoff plus a random part of the other half
+      long sleep = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+      if (System.currentTimeMillis() + sleep > deadline) {
+        state.failed();
+        throw new ViewerException("Could not update collection " + collection + ". Reason: timeout reached", failure);
+      }
+
+      state.retries.increment();
+      LOGGER.debug("Could not update collection {}, retrying in {} ms", collection, sleep, failure);
+      try {
+        Thread.sleep(sleep);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ViewerException("Interrupted while updating collection " + collection, e);
+      }
+      backoff = Math.min(backoff * 2, maxBackoffMs);
+    }
+  }
+
+  /**
+   * Forgets the state of a collection, to call when it is deleted
+   */
+  public void forget(String collection) {
+    states.remove(collection);
+  }
+
+  private class CollectionState {
+    private final String collection;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openUntil = 0;
+    private final Counter retries;
+    private final Counter rejected;
+
+    CollectionState(String collection) {
+      this.collection = collection;
+      retries = Metrics.counter("dbvtk.solr.update.retries", "collection", collection);
+      rejected = Metrics.counter("dbvtk.solr.update.rejected", "collection", collection);
+    }
+
+    boolean isOpen() {
+      return System.currentTimeMillis() < openUntil;
+    }
+
+    void succeeded() {
+      consecutiveFailures.set(0);
+    }
+
+    void failed() {
+      if (breakerFailures > 0 && consecutiveFailures.incrementAndGet() >= breakerFailures) {
+        consecutiveFailures.set(0);
+        openUntil = System.currentTimeMillis() + breakerOpenMs;
+        LOGGER.warn("Updates to collection {} keep failing, rejecting them for {} ms", collection, breakerOpenMs);
+      }
+    }
+  }
+}
@@ -171,7 +171,7 @@ public class CloudSolrClientFactory extends SolrClientFactory<CloudSolrClient> {
         return healthy;
     }
 
-    protected boolean createCollection(String collection, Path configPath) {
+    protected boolean createCollection(String collection, Path configPath, Map<String, String> properties) {
         boolean ret;
         try {
             LOGGER.info("Creating SOLR collection {}", collection);
@@ -185,6 +185,9 @@ public class CloudSolrClientFactory extends SolrClientFactory<CloudSolrClient> {
                     collection, numShards, numReplicas);
             createCollection.setMaxShardsPerNode(ViewerFactory.getEnvInt("SOLR_MAX_SHARDS_PER_NODE", 1));
             createCollection.setAutoAddReplicas(ViewerFactory.getEnvBoolean("SOLR_AUTO_ADD_REPLICAS", false));
+            if (!properties.isEmpty()) {
+                createCollection.setProperties(properties);
+            }
 
             CollectionAdminResponse response = createCollection.process(getSolrClient());
             if (!response.isSuccess()) {
@@ -209,6 +212,7 @@ public class CloudSolrClientFactory extends SolrClientFactory<CloudSolrClient> {
                 LOGGER.error("Could not create collection {}: {}", collection, response.getErrorMessages());
                 return false;
             } else {
+                forgetCollection(collection);
                 return true;
             }
         } catch (SolrServerException | SolrException | IOException e) {
@@ -217,6 +221,28 @@ public class CloudSolrClientFactory extends SolrClientFactory<CloudSolrClient> {
         }
     }
 
+    /**
+     * A collection is ready when all its active slices have an active leader on a
+     * live node
+     */
+    @Override
+    protected boolean isCollectionReady(String collection) {
+        ClusterState clusterState = getSolrClient().getZkStateReader().getClusterState();
+        DocCollection docs = clusterState.getCollectionOrNull(collection);
+        if (docs == null || docs.getActiveSlices().isEmpty()) {
+            return false;
+        }
+
+        for (Slice slice : docs.getActiveSlices()) {
+            Replica leader = slice.getLeader();
+            if (leader == null || !Replica.State.ACTIVE.equals(leader.getState())
+                    || !clusterState.liveNodesContain(leader.getNodeName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     protected Collection<String> getCollectionList() {
         Collection<String> ret = new ArrayList<>();
@@ -12,7 +12,8 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
@@ -81,7 +82,7 @@ public class EmbeddedSolrClientFactory extends SolrClientFactory<EmbeddedSolrSer
     }
 
     @Override
-    protected boolean createCollection(String collection, Path configPath) {
+    protected boolean createCollection(String collection, Path configPath, Map<String, String> properties) {
         boolean ret;
         try {
             LOGGER.info("Creating SOLR collection {}", collection);
@@ -92,7 +93,9 @@ public class EmbeddedSolrClientFactory extends SolrClientFactory<EmbeddedSolrSer
             // Add core
 
             CoreContainer coreContainer = getSolrClient().getCoreContainer();
-            coreContainer.create(collection, Collections.singletonMap("name", collection));
+            Map<String, String> coreProperties = new HashMap<>(properties);
+            coreProperties.put("name", collection);
+            coreContainer.create(collection, coreProperties);
 
             LOGGER.info("SOLR collection {} is loaded=", collection, coreContainer.isLoaded(collection));
 
@@ -104,11 +107,18 @@ public class EmbeddedSolrClientFactory extends SolrClientFactory<EmbeddedSolrSer
         return ret;
     }
 
+    @Override
+    protected boolean isCollectionReady(String collection) {
+        CoreContainer coreContainer = getSolrClient().getCoreContainer();
+        return coreContainer.isLoaded(collection) && !coreContainer.getCoreInitFailures().containsKey(collection);
+    }
+
   @Override
   public boolean deleteCollection(String collection) {
     try {
       CoreContainer coreContainer = getSolrClient().getCoreContainer();
       coreContainer.unload(collection, true, true, true);
+      forgetCollection(collection);
 
       return true;
     } catch (SolrException e) {
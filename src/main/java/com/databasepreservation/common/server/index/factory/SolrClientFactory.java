@@ -11,6 +11,13 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.slf4j.Logger;
@@ -22,6 +29,7 @@ import com.databasepreservation.common.server.index.schema.SolrBootstrapUtils;
 import com.databasepreservation.common.server.index.schema.SolrDefaultCollectionRegistry;
 import com.databasepreservation.common.server.index.schema.SolrRowsCollectionRegistry;
 import com.databasepreservation.common.exceptions.ViewerException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public abstract class SolrClientFactory<T extends SolrClient> {
 
@@ -44,8 +52,15 @@ public abstract class SolrClientFactory<T extends SolrClient> {
         return instance;
     }
 
+    private static final long READINESS_FIRST_PROBE_DELAY = 50;
+    private static final long READINESS_MAX_PROBE_DELAY = 1000;
+
     private T solrClient;
 
+    private final Map<String, CompletableFuture<Boolean>> readiness = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService readinessProbes = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("solr-readiness-%d").setDaemon(true).build());
+
     private void init() {
         ViewerConfiguration configuration = ViewerConfiguration.getInstance();
         Field.initialize(configuration);
@@ -83,10 +98,13 @@ public abstract class SolrClientFactory<T extends SolrClient> {
         Collection<String> existingCollections = getCollectionList();
         for (String collection : SolrDefaultCollectionRegistry.registryIndexNames()) {
             if (!existingCollections.contains(collection)) {
-                createCollection(collection, createTempSolrConfigurationDir());
+                createCollection(collection, createTempSolrConfigurationDir(), Collections.emptyMap());
             }
         }
 
+        for (String collection : existingCollections) {
+            readiness.put(collection, CompletableFuture.completedFuture(true));
+        }
         SolrRowsCollectionRegistry.registerExisting(existingCollections);
 
     }
@@ -95,19 +113,113 @@ public abstract class SolrClientFactory<T extends SolrClient> {
 
     protected abstract void waitForSolrToInitialize();
 
-    protected abstract boolean createCollection(String collection, Path config);
+    /**
+     * @param properties
+     *            core properties of the collection, available to the substitutions
+     *            of its solrconfig.xml
+     */
+    protected abstract boolean createCollection(String collection, Path config, Map<String, String> properties);
 
     public abstract boolean deleteCollection(String collection);
 
     protected abstract Collection<String> getCollectionList();
 
+    /**
+     * @return true if the collection can receive updates and queries
+     */
+    protected abstract boolean isCollectionReady(String collection);
+
     public boolean createCollection(String collection) {
+        return createCollection(collection, Collections.emptyMap());
+    }
+
+    public boolean createCollection(String collection, Map<String, String> properties) {
         try {
-            return createCollection(collection, createTempSolrConfigurationDir());
+            forgetCollection(collection);
+            return createCollection(collection, createTempSolrConfigurationDir(), properties);
         } catch (IOException e) {
             LOGGER.error("Error creating collection {}", collection, e);
             return false;
         }
     }
 
+    /**
+     * The readiness of a collection, probed until it is ready or the timeout
+     * (solr.collection.readiness.timeout_ms) is reached. Once ready, a collection
+     * is not probed again until it is deleted or created again.
+     *
+     * @return a future completed with true when the collection is ready, false on
+     *         timeout
+     */
+    public CompletableFuture<Boolean> getCollectionReadiness(String collection) {
+        CompletableFuture<Boolean> future = readiness.get(collection);
+        if (future != null) {
+            return future;
+        }
+        // the first probe is a request to Solr, made outside of the map
+        CompletableFuture<Boolean> probe = new CompletableFuture<>();
+        future = readiness.putIfAbsent(collection, probe);
+        if (future != null) {
+            return future;
+        }
+        probeCollectionReadiness(collection, probe);
+        return probe;
+    }
+
+    /**
+     * @return true if the collection was already found ready
+     */
+    public boolean isCollectionKnownReady(String collection) {
+        CompletableFuture<Boolean> future = readiness.get(collection);
+        return future != null && future.isDone() && future.getNow(false);
+    }
+
+    /**
+     * Forgets the readiness of a collection, to call when it is deleted
+     */
+    public void forgetCollection(String collection) {
+        readiness.remove(collection);
+    }
+
+    private void probeCollectionReadiness(String collection, CompletableFuture<Boolean> future) {
+        boolean ready;
+        try {
+            ready = isCollectionReady(collection);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Could not probe the readiness of collection {}", collection, e);
+            ready = false;
+        }
+        if (ready) {
+            future.complete(true);
+            return;
+        }
+        long timeout = ViewerConfiguration.getInstance().getViewerConfigurationAsInt(60000,
+                ViewerConfiguration.PROPERTY_SOLR_COLLECTION_READINESS_TIMEOUT);
+        scheduleReadinessProbe(collection, future, READINESS_FIRST_PROBE_DELAY, System.currentTimeMillis() + timeout);
+    }
+
+    private void scheduleReadinessProbe(String collection, CompletableFuture<Boolean> future, long delay,
+            long deadline) {
+        readinessProbes.schedule(() -> {
+            boolean ready;
+            try {
+                ready = isCollectionReady(collection);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Could not probe the readiness of collection {}", collection, e);
+                ready = false;
+            }
+
+            if (ready) {
+                LOGGER.debug("Collection {} is ready", collection);
+                future.complete(true);
+            } else if (System.currentTimeMillis() >= deadline) {
+                LOGGER.warn("Timeout reached while waiting for collection {} to be ready", collection);
+                future.complete(false);
+                readiness.remove(collection, future);
+            } else {
+                scheduleReadinessProbe(collection, future, Math.min(delay * 2, READINESS_MAX_PROBE_DELAY), deadline);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
 }
\ No newline at end of file
@@ -11,9 +11,9 @@ import static com.databasepreservation.common.client.ViewerConstants.SOLR_INDEX_
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
@@ -37,12 +37,22 @@ public final class SolrRowsCollectionRegistry {
   private SolrRowsCollectionRegistry() {
   }
 
-  private static final Map<String, RowsCollection> REGISTRY = new HashMap<>();
+  private static final Map<String, RowsCollection> REGISTRY = new ConcurrentHashMap<>();
 
   public static void register(RowsCollection collection) {
-    if (!REGISTRY.containsKey(collection.getDatabaseUUID())) {
+    if (REGISTRY.putIfAbsent(collection.getDatabaseUUID(), collection) == null) {
       LOGGER.debug("Registering rows collection: {}", collection.getIndexName());
-      REGISTRY.put(collection.getDatabaseUUID(), collection);
+    }
+  }
+
+  /**
+   * Removes the rows collection of a database, to be called once the Solr
+   * collection is deleted
+   */
+  public static void unregister(String databaseUUID) {
+    RowsCollection collection = REGISTRY.remove(databaseUUID);
+    if (collection != null) {
+      LOGGER.debug("Unregistering rows collection: {}", collection.getIndexName());
     }
   }
 
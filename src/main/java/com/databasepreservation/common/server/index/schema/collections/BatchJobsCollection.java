@@ -12,10 +12,12 @@ import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_DATABASE_NAME;
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_DATABASE_UUID;
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_END_TIME;
+import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_ESTIMATED_END_TIME;
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_EXIT_CODE;
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_EXIT_DESCRIPTION;
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_ID;
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_NAME;
+import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_ROWS_PER_SECOND;
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_ROWS_PROCESSED;
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_ROWS_TO_PROCESS;
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_BATCH_JOB_SCHEMA_NAME;
@@ -88,6 +90,8 @@ public class BatchJobsCollection extends AbstractSolrCollection<ViewerJob> {
     fields.add(new Field(SOLR_BATCH_JOB_EXIT_DESCRIPTION, Field.TYPE_STRING).setIndexed(true).setRequired(false));
     fields.add(new Field(SOLR_BATCH_JOB_ROWS_TO_PROCESS, Field.TYPE_LONG).setIndexed(true).setRequired(false));
     fields.add(new Field(SOLR_BATCH_JOB_ROWS_PROCESSED, Field.TYPE_LONG).setIndexed(true).setRequired(false));
+    fields.add(new Field(SOLR_BATCH_JOB_ROWS_PER_SECOND, Field.TYPE_LONG).setIndexed(true).setRequired(false));
+    fields.add(new Field(SOLR_BATCH_JOB_ESTIMATED_END_TIME, Field.TYPE_DATE).setIndexed(true).setRequired(false));
 
     return fields;
   }
@@ -113,6 +117,8 @@ public class BatchJobsCollection extends AbstractSolrCollection<ViewerJob> {
     doc.addField(SOLR_BATCH_JOB_EXIT_DESCRIPTION, viewerJob.getExitDescription());
     doc.addField(SOLR_BATCH_JOB_ROWS_TO_PROCESS, viewerJob.getRowsToProcess());
     doc.addField(SOLR_BATCH_JOB_ROWS_PROCESSED, viewerJob.getProcessRows());
+    doc.addField(SOLR_BATCH_JOB_ROWS_PER_SECOND, viewerJob.getRowsPerSecond());
+    doc.addField(SOLR_BATCH_JOB_ESTIMATED_END_TIME, viewerJob.getEstimatedEndTime());
 
     return doc;
   }
@@ -138,6 +144,8 @@ public class BatchJobsCollection extends AbstractSolrCollection<ViewerJob> {
     viewerJob.setExitDescription(SolrUtils.objectToString(doc.get(SOLR_BATCH_JOB_EXIT_DESCRIPTION), null));
     viewerJob.setRowsToProcess(SolrUtils.objectToLong(doc.get(SOLR_BATCH_JOB_ROWS_TO_PROCESS), null));
     viewerJob.setProcessRows(SolrUtils.objectToLong(doc.get(SOLR_BATCH_JOB_ROWS_PROCESSED), null));
+    viewerJob.setRowsPerSecond(SolrUtils.objectToLong(doc.get(SOLR_BATCH_JOB_ROWS_PER_SECOND), null));
+    viewerJob.setEstimatedEndTime(SolrUtils.objectToDate(doc.get(SOLR_BATCH_JOB_ESTIMATED_END_TIME)));
 
     return viewerJob;
   }
@@ -39,17 +39,18 @@ import com.databasepreservation.common.client.ViewerConstants;
 import com.databasepreservation.common.client.models.structure.ViewerDatabase;
 import com.databasepreservation.common.client.models.structure.ViewerDatabaseStatus;
 import com.databasepreservation.common.client.models.structure.ViewerDatabaseValidationStatus;
-import com.databasepreservation.common.client.models.structure.ViewerMetadata;
 import com.databasepreservation.common.exceptions.ViewerException;
 import com.databasepreservation.common.server.index.schema.AbstractSolrCollection;
 import com.databasepreservation.common.server.index.schema.CopyField;
 import com.databasepreservation.common.server.index.schema.Field;
 import com.databasepreservation.common.server.index.schema.SolrCollection;
+import com.databasepreservation.common.server.index.utils.DatabaseMetadataCache;
 import com.databasepreservation.common.server.index.utils.JsonTransformer;
 import com.databasepreservation.common.server.index.utils.SolrUtils;
 
 public class DatabasesCollection extends AbstractSolrCollection<ViewerDatabase> {
   private static final Logger LOGGER = LoggerFactory.getLogger(DatabasesCollection.class);
+  private static final String VERSION_FIELD = "_version_";
 
   @Override
   public Class<ViewerDatabase> getObjectClass() {
@@ -127,8 +128,8 @@ public class DatabasesCollection extends AbstractSolrCollection<ViewerDatabase>
         ViewerDatabaseStatus.INGESTING));
 
     String jsonMetadata = SolrUtils.objectToString(doc.get(SOLR_DATABASES_METADATA), null);
-    ViewerMetadata metadata = JsonTransformer.getObjectFromJson(jsonMetadata, ViewerMetadata.class);
-    viewerDatabase.setMetadata(metadata);
+    Long version = SolrUtils.objectToLong(doc.get(VERSION_FIELD), null);
+    viewerDatabase.setMetadata(DatabaseMetadataCache.get(viewerDatabase.getUuid(), version, jsonMetadata));
 
     viewerDatabase.setPath(SolrUtils.objectToString(doc.get(SOLR_DATABASES_SIARD_PATH), ""));
     viewerDatabase.setSize(SolrUtils.objectToLong(doc.get(SOLR_DATABASES_SIARD_SIZE), 0L));
@@ -13,6 +13,7 @@ import static com.databasepreservation.common.client.ViewerConstants.SOLR_ROWS_T
 import static com.databasepreservation.common.client.ViewerConstants.SOLR_ROWS_TABLE_UUID;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 
 import com.databasepreservation.common.client.models.structure.ViewerMimeType;
 import com.databasepreservation.common.client.tools.MimeTypeUtils;
@@ -219,17 +220,41 @@ public class RowsCollection extends AbstractSolrCollection<ViewerRow> {
   }
 
   public void createRowsCollection() {
+    createRowsCollection(Collections.emptyMap());
+  }
+
+  /**
+   * @param properties
+   *          the core properties to create the collection with
+   * @return true if the collection was created
+   */
+  public boolean createRowsCollection(Map<String, String> properties) {
     LOGGER.info("Creating SOLR collection {}", getIndexName());
-    if (SolrClientFactory.get().createCollection(getIndexName())) {
+    if (SolrClientFactory.get().createCollection(getIndexName(), properties)) {
+      awaitReadiness();
       try {
         SolrBootstrapUtils.bootstrapRowsCollection(SolrClientFactory.get().getSolrClient(), this);
       } catch (ViewerException e) {
         LOGGER.error("Could not create collection " + getIndexName(), e);
       }
       SolrRowsCollectionRegistry.register(this);
+      return true;
     } else {
       LOGGER.error("Could not create collection {}", getIndexName());
+      return false;
     }
+  }
 
+  private void awaitReadiness() {
+    try {
+      if (!SolrClientFactory.get().getCollectionReadiness(getIndexName()).get()) {
+        LOGGER.warn("Collection {} is not ready yet", getIndexName());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.warn("Interrupted while waiting for collection {}", getIndexName(), e);
+    } catch (ExecutionException e) {
+      LOGGER.warn("Could not wait for collection {}", getIndexName(), e);
+    }
   }
 }
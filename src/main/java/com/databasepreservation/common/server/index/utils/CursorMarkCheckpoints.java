@@ -0,0 +1,89 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.index.utils;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.roda.core.data.exceptions.RequestNotValidException;
+
+import com.databasepreservation.common.client.index.filter.Filter;
+import com.databasepreservation.common.client.index.sort.Sorter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Remembers the Solr cursorMark found at every {@link #INTERVAL} rows of a
+ * row search (same database, filter, sort and extra parameters), so that an
+ * iteration that starts at an offset can resume from the nearest checkpoint
+ * instead of walking the cursor from the first row.
+ *
+ * Checkpoints expire after a while and are discarded when the rows of the
+ * database change (see {@link #invalidate(String)}).
+ */
+public class CursorMarkCheckpoints {
+  public static final int INTERVAL = 10000;
+
+  private static final Cache<String, NavigableMap<Long, String>> CHECKPOINTS = CacheBuilder.newBuilder()
+    .maximumSize(200).expireAfterAccess(1, TimeUnit.HOURS).build();
+
+  private CursorMarkCheckpoints() {
+  }
+
+  /**
+   * @return the key that identifies the search, or null if the filter cannot
+   *         be parsed
+   */
+  public static String getKey(String databaseUUID, Filter filter, Sorter sorter, Map<String, String> extraParameters) {
+    StringBuilder key = new StringBuilder(databaseUUID).append('|');
+    try {
+      key.append(SolrUtils.parseFilter(filter));
+    } catch (RequestNotValidException e) {
+      return null;
+    }
+    key.append('|');
+    for (SolrQuery.SortClause clause : SolrUtils.parseSorter(sorter)) {
+      key.append(clause.getItem()).append(' ').append(clause.getOrder()).append(',');
+    }
+    key.append('|').append(extraParameters);
+    return key.toString();
+  }
+
+  /**
+   * @return the checkpoint with the greatest position not after the offset, or
+   *         null if there is none
+   */
+  public static Map.Entry<Long, String> floor(String key, long offset) {
+    NavigableMap<Long, String> checkpoints = CHECKPOINTS.getIfPresent(key);
+    return checkpoints != null ? checkpoints.floorEntry(offset) : null;
+  }
+
+  public static void record(String key, long position, String cursorMark) {
+    if (position <= 0 || position % INTERVAL != 0) {
+      return;
+    }
+
+    try {
+      CHECKPOINTS.get(key, ConcurrentSkipListMap::new).put(position, cursorMark);
+    } catch (ExecutionException e) {
+      // cannot happen, creating the map does not throw
+    }
+  }
+
+  /**
+   * Discards every checkpoint of the database.
+   */
+  public static void invalidate(String databaseUUID) {
+    final String prefix = databaseUUID + "|";
+    CHECKPOINTS.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+  }
+}
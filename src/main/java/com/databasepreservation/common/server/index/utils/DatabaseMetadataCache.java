@@ -0,0 +1,70 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.index.utils;
+
+import com.databasepreservation.common.client.models.structure.ViewerMetadata;
+import com.databasepreservation.common.exceptions.ViewerException;
+import com.databasepreservation.common.server.ViewerConfiguration;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Keeps the metadata of the most used databases already parsed, identified by
+ * the Solr version of the database document it was read from: any update to
+ * the document gives it a new version, so an outdated entry is never returned.
+ * The entries are also discarded when the metadata is updated (see
+ * {@link #invalidate(String)}).
+ *
+ * The cached metadata is shared by all callers; one that changes it must save
+ * it with the metadata update, which invalidates the entry.
+ */
+public class DatabaseMetadataCache {
+  private static final Cache<String, VersionedMetadata> METADATA = CacheBuilder.newBuilder()
+    .maximumSize(ViewerConfiguration.getInstance().getViewerConfigurationAsInt(20,
+      ViewerConfiguration.PROPERTY_DATABASE_METADATA_CACHE_SIZE))
+    .build();
+
+  private DatabaseMetadataCache() {
+  }
+
+  /**
+   * @param version
+   *          the version of the database document, null if unknown (the
+   *          metadata is then parsed and not cached)
+   * @return the metadata of the database, parsed from the json only if the
+   *         cached one is missing or from another version
+   */
+  public static ViewerMetadata get(String databaseUUID, Long version, String json) throws ViewerException {
+    if (databaseUUID == null || version == null || json == null) {
+      return JsonTransformer.getObjectFromJson(json, ViewerMetadata.class);
+    }
+
+    VersionedMetadata cached = METADATA.getIfPresent(databaseUUID);
+    if (cached != null && cached.version == version) {
+      return cached.metadata;
+    }
+
+    ViewerMetadata metadata = JsonTransformer.getObjectFromJson(json, ViewerMetadata.class);
+    METADATA.put(databaseUUID, new VersionedMetadata(version, metadata));
+    return metadata;
+  }
+
+  public static void invalidate(String databaseUUID) {
+    METADATA.invalidate(databaseUUID);
+  }
+
+  private static class VersionedMetadata {
+    private final long version;
+    private final ViewerMetadata metadata;
+
+    VersionedMetadata(long version, ViewerMetadata metadata) {
+      this.version = version;
+      this.metadata = metadata;
+    }
+  }
+}
@@ -7,13 +7,22 @@
  */
 package com.databasepreservation.common.server.index.utils;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import com.databasepreservation.common.client.ViewerConstants;
 import com.databasepreservation.common.client.index.IndexResult;
 import com.databasepreservation.common.client.index.sort.Sorter;
+import com.databasepreservation.common.client.models.structure.ViewerCell;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.common.params.CursorMarkParams;
 import org.roda.core.data.exceptions.GenericException;
@@ -25,6 +34,17 @@ import org.slf4j.LoggerFactory;
 import com.databasepreservation.common.client.models.structure.ViewerRow;
 
 /**
+ * Iterates the rows of a search page by page using a Solr cursor.
+ *
+ * With a prefetch depth above zero the next pages are requested on a
+ * background executor while the current one is consumed. As each page needs
+ * the cursorMark of the previous one, the prefetched pages are requested one
+ * after the other. When a target page size in bytes is set, the number of rows
+ * of the next page is adapted to the measured size of the rows.
+ *
+ * The first page is only requested when the iterator is first used (including
+ * {@link #getTotalCount()}), so the settings must be set before that.
+ *
  * @author Miguel Guimarães <mguimaraes@keep.pt>
  */
 public class IndexResultIterator implements Iterator<ViewerRow> {
@@ -34,15 +54,20 @@ public class IndexResultIterator implements Iterator<ViewerRow> {
   public static final int DEFAULT_PAGE_SIZE = 1000;
   public static final int DEFAULT_RETRIES = 100;
   public static final int DEFAULT_SLEEP_BETWEEN_RETRIES = 10000;
+  public static final int MIN_ADAPTIVE_PAGE_SIZE = 100;
+  public static final int MAX_ADAPTIVE_PAGE_SIZE = 10000;
+
+  private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(r -> {
+    Thread thread = new Thread(r, "index-result-prefetch");
+    thread.setDaemon(true);
+    return thread;
+  });
 
   private int pageSize = DEFAULT_PAGE_SIZE;
   private int retries = DEFAULT_RETRIES;
   private int sleepBetweenRetries = DEFAULT_SLEEP_BETWEEN_RETRIES;
-
-  private IndexResult<ViewerRow> result = null;
-  private int indexInResult = 0;
-  private String cursorMark = CursorMarkParams.CURSOR_MARK_START;
-  private String nextCursorMark = CursorMarkParams.CURSOR_MARK_START;
+  private int prefetchDepth = 0;
+  private long targetPageBytes = 0;
 
   private final SolrClient index;
   private final Filter filter;
@@ -50,73 +75,226 @@ public class IndexResultIterator implements Iterator<ViewerRow> {
   private final String databaseUUID;
   private final List<String> fieldsToReturn;
   private final Map<String, String> extraParameters;
+  private final long offset;
+  private final String checkpointKey;
+
+  private boolean started = false;
+  private volatile boolean closed = false;
+  private Page page = null;
+  private int indexInResult = 0;
+  private long totalCount = -1;
+  private final Deque<CompletableFuture<Page>> prefetched = new ArrayDeque<>();
+  private CompletableFuture<Page> lastScheduled = null;
 
   private ViewerRow next = null;
 
   public IndexResultIterator(SolrClient index, String databaseUUID, Filter filter, Sorter sorter, List<String> fieldsToReturn, Map<String, String> extraParameters) {
+    this(index, databaseUUID, filter, sorter, fieldsToReturn, extraParameters, 0);
+  }
+
+  /**
+   * Iterates the rows starting at the given offset. The cursor is moved to the
+   * offset from the nearest known checkpoint (see
+   * {@link CursorMarkCheckpoints}) requesting only the row identifiers.
+   */
+  public IndexResultIterator(SolrClient index, String databaseUUID, Filter filter, Sorter sorter,
+    List<String> fieldsToReturn, Map<String, String> extraParameters, long offset) {
     this.index = index;
     this.filter = filter;
     this.sorter = sorter;
     this.databaseUUID = databaseUUID;
     this.fieldsToReturn = fieldsToReturn;
     this.extraParameters = extraParameters;
+    this.offset = offset;
+    this.checkpointKey = CursorMarkCheckpoints.getKey(databaseUUID, filter, sorter, extraParameters);
+  }
+
+  private Page firstPage() {
+    long position = 0;
+    String mark = CursorMarkParams.CURSOR_MARK_START;
+
+    if (offset > 0) {
+      Map.Entry<Long, String> checkpoint = checkpointKey != null ? CursorMarkCheckpoints.floor(checkpointKey, offset)
+        : null;
+      if (checkpoint != null) {
+        position = checkpoint.getKey();
+        mark = checkpoint.getValue();
+      }
+
+      final List<String> idOnly = Collections.singletonList(ViewerConstants.INDEX_ID);
+      while (position < offset) {
+        int rows = (int) Math.min(offset - position, rowsUntilCheckpoint(position));
+
+        Pair<IndexResult<ViewerRow>, String> found = findPage(mark, rows, idOnly);
+        int size = found.getFirst().getResults().size();
+        if (size == 0) {
+          break;
+        }
+
+        position += size;
+        mark = found.getSecond();
+        recordCheckpoint(position, mark);
+
+        if (size < rows) {
+          break;
+        }
+      }
+    }
 
-    getCurrentAndPrepareNext();
+    return fetchPage(mark, position, (int) Math.min(pageSize, rowsUntilCheckpoint(position)));
   }
 
-  private ViewerRow getCurrentAndPrepareNext() {
-    ViewerRow current = next;
+  private Page nextPage(Page previous) {
+    if (previous == null || previous.isLast() || closed) {
+      return null;
+    }
+    return fetchPage(previous.nextCursorMark, previous.position + previous.size(), previous.nextPageSize);
+  }
 
-    // ensure index result is renewed
-    if (result == null || result.getResults().size() == indexInResult) {
-      indexInResult = 0;
+  private Page fetchPage(String mark, long position, int rows) {
+    recordCheckpoint(position, mark);
+    Pair<IndexResult<ViewerRow>, String> found = findPage(mark, rows, fieldsToReturn);
+    Page fetched = new Page(found.getFirst(), mark, found.getSecond(), position, rows);
+
+    // pages never go past a checkpoint position, so that all of them are
+    // recorded whatever the page sizes
+    long nextPosition = position + fetched.size();
+    fetched.nextPageSize = (int) Math.min(adaptPageSize(fetched), rowsUntilCheckpoint(nextPosition));
+    return fetched;
+  }
+
+  private int adaptPageSize(Page fetched) {
+    if (targetPageBytes <= 0 || fetched.size() == 0) {
+      return pageSize;
+    }
+
+    long bytes = 0;
+    for (ViewerRow row : fetched.result.getResults()) {
+      for (Map.Entry<String, ViewerCell> cell : row.getCells().entrySet()) {
+        bytes += cell.getKey().length();
+        if (cell.getValue().getValue() != null) {
+          bytes += cell.getValue().getValue().length();
+        }
+      }
+    }
 
-      cursorMark = nextCursorMark;
-      result = null;
-      nextCursorMark = null;
-      int availableRetries = retries;
-
-      do {
-        try {
-          Pair<IndexResult<ViewerRow>, String> page = SolrUtils.findRows(index, databaseUUID, filter, sorter, pageSize,
-            cursorMark, fieldsToReturn, extraParameters);
-          result = page.getFirst();
-          nextCursorMark = page.getSecond();
-
-        } catch (GenericException | RequestNotValidException e) {
-          if (availableRetries > 0) {
-            availableRetries--;
-            LOGGER.warn("Error getting next page from Solr, retrying in {}ms...", sleepBetweenRetries);
-            try {
-              Thread.sleep(sleepBetweenRetries);
-            } catch (InterruptedException e1) {
-              // do nothing
-            }
-          } else {
-            LOGGER.error("Error getting next page from Solr, no more retries.", e);
-            throw new NoSuchElementException("Error getting next item in list: " + e.getMessage());
+    long averageRowBytes = Math.max(1, bytes / fetched.size());
+    long rows = targetPageBytes / averageRowBytes;
+    return (int) Math.max(MIN_ADAPTIVE_PAGE_SIZE, Math.min(MAX_ADAPTIVE_PAGE_SIZE, rows));
+  }
+
+  private static long rowsUntilCheckpoint(long position) {
+    return CursorMarkCheckpoints.INTERVAL - (position % CursorMarkCheckpoints.INTERVAL);
+  }
+
+  private void recordCheckpoint(long position, String mark) {
+    if (checkpointKey != null) {
+      CursorMarkCheckpoints.record(checkpointKey, position, mark);
+    }
+  }
+
+  private Pair<IndexResult<ViewerRow>, String> findPage(String mark, int rows, List<String> fields) {
+    int availableRetries = retries;
+
+    while (true) {
+      try {
+        return SolrUtils.findRows(index, databaseUUID, filter, sorter, rows, mark, fields, extraParameters);
+      } catch (GenericException | RequestNotValidException e) {
+        if (availableRetries > 0) {
+          availableRetries--;
+          LOGGER.warn("Error getting next page from Solr, retrying in {}ms...", sleepBetweenRetries);
+          try {
+            Thread.sleep(sleepBetweenRetries);
+          } catch (InterruptedException e1) {
+            // do nothing
           }
+        } else {
+          LOGGER.error("Error getting next page from Solr, no more retries.", e);
+          throw new NoSuchElementException("Error getting next item in list: " + e.getMessage());
         }
-      } while (result == null);
+      }
     }
+  }
 
-    if (indexInResult < result.getResults().size()) {
-      this.next = result.getResults().get(indexInResult++);
-    } else {
-      this.next = null;
+  private Page takeNextPage(Page previous) {
+    if (prefetchDepth <= 0) {
+      return previous == null ? firstPage() : nextPage(previous);
     }
 
-    return current;
+    fillPrefetchQueue();
+    CompletableFuture<Page> future = prefetched.poll();
+    fillPrefetchQueue();
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new NoSuchElementException("Interrupted while getting next page from Solr");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof NoSuchElementException) {
+        throw (NoSuchElementException) e.getCause();
+      }
+      LOGGER.error("Error getting next page from Solr", e.getCause());
+      throw new NoSuchElementException("Error getting next item in list: " + e.getCause().getMessage());
+    }
+  }
+
+  private void fillPrefetchQueue() {
+    while (prefetched.size() < prefetchDepth) {
+      if (lastScheduled == null) {
+        lastScheduled = CompletableFuture.supplyAsync(this::firstPage, PREFETCH_EXECUTOR);
+      } else {
+        lastScheduled = lastScheduled.thenApplyAsync(this::nextPage, PREFETCH_EXECUTOR);
+      }
+      prefetched.add(lastScheduled);
+    }
+  }
+
+  private void ensureStarted() {
+    if (!started) {
+      started = true;
+      page = takeNextPage(null);
+      if (page != null) {
+        totalCount = page.result.getTotalCount();
+      }
+      prepareNext();
+    }
+  }
+
+  private void prepareNext() {
+    while (page != null && indexInResult >= page.size()) {
+      page = takeNextPage(page);
+      indexInResult = 0;
+    }
+
+    next = page != null ? page.result.getResults().get(indexInResult++) : null;
   }
 
   @Override
   public boolean hasNext() {
+    ensureStarted();
     return next != null;
   }
 
   @Override
   public ViewerRow next() {
-    return getCurrentAndPrepareNext();
+    ensureStarted();
+    ViewerRow current = next;
+    if (current != null) {
+      prepareNext();
+    }
+    return current;
+  }
+
+  /**
+   * Stops requesting pages in the background.
+   */
+  public void close() {
+    closed = true;
+    for (CompletableFuture<Page> future : prefetched) {
+      future.cancel(false);
+    }
+    prefetched.clear();
   }
 
   /**
@@ -164,12 +342,69 @@ public class IndexResultIterator implements Iterator<ViewerRow> {
     this.sleepBetweenRetries = sleepBetweenRetries;
   }
 
+  /**
+   * @return the number of pages requested ahead of the one being consumed
+   */
+  public int getPrefetchDepth() {
+    return prefetchDepth;
+  }
+
+  /**
+   * @param prefetchDepth
+   *          the number of pages to request ahead, 0 to request each page only
+   *          when it is needed
+   */
+  public void setPrefetchDepth(int prefetchDepth) {
+    this.prefetchDepth = prefetchDepth;
+  }
+
+  /**
+   * @return the target size of a page in bytes
+   */
+  public long getTargetPageBytes() {
+    return targetPageBytes;
+  }
+
+  /**
+   * @param targetPageBytes
+   *          the target size of a page in bytes, 0 to always use the page size
+   */
+  public void setTargetPageBytes(long targetPageBytes) {
+    this.targetPageBytes = targetPageBytes;
+  }
+
   /**
    * Gets the total count of objects as reported by underlying Solr requests.
    *
    * @return
    */
   public long getTotalCount() {
-    return result != null ? result.getTotalCount() : -1;
+    ensureStarted();
+    return totalCount;
+  }
+
+  private static class Page {
+    private final IndexResult<ViewerRow> result;
+    private final String cursorMark;
+    private final String nextCursorMark;
+    private final long position;
+    private final int requestedRows;
+    private int nextPageSize;
+
+    Page(IndexResult<ViewerRow> result, String cursorMark, String nextCursorMark, long position, int requestedRows) {
+      this.result = result;
+      this.cursorMark = cursorMark;
+      this.nextCursorMark = nextCursorMark;
+      this.position = position;
+      this.requestedRows = requestedRows;
+    }
+
+    int size() {
+      return result.getResults().size();
+    }
+
+    boolean isLast() {
+      return size() < requestedRows || nextCursorMark == null || nextCursorMark.equals(cursorMark);
+    }
   }
 }
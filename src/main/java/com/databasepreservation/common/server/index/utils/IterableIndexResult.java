@@ -17,6 +17,8 @@ import org.apache.solr.client.solrj.SolrClient;
 import com.databasepreservation.common.client.index.filter.Filter;
 
 import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.server.ViewerConfiguration;
+import com.databasepreservation.common.server.ViewerFactory;
 import com.databasepreservation.common.utils.CloseableIterable;
 
 /**
@@ -31,7 +33,13 @@ public class IterableIndexResult implements CloseableIterable<ViewerRow> {
 
   public IterableIndexResult(final SolrClient solrClient, String databaseUUID, final Filter filter, final Sorter sorter,
     final List<String> fieldsToReturn, final Map<String, String> extraParameters) {
-    iterator = new IndexResultIterator(solrClient, databaseUUID, filter, sorter, fieldsToReturn, extraParameters);
+    this(solrClient, databaseUUID, filter, sorter, fieldsToReturn, extraParameters, 0);
+  }
+
+  public IterableIndexResult(final SolrClient solrClient, String databaseUUID, final Filter filter, final Sorter sorter,
+    final List<String> fieldsToReturn, final Map<String, String> extraParameters, long offset) {
+    iterator = new IndexResultIterator(solrClient, databaseUUID, filter, sorter, fieldsToReturn, extraParameters,
+      offset);
 
     if (PAGE_SIZE > 0) {
       iterator.setPageSize(PAGE_SIZE);
@@ -44,6 +52,12 @@ public class IterableIndexResult implements CloseableIterable<ViewerRow> {
     if (SLEEP_BETWEEN_RETRIES > 0) {
       iterator.setSleepBetweenRetries(SLEEP_BETWEEN_RETRIES);
     }
+
+    final ViewerConfiguration configuration = ViewerFactory.getViewerConfiguration();
+    iterator.setPrefetchDepth(configuration.getViewerConfigurationAsInt(2,
+      ViewerConfiguration.PROPERTY_SEARCH_PREFETCH_DEPTH));
+    iterator.setTargetPageBytes(configuration.getViewerConfigurationAsInt(4194304,
+      ViewerConfiguration.PROPERTY_SEARCH_PAGE_TARGET_BYTES));
   }
 
   @Override
@@ -53,7 +67,7 @@ public class IterableIndexResult implements CloseableIterable<ViewerRow> {
 
   @Override
   public void close() throws IOException {
-    // do nothing
+    iterator.close();
   }
 
   public static void injectSearchPageSize(int pageSize) {
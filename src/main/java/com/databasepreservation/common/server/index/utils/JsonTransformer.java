@@ -12,9 +12,10 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.IOUtils;
-import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.GenericException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +23,8 @@ import org.slf4j.LoggerFactory;
 import com.databasepreservation.common.exceptions.ViewerException;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 /**
  * @author Bruno Ferreira <bferreira@keep.pt>
@@ -29,6 +32,18 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class JsonTransformer {
   private static final Logger LOGGER = LoggerFactory.getLogger(JsonTransformer.class);
 
+  // mappers, readers and writers are thread-safe once configured
+  private static final ObjectMapper MAPPER = new ObjectMapper(new JsonFactory());
+  private static final ObjectWriter WRITER = MAPPER.writer();
+  private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+  /**
+   * @return the shared reader of objects of the given class
+   */
+  public static ObjectReader getObjectReader(Class<?> objectClass) {
+    return READERS.computeIfAbsent(objectClass, MAPPER::readerFor);
+  }
+
   public static <T> T readObjectFromFile(Path jsonFile, Class<T> objectClass) throws ViewerException {
     try (InputStream stream = Files.newInputStream(jsonFile)) {
       return getObjectFromJson(stream, objectClass);
@@ -53,9 +68,7 @@ public class JsonTransformer {
   public static String getJsonFromObject(Object object) throws ViewerException {
     String ret = null;
     try {
-      JsonFactory factory = new JsonFactory();
-      ObjectMapper mapper = new ObjectMapper(factory);
-      ret = mapper.writeValueAsString(object);
+      ret = WRITER.writeValueAsString(object);
     } catch (IOException e) {
       throw new ViewerException("Error transforming object '" + object + "' to json string", e);
     }
@@ -65,10 +78,9 @@ public class JsonTransformer {
   public static <T> T getObjectFromJson(InputStream json, Class<T> objectClass) throws ViewerException {
     T ret;
     try {
-      String jsonString = IOUtils.toString(json, RodaConstants.DEFAULT_ENCODING);
-      ret = getObjectFromJson(jsonString, objectClass);
+      ret = getObjectReader(objectClass).readValue(json);
     } catch (IOException e) {
-      throw new ViewerException(e);
+      throw new ViewerException("Error while parsing JSON", e);
     } finally {
       IOUtils.closeQuietly(json);
     }
@@ -82,9 +94,7 @@ public class JsonTransformer {
 
     T ret;
     try {
-      JsonFactory factory = new JsonFactory();
-      ObjectMapper mapper = new ObjectMapper(factory);
-      ret = mapper.readValue(json, objectClass);
+      ret = getObjectReader(objectClass).readValue(json);
     } catch (IOException e) {
       throw new ViewerException("Error while parsing JSON", e);
     }
@@ -72,6 +72,7 @@ import com.databasepreservation.common.client.index.filter.NotSimpleFilterParame
 import com.databasepreservation.common.client.index.filter.OneOfManyFilterParameter;
 import com.databasepreservation.common.client.index.filter.OrFiltersParameters;
 import com.databasepreservation.common.client.index.filter.SimpleFilterParameter;
+import com.databasepreservation.common.client.index.filter.StringRangeFilterParameter;
 import com.databasepreservation.common.client.index.sort.SortParameter;
 import com.databasepreservation.common.client.index.sort.Sorter;
 import com.databasepreservation.common.client.models.structure.ViewerDatabase;
@@ -546,6 +547,10 @@ public class SolrUtils {
       LongRangeFilterParameter param = (LongRangeFilterParameter) parameter;
       appendRange(ret, param.getName(), Long.class, param.getFromValue(), Long.class, param.getToValue(),
         prefixWithANDOperatorIfBuilderNotEmpty);
+    } else if (parameter instanceof StringRangeFilterParameter) {
+      StringRangeFilterParameter param = (StringRangeFilterParameter) parameter;
+      appendRange(ret, param.getName(), String.class, param.getFromValue(), String.class, param.getToValue(),
+        prefixWithANDOperatorIfBuilderNotEmpty);
     } else if (parameter instanceof NotSimpleFilterParameter) {
       NotSimpleFilterParameter notSimplePar = (NotSimpleFilterParameter) parameter;
       appendNotExactMatch(ret, notSimplePar.getName(), notSimplePar.getValue(), true,
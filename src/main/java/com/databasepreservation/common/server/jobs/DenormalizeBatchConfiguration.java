@@ -7,25 +7,41 @@
  */
 package com.databasepreservation.common.server.jobs;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.solr.common.SolrInputDocument;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.configuration.JobRegistry;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
 import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.launch.support.SimpleJobLauncher;
 import org.springframework.batch.core.launch.support.SimpleJobOperator;
 import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import com.databasepreservation.common.client.models.structure.ViewerRow;
 import com.databasepreservation.common.server.ViewerConfiguration;
+import com.databasepreservation.common.transformers.DenormalizeTransformer;
+import com.databasepreservation.model.exception.ModuleException;
 
 /**
  * @author Gabriel Barros <gbarros@keep.pt>
@@ -34,6 +50,13 @@ import com.databasepreservation.common.server.ViewerConfiguration;
 @EnableBatchProcessing
 @Configuration
 public class DenormalizeBatchConfiguration {
+  /**
+   * Job execution context key of the related tables to compute, absent if all
+   * of them are computed
+   */
+  public static final String BRANCHES_TO_COMPUTE_KEY = "denormalizeBranchesToCompute";
+
+  private static final String NO_CHANGES_STATUS = "NO_CHANGES";
 
   @Autowired
   public JobBuilderFactory jobBuilderFactory;
@@ -64,15 +87,116 @@ public class DenormalizeBatchConfiguration {
     return jobLauncher;
   }
 
+  /**
+   * Partitions of the denormalization run on their own pool, as the jobs
+   * themselves take the threads of the customTaskExecutor while waiting for
+   * their partitions
+   */
+  @Bean(name = "denormalizePartitionExecutor")
+  public ThreadPoolTaskExecutor partitionTaskExecutor() {
+    ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+    taskExecutor.setThreadNamePrefix("denormalize-partition-");
+    taskExecutor.setCorePoolSize(ViewerConfiguration.getInstance().getViewerConfigurationAsInt(5,
+      ViewerConfiguration.PROPERTY_BATCH_JOBS_CORE_POOL_SIZE));
+    return taskExecutor;
+  }
+
   @Bean(name = "denormalizeJob")
-  public Job denormalizeJob(JobListener listener, Step step1) {
-    return jobBuilderFactory.get("denormalizeJob").incrementer(new RunIdIncrementer()).listener(listener).flow(step1)
-      .end().build();
+  public Job denormalizeJob(JobListener listener, Step denormalizeCleanStep, JobExecutionDecider denormalizeDecider,
+    Step denormalizeRowsStep, Step denormalizeStatusStep) {
+    return jobBuilderFactory.get("denormalizeJob").incrementer(new RunIdIncrementer()).listener(listener)
+      .flow(denormalizeCleanStep).next(denormalizeDecider).on(NO_CHANGES_STATUS).to(denormalizeStatusStep)
+      .from(denormalizeDecider).on("*").to(denormalizeRowsStep).next(denormalizeStatusStep).end().build();
+  }
+
+  @Bean
+  public Step denormalizeCleanStep(DenormalizeTransformerRegistry transformerRegistry) {
+    return stepBuilderFactory.get("denormalizeCleanStep").tasklet((contribution, chunkContext) -> {
+      JobExecution jobExecution = chunkContext.getStepContext().getStepExecution().getJobExecution();
+      Set<String> branchesToCompute = transformerRegistry.get(jobExecution).prepareNestedDocuments();
+      if (branchesToCompute != null) {
+        jobExecution.getExecutionContext().put(BRANCHES_TO_COMPUTE_KEY, new ArrayList<>(branchesToCompute));
+      }
+      return RepeatStatus.FINISHED;
+    }).build();
+  }
+
+  /**
+   * Skips the rows when no related table changed since the last
+   * denormalization
+   */
+  @Bean
+  public JobExecutionDecider denormalizeDecider() {
+    return (jobExecution, stepExecution) -> {
+      ExecutionContext executionContext = jobExecution.getExecutionContext();
+      if (executionContext.containsKey(BRANCHES_TO_COMPUTE_KEY)
+        && ((List<?>) executionContext.get(BRANCHES_TO_COMPUTE_KEY)).isEmpty()) {
+        return new FlowExecutionStatus(NO_CHANGES_STATUS);
+      }
+      return FlowExecutionStatus.COMPLETED;
+    };
+  }
+
+  @Bean
+  public Step denormalizeRowsStep(DenormalizePartitioner denormalizePartitioner, Step denormalizeRowsPartitionStep,
+    @Qualifier("denormalizePartitionExecutor") ThreadPoolTaskExecutor taskExecutor) {
+    return stepBuilderFactory.get("denormalizeRowsStep")
+      .partitioner(denormalizeRowsPartitionStep.getName(), denormalizePartitioner).step(denormalizeRowsPartitionStep)
+      .gridSize(ViewerConfiguration.getInstance().getViewerConfigurationAsInt(4,
+        ViewerConfiguration.PROPERTY_DENORMALIZE_PARTITIONS))
+      .taskExecutor(taskExecutor).build();
+  }
+
+  @Bean
+  public Step denormalizeRowsPartitionStep(DenormalizeRowReader denormalizeRowReader,
+    DenormalizeProcessor denormalizeProcessor, DenormalizeWriter denormalizeWriter) {
+    return stepBuilderFactory.get("denormalizeRowsPartitionStep")
+      .<ViewerRow, SolrInputDocument> chunk(ViewerConfiguration.getInstance().getViewerConfigurationAsInt(500,
+        ViewerConfiguration.PROPERTY_DENORMALIZE_CHUNK_SIZE))
+      .reader(denormalizeRowReader).processor(denormalizeProcessor).writer(denormalizeWriter).build();
+  }
+
+  @Bean
+  public Step denormalizeStatusStep(DenormalizeTransformerRegistry transformerRegistry) {
+    return stepBuilderFactory.get("denormalizeStatusStep").tasklet((contribution, chunkContext) -> {
+      DenormalizeTransformer transformer = transformerRegistry
+        .get(chunkContext.getStepContext().getStepExecution().getJobExecution());
+      transformer.updateCollectionStatus();
+      transformer.saveAppliedDenormalization();
+      return RepeatStatus.FINISHED;
+    }).build();
+  }
+
+  @Bean
+  @StepScope
+  public DenormalizePartitioner denormalizePartitioner(DenormalizeTransformerRegistry transformerRegistry,
+    @Value("#{stepExecution}") StepExecution stepExecution) throws ModuleException {
+    return new DenormalizePartitioner(transformerRegistry.get(stepExecution.getJobExecution()));
+  }
+
+  @Bean
+  @StepScope
+  public DenormalizeRowReader denormalizeRowReader(DenormalizeTransformerRegistry transformerRegistry,
+    JobProgressReporter progressReporter, @Value("#{stepExecution}") StepExecution stepExecution,
+    @Value("#{stepExecutionContext['" + DenormalizePartitioner.FROM_UUID_KEY + "']}") String fromUUID,
+    @Value("#{stepExecutionContext['" + DenormalizePartitioner.TO_UUID_KEY + "']}") String toUUID)
+    throws ModuleException {
+    return new DenormalizeRowReader(transformerRegistry.get(stepExecution.getJobExecution()), progressReporter,
+      fromUUID, toUUID);
+  }
+
+  @Bean
+  @StepScope
+  public DenormalizeProcessor denormalizeProcessor(DenormalizeTransformerRegistry transformerRegistry,
+    @Value("#{stepExecution}") StepExecution stepExecution) throws ModuleException {
+    return new DenormalizeProcessor(transformerRegistry.get(stepExecution.getJobExecution()));
   }
 
   @Bean
-  public Step step1() {
-    return stepBuilderFactory.get("step1").tasklet(new DenormalizeProcessor()).build();
+  @StepScope
+  public DenormalizeWriter denormalizeWriter(DenormalizeTransformerRegistry transformerRegistry,
+    @Value("#{stepExecution}") StepExecution stepExecution) throws ModuleException {
+    return new DenormalizeWriter(transformerRegistry.get(stepExecution.getJobExecution()));
   }
 
   @Bean(name = "customJobOperator")
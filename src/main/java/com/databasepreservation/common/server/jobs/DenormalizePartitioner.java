@@ -0,0 +1,83 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.jobs;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import com.databasepreservation.common.client.ViewerConstants;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.server.ViewerFactory;
+import com.databasepreservation.common.server.index.utils.IterableIndexResult;
+import com.databasepreservation.common.transformers.DenormalizeTransformer;
+
+/**
+ * Splits the rows of the denormalized table in uuid ranges with about the same
+ * number of rows, by going once over the uuids of the rows.
+ */
+public class DenormalizePartitioner implements Partitioner {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DenormalizePartitioner.class);
+
+  public static final String FROM_UUID_KEY = "fromUUID";
+  public static final String TO_UUID_KEY = "toUUID";
+  private static final String PARTITION_PREFIX = "partition";
+
+  private final DenormalizeTransformer transformer;
+
+  public DenormalizePartitioner(DenormalizeTransformer transformer) {
+    this.transformer = transformer;
+  }
+
+  @Override
+  public Map<String, ExecutionContext> partition(int gridSize) {
+    long rowsToProcess = transformer.getRowsToProcess();
+    if (gridSize <= 1 || rowsToProcess <= gridSize) {
+      return Collections.singletonMap(PARTITION_PREFIX + 0, new ExecutionContext());
+    }
+
+    long rowsPerPartition = (rowsToProcess + gridSize - 1) / gridSize;
+    Map<String, ExecutionContext> partitions = new HashMap<>();
+    ExecutionContext partition = null;
+    String previousUUID = null;
+    long position = 0;
+
+    try (IterableIndexResult rows = ViewerFactory.getSolrManager().findAllRows(transformer.getDatabaseUUID(),
+      transformer.getRootRowsFilter(), null, Collections.singletonList(ViewerConstants.INDEX_ID))) {
+      for (ViewerRow row : rows) {
+        if (position % rowsPerPartition == 0) {
+          if (partition != null) {
+            partition.putString(TO_UUID_KEY, previousUUID);
+          }
+          partition = new ExecutionContext();
+          // the first partition also takes rows before the first uuid seen
+          if (position > 0) {
+            partition.putString(FROM_UUID_KEY, row.getUuid());
+          }
+          partitions.put(PARTITION_PREFIX + partitions.size(), partition);
+        }
+        previousUUID = row.getUuid();
+        position++;
+      }
+    } catch (IOException e) {
+      LOGGER.debug("Could not close the search for the partitions of {}", transformer.getDatabaseUUID(), e);
+    }
+
+    // the last partition has no upper limit
+    if (partitions.isEmpty()) {
+      partitions.put(PARTITION_PREFIX + 0, new ExecutionContext());
+    }
+    return partitions;
+  }
+}
@@ -7,51 +7,28 @@
  */
 package com.databasepreservation.common.server.jobs;
 
-import com.databasepreservation.common.client.models.structure.ViewerJobStatus;
-import com.databasepreservation.common.server.controller.JobController;
-import com.databasepreservation.common.transformers.DenormalizeTransformer;
-import com.databasepreservation.model.exception.ModuleException;
-import org.roda.core.data.exceptions.GenericException;
-import org.roda.core.data.exceptions.NotFoundException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.batch.core.ExitStatus;
-import org.springframework.batch.core.JobExecution;
-import org.springframework.batch.core.StepContribution;
-import org.springframework.batch.core.scope.context.ChunkContext;
-import org.springframework.batch.core.step.tasklet.Tasklet;
-import org.springframework.batch.repeat.RepeatStatus;
+import org.apache.solr.common.SolrInputDocument;
+import org.springframework.batch.item.ItemProcessor;
 
-import com.databasepreservation.common.client.ViewerConstants;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.transformers.DenormalizeTransformer;
 
 /**
+ * Builds the nested documents of a row of the denormalized table, as the
+ * partial update of the row. Rows without nested documents to add are filtered
+ * out.
+ *
  * @author Gabriel Barros <gbarros@keep.pt>
  */
-public class DenormalizeProcessor implements Tasklet {
-  private static final Logger LOGGER = LoggerFactory.getLogger(DenormalizeProcessor.class);
+public class DenormalizeProcessor implements ItemProcessor<ViewerRow, SolrInputDocument> {
+  private final DenormalizeTransformer transformer;
+
+  public DenormalizeProcessor(DenormalizeTransformer transformer) {
+    this.transformer = transformer;
+  }
 
   @Override
-  public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws ModuleException {
-    JobExecution jobExecution = chunkContext.getStepContext().getStepExecution().getJobExecution();
-    String databaseUUID = chunkContext.getStepContext().getStepExecution().getJobParameters()
-      .getString(ViewerConstants.CONTROLLER_DATABASE_ID_PARAM);
-    String tableUUID = chunkContext.getStepContext().getStepExecution().getJobParameters()
-      .getString(ViewerConstants.CONTROLLER_TABLE_ID_PARAM);
-    String jobUUID = chunkContext.getStepContext().getStepExecution().getJobParameters()
-      .getString(ViewerConstants.INDEX_ID);
-    try {
-      DenormalizeTransformer denormalizeTransformer = new DenormalizeTransformer(databaseUUID, tableUUID, jobUUID);
-    } catch (ModuleException e) {
-      try {
-        chunkContext.getStepContext().getStepExecution().setTerminateOnly();
-        chunkContext.getStepContext().getStepExecution()
-          .setExitStatus(new ExitStatus(ViewerJobStatus.FAILED.name(), e.getMessage()));
-        JobController.setMessageToSolrBatchJob(jobExecution, e.getMessage());
-        throw new ModuleException().withCause(e).withMessage(e.getMessage());
-      } catch (NotFoundException | GenericException ex) {
-        LOGGER.error("Cannot update job on SOLR", e);
-      }
-    }
-    return RepeatStatus.FINISHED;
+  public SolrInputDocument process(ViewerRow row) {
+    return transformer.createRowUpdate(row);
   }
 }
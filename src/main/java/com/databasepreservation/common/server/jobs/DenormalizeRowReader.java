@@ -0,0 +1,117 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.jobs;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+
+import com.databasepreservation.common.client.ViewerConstants;
+import com.databasepreservation.common.client.index.filter.Filter;
+import com.databasepreservation.common.client.index.filter.StringRangeFilterParameter;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.server.ViewerFactory;
+import com.databasepreservation.common.server.index.utils.IterableIndexResult;
+import com.databasepreservation.common.transformers.DenormalizeTransformer;
+
+/**
+ * Reads the rows of the denormalized table with uuids in a range (both ends
+ * included, null for no limit), in uuid order. The uuid of the last row read
+ * is saved in the step execution context at each chunk, so that a restarted
+ * step continues after it.
+ */
+public class DenormalizeRowReader extends ItemStreamSupport implements ItemStreamReader<ViewerRow> {
+  private static final String LAST_UUID_KEY = "lastUUID";
+  private static final String READ_COUNT_KEY = "readCount";
+
+  private final DenormalizeTransformer transformer;
+  private final JobProgressReporter progressReporter;
+  private final String fromUUID;
+  private final String toUUID;
+
+  private IterableIndexResult rows;
+  private Iterator<ViewerRow> iterator;
+  private String lastUUID;
+  private long readCount = 0;
+  private long reportedCount = 0;
+
+  public DenormalizeRowReader(DenormalizeTransformer transformer, JobProgressReporter progressReporter,
+    String fromUUID, String toUUID) {
+    this.transformer = transformer;
+    this.progressReporter = progressReporter;
+    this.fromUUID = fromUUID;
+    this.toUUID = toUUID;
+    setName(DenormalizeRowReader.class.getSimpleName());
+  }
+
+  @Override
+  public void open(ExecutionContext executionContext) throws ItemStreamException {
+    super.open(executionContext);
+    lastUUID = executionContext.getString(getExecutionContextKey(LAST_UUID_KEY), null);
+    readCount = executionContext.getLong(getExecutionContextKey(READ_COUNT_KEY), 0);
+    reportedCount = readCount;
+    if (readCount > 0) {
+      progressReporter.addRestoredRows(transformer.getJobUUID(), readCount);
+    }
+
+    Filter filter = transformer.getRootRowsFilter();
+    String from = lastUUID != null ? lastUUID : fromUUID;
+    if (from != null || toUUID != null) {
+      filter.add(new StringRangeFilterParameter(ViewerConstants.INDEX_ID, from, toUUID));
+    }
+
+    rows = ViewerFactory.getSolrManager().findAllRows(transformer.getDatabaseUUID(), filter, null,
+      transformer.getRootFieldsToReturn());
+    iterator = rows.iterator();
+  }
+
+  @Override
+  public ViewerRow read() {
+    while (iterator.hasNext()) {
+      ViewerRow row = iterator.next();
+      // the range includes the last row read before a restart
+      if (!row.getUuid().equals(lastUUID)) {
+        lastUUID = row.getUuid();
+        readCount++;
+        return row;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void update(ExecutionContext executionContext) throws ItemStreamException {
+    super.update(executionContext);
+    if (lastUUID != null) {
+      executionContext.putString(getExecutionContextKey(LAST_UUID_KEY), lastUUID);
+    }
+    executionContext.putLong(getExecutionContextKey(READ_COUNT_KEY), readCount);
+
+    if (readCount > reportedCount) {
+      progressReporter.addProcessedRows(transformer.getJobUUID(), readCount - reportedCount);
+      reportedCount = readCount;
+    }
+  }
+
+  @Override
+  public void close() throws ItemStreamException {
+    super.close();
+    if (rows != null) {
+      try {
+        rows.close();
+      } catch (IOException e) {
+        throw new ItemStreamException(e);
+      }
+      rows = null;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.jobs;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.databasepreservation.common.client.ViewerConstants;
+import com.databasepreservation.common.transformers.DenormalizeTransformer;
+import com.databasepreservation.model.exception.ModuleException;
+
+/**
+ * Keeps one {@link DenormalizeTransformer} per running job execution, shared
+ * by all its steps and partitions (so that the related rows are indexed only
+ * once). Transformers are released by {@link JobListener} when the job ends.
+ */
+@Component
+public class DenormalizeTransformerRegistry {
+  private final Map<Long, DenormalizeTransformer> transformers = new ConcurrentHashMap<>();
+
+  @Autowired
+  private JobProgressReporter progressReporter;
+
+  @SuppressWarnings("unchecked")
+  public DenormalizeTransformer get(JobExecution jobExecution) throws ModuleException {
+    DenormalizeTransformer transformer = transformers.get(jobExecution.getId());
+    if (transformer == null) {
+      synchronized (this) {
+        transformer = transformers.get(jobExecution.getId());
+        if (transformer == null) {
+          transformer = new DenormalizeTransformer(
+            jobExecution.getJobParameters().getString(ViewerConstants.CONTROLLER_DATABASE_ID_PARAM),
+            jobExecution.getJobParameters().getString(ViewerConstants.CONTROLLER_TABLE_ID_PARAM),
+            jobExecution.getJobParameters().getString(ViewerConstants.INDEX_ID));
+          // a restarted job does not prepare the nested documents again
+          ExecutionContext executionContext = jobExecution.getExecutionContext();
+          if (executionContext.containsKey(DenormalizeBatchConfiguration.BRANCHES_TO_COMPUTE_KEY)) {
+            transformer.setBranchesToCompute(new HashSet<>(
+              (List<String>) executionContext.get(DenormalizeBatchConfiguration.BRANCHES_TO_COMPUTE_KEY)));
+          }
+          transformers.put(jobExecution.getId(), transformer);
+          progressReporter.start(transformer.getJobUUID(), transformer.getRowsToProcess());
+        }
+      }
+    }
+    return transformer;
+  }
+
+  public void remove(JobExecution jobExecution) {
+    transformers.remove(jobExecution.getId());
+  }
+}
@@ -0,0 +1,33 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.springframework.batch.item.ItemWriter;
+
+import com.databasepreservation.common.server.ViewerFactory;
+import com.databasepreservation.common.transformers.DenormalizeTransformer;
+
+/**
+ * Sends the nested documents of a whole chunk of rows to Solr in one request.
+ */
+public class DenormalizeWriter implements ItemWriter<SolrInputDocument> {
+  private final DenormalizeTransformer transformer;
+
+  public DenormalizeWriter(DenormalizeTransformer transformer) {
+    this.transformer = transformer;
+  }
+
+  @Override
+  public void write(List<? extends SolrInputDocument> documents) throws Exception {
+    ViewerFactory.getSolrManager().addDatabaseFields(transformer.getDatabaseUUID(), new ArrayList<>(documents));
+  }
+}
@@ -26,6 +26,7 @@ import com.databasepreservation.common.client.models.status.denormalization.Deno
 import com.databasepreservation.common.client.models.structure.ViewerJobStatus;
 import com.databasepreservation.common.exceptions.ViewerException;
 import com.databasepreservation.common.server.ViewerConfiguration;
+import com.databasepreservation.common.server.ViewerFactory;
 import com.databasepreservation.common.server.controller.JobController;
 import com.databasepreservation.common.server.index.utils.JsonTransformer;
 
@@ -36,6 +37,12 @@ import com.databasepreservation.common.server.index.utils.JsonTransformer;
 public class JobListener extends JobExecutionListenerSupport {
   private static final Logger LOGGER = LoggerFactory.getLogger(JobListener.class);
 
+  @Autowired
+  private DenormalizeTransformerRegistry transformerRegistry;
+
+  @Autowired
+  private JobProgressReporter progressReporter;
+
   @Override
   public void beforeJob(JobExecution jobExecution) {
     super.beforeJob(jobExecution);
@@ -56,8 +63,15 @@ public class JobListener extends JobExecutionListenerSupport {
   @Override
   public void afterJob(JobExecution jobExecution) {
     super.afterJob(jobExecution);
+    transformerRegistry.remove(jobExecution);
+    progressReporter.finish(jobExecution.getJobParameters().getString(ViewerConstants.INDEX_ID));
     String databaseUUID = jobExecution.getJobParameters().getString(ViewerConstants.CONTROLLER_DATABASE_ID_PARAM);
     String tableUUID = jobExecution.getJobParameters().getString(ViewerConstants.CONTROLLER_TABLE_ID_PARAM);
+    try {
+      ViewerFactory.getSolrManager().commitDeferred(databaseUUID);
+    } catch (ViewerException e) {
+      LOGGER.error("Cannot commit the rows of " + databaseUUID + "/" + tableUUID, e);
+    }
     try {
       JobController.editSolrBatchJob(jobExecution);
       if (jobExecution.getStatus() == BatchStatus.COMPLETED) {
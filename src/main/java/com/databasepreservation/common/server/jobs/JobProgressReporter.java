@@ -0,0 +1,146 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.jobs;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+import com.databasepreservation.common.client.models.structure.ViewerJob;
+import com.databasepreservation.common.server.ViewerConfiguration;
+import com.databasepreservation.common.server.ViewerFactory;
+
+/**
+ * Keeps the progress of the running batch jobs in memory and writes it to the
+ * batch jobs collection from time to time (after an interval or a number of
+ * rows, whichever comes first) instead of once per row. The live progress,
+ * with the throughput and estimated end time, is available through
+ * {@link #fill(ViewerJob)}.
+ */
+@Component
+public class JobProgressReporter {
+  private final Map<String, JobProgress> runningJobs = new ConcurrentHashMap<>();
+  private final long flushIntervalMillis;
+  private final long flushRows;
+
+  public JobProgressReporter() {
+    flushIntervalMillis = ViewerConfiguration.getInstance().getViewerConfigurationAsInt(2000,
+      ViewerConfiguration.PROPERTY_BATCH_JOBS_PROGRESS_FLUSH_INTERVAL);
+    flushRows = ViewerConfiguration.getInstance().getViewerConfigurationAsInt(10000,
+      ViewerConfiguration.PROPERTY_BATCH_JOBS_PROGRESS_FLUSH_ROWS);
+  }
+
+  public void start(String jobUUID, long rowsToProcess) {
+    JobProgress progress = new JobProgress(jobUUID, rowsToProcess);
+    runningJobs.put(jobUUID, progress);
+    flush(progress);
+  }
+
+  public void addProcessedRows(String jobUUID, long rows) {
+    JobProgress progress = runningJobs.get(jobUUID);
+    if (progress != null) {
+      progress.processed.add(rows);
+      if (progress.tryStartFlush(flushIntervalMillis, flushRows)) {
+        flush(progress);
+      }
+    }
+  }
+
+  /**
+   * Counts rows processed by a previous execution of a restarted job, which do
+   * not count for the throughput
+   */
+  public void addRestoredRows(String jobUUID, long rows) {
+    JobProgress progress = runningJobs.get(jobUUID);
+    if (progress != null) {
+      progress.processed.add(rows);
+      progress.restored.add(rows);
+    }
+  }
+
+  public void finish(String jobUUID) {
+    JobProgress progress = runningJobs.remove(jobUUID);
+    if (progress != null) {
+      flush(progress);
+    }
+  }
+
+  /**
+   * Replaces the progress of the job with the live one, if it is running
+   */
+  public ViewerJob fill(ViewerJob job) {
+    JobProgress progress = runningJobs.get(job.getUuid());
+    if (progress != null) {
+      long processed = progress.processed.sum();
+      Long rowsPerSecond = progress.getRowsPerSecond(processed);
+      job.setRowsToProcess(progress.rowsToProcess);
+      job.setProcessRows(processed);
+      job.setRowsPerSecond(rowsPerSecond);
+      job.setEstimatedEndTime(progress.getEstimatedEndTime(processed, rowsPerSecond));
+    }
+    return job;
+  }
+
+  private void flush(JobProgress progress) {
+    long processed = progress.processed.sum();
+    Long rowsPerSecond = progress.getRowsPerSecond(processed);
+    ViewerFactory.getSolrManager().editBatchJob(progress.jobUUID, progress.rowsToProcess, processed, rowsPerSecond,
+      progress.getEstimatedEndTime(processed, rowsPerSecond));
+  }
+
+  private static class JobProgress {
+    private final String jobUUID;
+    private final long rowsToProcess;
+    private final long startTime = System.currentTimeMillis();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+    private final AtomicLong lastFlushTime = new AtomicLong(startTime);
+    private volatile long lastFlushRows = 0;
+
+    JobProgress(String jobUUID, long rowsToProcess) {
+      this.jobUUID = jobUUID;
+      this.rowsToProcess = rowsToProcess;
+    }
+
+    /**
+     * @return true if the caller must flush, only one of the threads that find
+     *         that a flush is due gets true
+     */
+    boolean tryStartFlush(long flushIntervalMillis, long flushRows) {
+      long now = System.currentTimeMillis();
+      long last = lastFlushTime.get();
+      long processedRows = processed.sum();
+      if (now - last < flushIntervalMillis && processedRows - lastFlushRows < flushRows) {
+        return false;
+      }
+      if (lastFlushTime.compareAndSet(last, now)) {
+        lastFlushRows = processedRows;
+        return true;
+      }
+      return false;
+    }
+
+    Long getRowsPerSecond(long processedRows) {
+      long elapsed = System.currentTimeMillis() - startTime;
+      long rows = processedRows - restored.sum();
+      return elapsed > 0 && rows > 0 ? rows * 1000 / elapsed : null;
+    }
+
+    Date getEstimatedEndTime(long processedRows, Long rowsPerSecond) {
+      if (rowsPerSecond == null || rowsPerSecond == 0) {
+        return null;
+      }
+      long remaining = Math.max(rowsToProcess - processedRows, 0);
+      return new Date(System.currentTimeMillis() + remaining * 1000 / rowsPerSecond);
+    }
+  }
+}
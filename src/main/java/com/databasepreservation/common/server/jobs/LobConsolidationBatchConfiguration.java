@@ -0,0 +1,159 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.jobs;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.databasepreservation.common.client.ViewerConstants;
+import com.databasepreservation.common.client.models.status.collection.CollectionStatus;
+import com.databasepreservation.common.client.models.status.collection.LargeObjectConsolidateProperty;
+import com.databasepreservation.common.client.models.status.collection.TableStatus;
+import com.databasepreservation.common.client.models.structure.ViewerDatabase;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.server.ViewerConfiguration;
+import com.databasepreservation.common.server.ViewerFactory;
+import com.databasepreservation.common.utils.ConsolidatedLobStore;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Consolidates the LOBs of a database: they are copied in parallel from the
+ * SIARD (or the external files) to a {@link ConsolidatedLobStore}, and the
+ * collection is then marked as {@link LargeObjectConsolidateProperty#CONSOLIDATED}
+ * so that LOBs are read from there. A failed or stopped job can be restarted
+ * and continues where it stopped.
+ */
+@Configuration
+public class LobConsolidationBatchConfiguration {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LobConsolidationBatchConfiguration.class);
+
+  public static final String LOB_CONSOLIDATION_JOB = "lobConsolidationJob";
+
+  @Autowired
+  public JobBuilderFactory jobBuilderFactory;
+
+  @Autowired
+  public StepBuilderFactory stepBuilderFactory;
+
+  // shared by all consolidations, limits the bytes they copy per second
+  private final RateLimiter rateLimiter;
+
+  public LobConsolidationBatchConfiguration() {
+    int maxBytesPerSecond = ViewerConfiguration.getInstance().getViewerConfigurationAsInt(0,
+      ViewerConfiguration.PROPERTY_LOBS_CONSOLIDATION_MAX_BYTES_PER_SECOND);
+    rateLimiter = maxBytesPerSecond > 0 ? RateLimiter.create(maxBytesPerSecond) : null;
+  }
+
+  @Bean(name = "lobConsolidationPartitionExecutor")
+  public ThreadPoolTaskExecutor lobConsolidationPartitionExecutor() {
+    ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+    taskExecutor.setThreadNamePrefix("lob-consolidation-");
+    taskExecutor.setCorePoolSize(getPartitions());
+    return taskExecutor;
+  }
+
+  @Bean(name = LOB_CONSOLIDATION_JOB)
+  public Job lobConsolidationJob(Step lobConsolidationRowsStep, Step lobConsolidationStatusStep) {
+    return jobBuilderFactory.get(LOB_CONSOLIDATION_JOB).incrementer(new RunIdIncrementer())
+      .start(lobConsolidationRowsStep).next(lobConsolidationStatusStep).build();
+  }
+
+  @Bean
+  public Step lobConsolidationRowsStep(LobConsolidationPartitioner lobConsolidationPartitioner,
+    Step lobConsolidationRowsPartitionStep,
+    @Qualifier("lobConsolidationPartitionExecutor") ThreadPoolTaskExecutor taskExecutor) {
+    return stepBuilderFactory.get("lobConsolidationRowsStep")
+      .partitioner(lobConsolidationRowsPartitionStep.getName(), lobConsolidationPartitioner)
+      .step(lobConsolidationRowsPartitionStep).gridSize(getPartitions()).taskExecutor(taskExecutor).build();
+  }
+
+  @Bean
+  public Step lobConsolidationRowsPartitionStep(LobConsolidationRowReader lobConsolidationRowReader,
+    LobConsolidationWriter lobConsolidationWriter) {
+    return stepBuilderFactory.get("lobConsolidationRowsPartitionStep")
+      .<ViewerRow, ViewerRow> chunk(ViewerConfiguration.getInstance().getViewerConfigurationAsInt(100,
+        ViewerConfiguration.PROPERTY_LOBS_CONSOLIDATION_CHUNK_SIZE))
+      .reader(lobConsolidationRowReader).writer(lobConsolidationWriter).build();
+  }
+
+  @Bean
+  public Step lobConsolidationStatusStep() {
+    return stepBuilderFactory.get("lobConsolidationStatusStep").tasklet((contribution, chunkContext) -> {
+      String databaseUUID = chunkContext.getStepContext().getStepExecution().getJobParameters()
+        .getString(ViewerConstants.CONTROLLER_DATABASE_ID_PARAM);
+      CollectionStatus collectionStatus = ViewerFactory.getConfigurationManager()
+        .getConfigurationCollectionForUpdate(databaseUUID, databaseUUID);
+      collectionStatus.setConsolidateProperty(LargeObjectConsolidateProperty.CONSOLIDATED);
+      ViewerFactory.getConfigurationManager().updateCollectionStatus(databaseUUID, collectionStatus);
+      LOGGER.info("LOBs of database {} consolidated", databaseUUID);
+      return RepeatStatus.FINISHED;
+    }).build();
+  }
+
+  @Bean
+  @StepScope
+  public LobConsolidationPartitioner lobConsolidationPartitioner(
+    @Value("#{jobParameters['" + ViewerConstants.CONTROLLER_DATABASE_ID_PARAM + "']}") String databaseUUID)
+    throws GenericException {
+    return new LobConsolidationPartitioner(databaseUUID, getCollectionStatus(databaseUUID));
+  }
+
+  @Bean
+  @StepScope
+  public LobConsolidationRowReader lobConsolidationRowReader(
+    @Value("#{jobParameters['" + ViewerConstants.CONTROLLER_DATABASE_ID_PARAM + "']}") String databaseUUID,
+    @Value("#{stepExecutionContext['" + LobConsolidationPartitioner.TABLE_ID_KEY + "']}") String tableId,
+    @Value("#{stepExecutionContext['" + LobConsolidationPartitioner.FROM_UUID_KEY + "']}") String fromUUID,
+    @Value("#{stepExecutionContext['" + LobConsolidationPartitioner.TO_UUID_KEY + "']}") String toUUID)
+    throws GenericException {
+    return new LobConsolidationRowReader(databaseUUID, getTableStatus(databaseUUID, tableId), fromUUID, toUUID);
+  }
+
+  @Bean
+  @StepScope
+  public LobConsolidationWriter lobConsolidationWriter(
+    @Value("#{jobParameters['" + ViewerConstants.CONTROLLER_DATABASE_ID_PARAM + "']}") String databaseUUID,
+    @Value("#{stepExecutionContext['" + LobConsolidationPartitioner.TABLE_ID_KEY + "']}") String tableId)
+    throws GenericException, NotFoundException {
+    ViewerDatabase database = ViewerFactory.getSolrManager().retrieve(ViewerDatabase.class, databaseUUID);
+    return new LobConsolidationWriter(databaseUUID, database.getPath(), getTableStatus(databaseUUID, tableId),
+      new ConsolidatedLobStore(ViewerFactory.getViewerConfiguration(), databaseUUID, rateLimiter));
+  }
+
+  private static int getPartitions() {
+    return Math.max(1, ViewerConfiguration.getInstance().getViewerConfigurationAsInt(4,
+      ViewerConfiguration.PROPERTY_LOBS_CONSOLIDATION_PARTITIONS));
+  }
+
+  private static CollectionStatus getCollectionStatus(String databaseUUID) throws GenericException {
+    return ViewerFactory.getConfigurationManager().getConfigurationCollection(databaseUUID, databaseUUID);
+  }
+
+  private static TableStatus getTableStatus(String databaseUUID, String tableId) throws GenericException {
+    TableStatus table = getCollectionStatus(databaseUUID).getTableStatusByTableId(tableId);
+    if (table == null) {
+      throw new GenericException("Table " + tableId + " not found in database " + databaseUUID);
+    }
+    return table;
+  }
+}
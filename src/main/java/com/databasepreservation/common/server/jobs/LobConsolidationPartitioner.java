@@ -0,0 +1,128 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.jobs;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.UnexpectedJobExecutionException;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import com.databasepreservation.common.client.ViewerConstants;
+import com.databasepreservation.common.client.index.filter.Filter;
+import com.databasepreservation.common.client.models.status.collection.CollectionStatus;
+import com.databasepreservation.common.client.models.status.collection.ColumnStatus;
+import com.databasepreservation.common.client.models.status.collection.TableStatus;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.client.models.structure.ViewerType;
+import com.databasepreservation.common.client.tools.FilterUtils;
+import com.databasepreservation.common.server.ViewerFactory;
+import com.databasepreservation.common.server.index.DatabaseRowsSolrManager;
+import com.databasepreservation.common.server.index.utils.IterableIndexResult;
+
+/**
+ * Splits the rows of the tables with binary columns in uuid ranges with about
+ * the same number of rows (a table is never merged with another one), by
+ * going once over the uuids of the rows of the tables that must be split.
+ */
+public class LobConsolidationPartitioner implements Partitioner {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LobConsolidationPartitioner.class);
+
+  public static final String TABLE_ID_KEY = "tableId";
+  public static final String FROM_UUID_KEY = DenormalizePartitioner.FROM_UUID_KEY;
+  public static final String TO_UUID_KEY = DenormalizePartitioner.TO_UUID_KEY;
+  private static final String PARTITION_PREFIX = "partition";
+
+  private final String databaseUUID;
+  private final CollectionStatus collectionStatus;
+
+  public LobConsolidationPartitioner(String databaseUUID, CollectionStatus collectionStatus) {
+    this.databaseUUID = databaseUUID;
+    this.collectionStatus = collectionStatus;
+  }
+
+  /**
+   * @return the columns of the table whose LOBs are consolidated
+   */
+  public static List<ColumnStatus> getBinaryColumns(TableStatus table) {
+    return table.getColumns().stream().filter(c -> ViewerType.dbTypes.BINARY.equals(c.getType()))
+      .collect(Collectors.toList());
+  }
+
+  @Override
+  public Map<String, ExecutionContext> partition(int gridSize) {
+    DatabaseRowsSolrManager solrManager = ViewerFactory.getSolrManager();
+    Map<String, Long> rowsPerTable = new LinkedHashMap<>();
+    long rowsToProcess = 0;
+    try {
+      for (TableStatus table : collectionStatus.getTables()) {
+        if (!getBinaryColumns(table).isEmpty()) {
+          long rows = solrManager.countRows(databaseUUID, FilterUtils.filterByTable(new Filter(), table.getId()));
+          if (rows > 0) {
+            rowsPerTable.put(table.getId(), rows);
+            rowsToProcess += rows;
+          }
+        }
+      }
+    } catch (GenericException | RequestNotValidException e) {
+      throw new UnexpectedJobExecutionException("Could not count the rows with LOBs of " + databaseUUID, e);
+    }
+
+    long rowsPerPartition = Math.max(1, (rowsToProcess + Math.max(gridSize, 1) - 1) / Math.max(gridSize, 1));
+    Map<String, ExecutionContext> partitions = new HashMap<>();
+    for (Map.Entry<String, Long> table : rowsPerTable.entrySet()) {
+      if (table.getValue() <= rowsPerPartition) {
+        ExecutionContext partition = new ExecutionContext();
+        partition.putString(TABLE_ID_KEY, table.getKey());
+        partitions.put(PARTITION_PREFIX + partitions.size(), partition);
+      } else {
+        splitTable(table.getKey(), rowsPerPartition, partitions);
+      }
+    }
+    return partitions;
+  }
+
+  private void splitTable(String tableId, long rowsPerPartition, Map<String, ExecutionContext> partitions) {
+    ExecutionContext partition = null;
+    String previousUUID = null;
+    long position = 0;
+
+    try (IterableIndexResult rows = ViewerFactory.getSolrManager().findAllRows(databaseUUID,
+      FilterUtils.filterByTable(new Filter(), tableId), null, Collections.singletonList(ViewerConstants.INDEX_ID))) {
+      for (ViewerRow row : rows) {
+        if (position % rowsPerPartition == 0) {
+          if (partition != null) {
+            partition.putString(TO_UUID_KEY, previousUUID);
+          }
+          partition = new ExecutionContext();
+          partition.putString(TABLE_ID_KEY, tableId);
+          // the first partition also takes rows before the first uuid seen
+          if (position > 0) {
+            partition.putString(FROM_UUID_KEY, row.getUuid());
+          }
+          partitions.put(PARTITION_PREFIX + partitions.size(), partition);
+        }
+        previousUUID = row.getUuid();
+        position++;
+      }
+    } catch (IOException e) {
+      LOGGER.debug("Could not close the search for the partitions of {}/{}", databaseUUID, tableId, e);
+    }
+    // the last partition has no upper limit
+  }
+}
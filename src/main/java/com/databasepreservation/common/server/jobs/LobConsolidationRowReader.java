@@ -0,0 +1,110 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.jobs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+
+import com.databasepreservation.common.client.ViewerConstants;
+import com.databasepreservation.common.client.index.filter.Filter;
+import com.databasepreservation.common.client.index.filter.StringRangeFilterParameter;
+import com.databasepreservation.common.client.models.status.collection.ColumnStatus;
+import com.databasepreservation.common.client.models.status.collection.TableStatus;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.client.tools.FilterUtils;
+import com.databasepreservation.common.server.ViewerFactory;
+import com.databasepreservation.common.server.index.utils.IterableIndexResult;
+
+/**
+ * Reads the binary cells of the rows of a table with uuids in a range (both
+ * ends included, null for no limit), in uuid order. The uuid of the last row
+ * read is saved in the step execution context at each chunk, so that a
+ * restarted step continues after it.
+ */
+public class LobConsolidationRowReader extends ItemStreamSupport implements ItemStreamReader<ViewerRow> {
+  private static final String LAST_UUID_KEY = "lastUUID";
+
+  private final String databaseUUID;
+  private final TableStatus table;
+  private final String fromUUID;
+  private final String toUUID;
+
+  private IterableIndexResult rows;
+  private Iterator<ViewerRow> iterator;
+  private String lastUUID;
+
+  public LobConsolidationRowReader(String databaseUUID, TableStatus table, String fromUUID, String toUUID) {
+    this.databaseUUID = databaseUUID;
+    this.table = table;
+    this.fromUUID = fromUUID;
+    this.toUUID = toUUID;
+    setName(LobConsolidationRowReader.class.getSimpleName());
+  }
+
+  @Override
+  public void open(ExecutionContext executionContext) throws ItemStreamException {
+    super.open(executionContext);
+    lastUUID = executionContext.getString(getExecutionContextKey(LAST_UUID_KEY), null);
+
+    Filter filter = FilterUtils.filterByTable(new Filter(), table.getId());
+    String from = lastUUID != null ? lastUUID : fromUUID;
+    if (from != null || toUUID != null) {
+      filter.add(new StringRangeFilterParameter(ViewerConstants.INDEX_ID, from, toUUID));
+    }
+
+    List<String> fieldsToReturn = new ArrayList<>();
+    fieldsToReturn.add(ViewerConstants.INDEX_ID);
+    for (ColumnStatus column : LobConsolidationPartitioner.getBinaryColumns(table)) {
+      fieldsToReturn.add(column.getId());
+    }
+
+    rows = ViewerFactory.getSolrManager().findAllRows(databaseUUID, filter, null, fieldsToReturn);
+    iterator = rows.iterator();
+  }
+
+  @Override
+  public ViewerRow read() {
+    while (iterator.hasNext()) {
+      ViewerRow row = iterator.next();
+      // the range includes the last row read before a restart
+      if (!row.getUuid().equals(lastUUID)) {
+        lastUUID = row.getUuid();
+        return row;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void update(ExecutionContext executionContext) throws ItemStreamException {
+    super.update(executionContext);
+    if (lastUUID != null) {
+      executionContext.putString(getExecutionContextKey(LAST_UUID_KEY), lastUUID);
+    }
+  }
+
+  @Override
+  public void close() throws ItemStreamException {
+    super.close();
+    if (rows != null) {
+      try {
+        rows.close();
+      } catch (IOException e) {
+        throw new ItemStreamException(e);
+      }
+      rows = null;
+    }
+  }
+}
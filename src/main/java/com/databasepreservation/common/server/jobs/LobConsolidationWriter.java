@@ -0,0 +1,128 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.server.jobs;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.batch.item.ItemWriter;
+
+import com.databasepreservation.common.client.models.status.collection.ColumnStatus;
+import com.databasepreservation.common.client.models.status.collection.TableStatus;
+import com.databasepreservation.common.client.models.structure.ViewerCell;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.server.ViewerConfiguration;
+import com.databasepreservation.common.server.ViewerFactory;
+import com.databasepreservation.common.utils.ConsolidatedLobStore;
+import com.databasepreservation.common.utils.LobManagerUtils;
+import com.databasepreservation.common.utils.SiardArchiveCache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Copies the LOBs of a chunk of rows, from the SIARD or from the external
+ * files, to the {@link ConsolidatedLobStore}. LOBs already consolidated (by a
+ * previous execution, or extracted at ingest) are skipped, so that the job
+ * can be run again after a failure.
+ */
+public class LobConsolidationWriter implements ItemWriter<ViewerRow> {
+  private static final Counter STORED = Metrics.counter("dbvtk.lobs.consolidated", "result", "stored");
+  private static final Counter DEDUPLICATED = Metrics.counter("dbvtk.lobs.consolidated", "result", "deduplicated");
+  private static final Counter SKIPPED = Metrics.counter("dbvtk.lobs.consolidated", "result", "skipped");
+
+  private final String databaseUUID;
+  private final String siardPath;
+  private final TableStatus table;
+  private final List<ColumnStatus> binaryColumns;
+  private final ConsolidatedLobStore store;
+
+  public LobConsolidationWriter(String databaseUUID, String siardPath, TableStatus table, ConsolidatedLobStore store) {
+    this.databaseUUID = databaseUUID;
+    this.siardPath = siardPath;
+    this.table = table;
+    this.binaryColumns = LobConsolidationPartitioner.getBinaryColumns(table);
+    this.store = store;
+  }
+
+  @Override
+  public void write(List<? extends ViewerRow> rows) throws IOException {
+    SiardArchiveCache.Lease siardArchive = null;
+    try {
+      for (ViewerRow row : rows) {
+        for (ColumnStatus column : binaryColumns) {
+          ViewerCell cell = row.getCells().get(column.getId());
+          if (cell == null || cell.getValue() == null) {
+            continue;
+          }
+
+          Path consolidatedPath = LobManagerUtils.getConsolidatedPath(ViewerFactory.getViewerConfiguration(),
+            databaseUUID, table.getId(), column.getColumnIndex(), row.getUuid());
+          if (Files.exists(consolidatedPath)) {
+            SKIPPED.increment();
+            continue;
+          }
+
+          if (siardArchive == null && isInsideSiard(column, row)) {
+            if (StringUtils.isBlank(siardPath)) {
+              throw new FileNotFoundException("The SIARD of database " + databaseUUID + " is not available");
+            }
+            siardArchive = SiardArchiveCache.acquire(siardPath);
+          }
+
+          try (InputStream in = openLob(column, row, cell, siardArchive)) {
+            if (store.consolidate(in, consolidatedPath)) {
+              STORED.increment();
+            } else {
+              DEDUPLICATED.increment();
+            }
+          }
+        }
+      }
+    } finally {
+      if (siardArchive != null) {
+        siardArchive.close();
+      }
+    }
+  }
+
+  private boolean isInsideSiard(ColumnStatus column, ViewerRow row) {
+    int columnIndex = column.getColumnIndex();
+    // stored LOBs are in the LOB folder and embedded ones in the cell itself
+    return !column.isExternalLob() && !LobManagerUtils.isLobStored(table, row, columnIndex)
+      && !LobManagerUtils.isLobEmbedded(table, row, columnIndex);
+  }
+
+  private InputStream openLob(ColumnStatus column, ViewerRow row, ViewerCell cell,
+    SiardArchiveCache.Lease siardArchive) throws IOException {
+    int columnIndex = column.getColumnIndex();
+    if (column.isExternalLob()) {
+      return Files.newInputStream(ViewerConfiguration.getInstance().getSIARDFilesPath().resolve(cell.getValue()));
+    } else if (LobManagerUtils.isLobStored(table, row, columnIndex)) {
+      // extracted at ingest to the consolidated path, which is missing
+      throw new FileNotFoundException(LobManagerUtils
+        .getStoredLobPath(ViewerFactory.getViewerConfiguration(), cell.getValue()).toString());
+    } else if (LobManagerUtils.isLobEmbedded(table, row, columnIndex)) {
+      return new ByteArrayInputStream(LobManagerUtils.decodeEmbeddedLob(cell.getValue()));
+    } else {
+      String entryName = LobManagerUtils.getZipFilePath(table, columnIndex, row);
+      ZipArchiveEntry entry = siardArchive.getZipFile().getEntry(entryName);
+      if (entry == null) {
+        throw new FileNotFoundException(siardPath + "!" + entryName);
+      }
+      return siardArchive.getZipFile().getInputStream(entry);
+    }
+  }
+}
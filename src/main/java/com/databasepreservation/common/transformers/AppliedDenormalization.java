@@ -0,0 +1,71 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.transformers;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.databasepreservation.common.client.models.status.denormalization.DenormalizeConfiguration;
+import com.databasepreservation.common.client.models.status.denormalization.RelatedTablesConfiguration;
+import com.databasepreservation.common.exceptions.ViewerException;
+import com.databasepreservation.common.server.index.utils.JsonTransformer;
+import com.google.common.hash.Hashing;
+
+/**
+ * Record of the last denormalization of a table that completed: for each
+ * related table directly under the table (a branch), a fingerprint of its
+ * configuration and the nested uuids of the branch (its own and those of its
+ * inner related tables). Saved next to the denormalization configuration.
+ */
+public class AppliedDenormalization implements Serializable {
+  private Map<String, String> fingerprints = new HashMap<>();
+  private Map<String, List<String>> nestedUUIDs = new HashMap<>();
+
+  public AppliedDenormalization() {
+  }
+
+  public AppliedDenormalization(DenormalizeConfiguration configuration) throws ViewerException {
+    for (RelatedTablesConfiguration branch : configuration.getRelatedTables()) {
+      fingerprints.put(branch.getUuid(), getFingerprint(branch));
+      nestedUUIDs.put(branch.getUuid(), getNestedUUIDs(branch));
+    }
+  }
+
+  public Map<String, String> getFingerprints() {
+    return fingerprints;
+  }
+
+  public void setFingerprints(Map<String, String> fingerprints) {
+    this.fingerprints = fingerprints;
+  }
+
+  public Map<String, List<String>> getNestedUUIDs() {
+    return nestedUUIDs;
+  }
+
+  public void setNestedUUIDs(Map<String, List<String>> nestedUUIDs) {
+    this.nestedUUIDs = nestedUUIDs;
+  }
+
+  public static String getFingerprint(RelatedTablesConfiguration branch) throws ViewerException {
+    return Hashing.sha256().hashString(JsonTransformer.getJsonFromObject(branch), StandardCharsets.UTF_8).toString();
+  }
+
+  public static List<String> getNestedUUIDs(RelatedTablesConfiguration branch) {
+    List<String> uuids = new ArrayList<>();
+    uuids.add(branch.getUuid());
+    for (RelatedTablesConfiguration innerRelatedTable : branch.getRelatedTables()) {
+      uuids.addAll(getNestedUUIDs(innerRelatedTable));
+    }
+    return uuids;
+  }
+}
@@ -7,24 +7,34 @@
  */
 package com.databasepreservation.common.transformers;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.solr.common.SolrInputDocument;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.databasepreservation.common.client.ViewerConstants;
 import com.databasepreservation.common.client.index.filter.AndFiltersParameters;
 import com.databasepreservation.common.client.index.filter.Filter;
 import com.databasepreservation.common.client.index.filter.FilterParameter;
 import com.databasepreservation.common.client.index.filter.SimpleFilterParameter;
+import com.databasepreservation.common.client.models.status.collection.CollectionStatus;
+import com.databasepreservation.common.client.models.status.collection.ColumnStatus;
 import com.databasepreservation.common.client.models.status.collection.NestedColumnStatus;
+import com.databasepreservation.common.client.models.status.collection.TableStatus;
+import com.databasepreservation.common.client.models.status.database.DatabaseStatus;
 import com.databasepreservation.common.client.models.status.denormalization.DenormalizeConfiguration;
 import com.databasepreservation.common.client.models.status.denormalization.ReferencesConfiguration;
 import com.databasepreservation.common.client.models.status.denormalization.RelatedColumnConfiguration;
@@ -34,6 +44,7 @@ import com.databasepreservation.common.client.models.structure.ViewerColumn;
 import com.databasepreservation.common.client.models.structure.ViewerDatabase;
 import com.databasepreservation.common.client.models.structure.ViewerRow;
 import com.databasepreservation.common.client.tools.FilterUtils;
+import com.databasepreservation.common.exceptions.ViewerException;
 import com.databasepreservation.common.server.ViewerConfiguration;
 import com.databasepreservation.common.server.ViewerFactory;
 import com.databasepreservation.common.server.index.DatabaseRowsSolrManager;
@@ -45,41 +56,209 @@ import com.databasepreservation.model.exception.ModuleException;
  * @author Gabriel Barros <gbarros@keep.pt>
  */
 public class DenormalizeTransformer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DenormalizeTransformer.class);
+
   private final DatabaseRowsSolrManager solrManager;
   private final DenormalizeConfiguration denormalizeConfiguration;
   private final ViewerDatabase database;
   private final String databaseUUID;
   private final String jobUUID;
   private final String tableUUID;
-
+  private final Map<String, RelatedRowsIndex> relatedRowsIndexes = new HashMap<>();
+  private final long maxIndexedBytes;
+  private final long rowsToProcess;
+  private volatile boolean relatedRowsIndexed = false;
+  private long indexedBytes = 0;
+  private Set<String> branchesToCompute = null;
+
+  /**
+   * Loads the denormalization configuration of the table. The work itself is
+   * done by {@link #prepareNestedDocuments()}, then
+   * {@link #createRowUpdate(ViewerRow)} for each row returned by
+   * {@link #getRootRowsFilter()} and finally {@link #updateCollectionStatus()}
+   * and {@link #saveAppliedDenormalization()}, so that it can be split in steps
+   * of a batch job.
+   */
   public DenormalizeTransformer(String databaseUUID, String tableUUID, String jobUUID) throws ModuleException {
     this.databaseUUID = databaseUUID;
     this.jobUUID = jobUUID;
     this.tableUUID = tableUUID;
     solrManager = ViewerFactory.getSolrManager();
+    maxIndexedBytes = ViewerFactory.getViewerConfiguration().getViewerConfigurationAsInt(268435456,
+      ViewerConfiguration.PROPERTY_DENORMALIZE_JOIN_MAX_INDEXED_BYTES);
     try {
       database = solrManager.retrieve(ViewerDatabase.class, this.databaseUUID);
       denormalizeConfiguration = getConfiguration(
         Paths.get(ViewerConstants.DENORMALIZATION_STATUS_PREFIX + tableUUID + ViewerConstants.JSON_EXTENSION),
         DenormalizeConfiguration.class);
-      cleanNestedDocuments();
-      queryOverRootTable();
-      updateCollectionStatus();
-    } catch (NotFoundException | GenericException e) {
+      rowsToProcess = solrManager.countRows(databaseUUID, getRootRowsFilter());
+    } catch (NotFoundException | GenericException | RequestNotValidException e) {
       throw new ModuleException().withMessage("Cannot retrieved database from solr");
     }
   }
 
-  private void cleanNestedDocuments() {
-    Filter filter = FilterUtils.filterByTable(new Filter(), denormalizeConfiguration.getTableID());
+  /**
+   * Builds the nested documents of the given configuration without reading
+   * the configuration files nor the database, used by the tests
+   */
+  DenormalizeTransformer(DatabaseRowsSolrManager solrManager, DenormalizeConfiguration denormalizeConfiguration,
+    String databaseUUID, long maxIndexedBytes) {
+    this.solrManager = solrManager;
+    this.denormalizeConfiguration = denormalizeConfiguration;
+    this.databaseUUID = databaseUUID;
+    this.maxIndexedBytes = maxIndexedBytes;
+    this.tableUUID = denormalizeConfiguration.getTableUUID();
+    this.jobUUID = null;
+    this.database = null;
+    this.rowsToProcess = 0;
+  }
+
+  public String getDatabaseUUID() {
+    return databaseUUID;
+  }
+
+  public String getJobUUID() {
+    return jobUUID;
+  }
+
+  public long getRowsToProcess() {
+    return rowsToProcess;
+  }
+
+  /**
+   * @return the uuids of the related tables directly under the table whose
+   *         nested documents are computed (including the ones that were
+   *         removed, whose search tokens must still be rebuilt), or null if all
+   *         of them are
+   */
+  public Set<String> getBranchesToCompute() {
+    return branchesToCompute;
+  }
+
+  /**
+   * Restores the branches found by {@link #prepareNestedDocuments()} when a
+   * job is restarted
+   */
+  public void setBranchesToCompute(Set<String> branchesToCompute) {
+    this.branchesToCompute = branchesToCompute;
+  }
 
-    IterableIndexResult allRows = solrManager.findAllRows(databaseUUID, filter, null, new ArrayList<>());
-    for (ViewerRow row : allRows) {
-      solrManager.deleteNestedDocuments(databaseUUID, row.getUuid());
+  /**
+   * Compares the configuration with the one of the last denormalization that
+   * completed and removes only the nested documents of the related tables
+   * (branches) that were changed or removed since, leaving the others in place.
+   * Without such a record all nested documents are removed with
+   * {@link #cleanNestedDocuments()}. The record is removed until the end of the
+   * job, so that a job that does not complete is fully redone the next time.
+   *
+   * @return the uuids of the branches to compute, empty if nothing changed, or
+   *         null if all of them must be computed
+   */
+  public Set<String> prepareNestedDocuments() throws GenericException {
+    AppliedDenormalization applied = null;
+    Path appliedPath = getAppliedDenormalizationPath();
+    if (Files.exists(appliedPath)) {
+      try {
+        applied = JsonTransformer.readObjectFromFile(appliedPath, AppliedDenormalization.class);
+      } catch (ViewerException e) {
+        LOGGER.warn("Could not read the last applied denormalization of {}/{}", databaseUUID, tableUUID, e);
+      }
+      try {
+        Files.delete(appliedPath);
+      } catch (IOException e) {
+        throw new GenericException("Could not remove the last applied denormalization " + appliedPath, e);
+      }
     }
 
-    for (RelatedTablesConfiguration relatedTable : denormalizeConfiguration.getRelatedTables()) {
-      solrManager.deleteNestedDocuments(databaseUUID, relatedTable.getUuid());
+    if (applied == null) {
+      cleanNestedDocuments();
+      branchesToCompute = null;
+      return null;
+    }
+
+    Set<String> branches = new HashSet<>();
+    Set<String> nestedUUIDs = new HashSet<>();
+    try {
+      for (RelatedTablesConfiguration branch : denormalizeConfiguration.getRelatedTables()) {
+        if (!AppliedDenormalization.getFingerprint(branch).equals(applied.getFingerprints().get(branch.getUuid()))) {
+          branches.add(branch.getUuid());
+          nestedUUIDs.addAll(AppliedDenormalization.getNestedUUIDs(branch));
+        }
+      }
+    } catch (ViewerException e) {
+      throw new GenericException("Could not compare the denormalization configuration of " + tableUUID, e);
+    }
+
+    Set<String> currentBranches = new HashSet<>();
+    for (RelatedTablesConfiguration branch : denormalizeConfiguration.getRelatedTables()) {
+      currentBranches.add(branch.getUuid());
+    }
+    for (Map.Entry<String, List<String>> appliedBranch : applied.getNestedUUIDs().entrySet()) {
+      if (branches.contains(appliedBranch.getKey()) || !currentBranches.contains(appliedBranch.getKey())) {
+        nestedUUIDs.addAll(appliedBranch.getValue());
+        // a removed branch has nothing to compute, but the rows are still
+        // updated so that the search tokens of its documents are removed
+        branches.add(appliedBranch.getKey());
+      }
+    }
+
+    long deletedDocuments = solrManager.deleteNestedDocumentsByUUID(databaseUUID, nestedUUIDs);
+    LOGGER.info("Denormalization of {}/{} changed in {} related tables: {} nested documents deleted", databaseUUID,
+      tableUUID, branches.size(), deletedDocuments);
+    branchesToCompute = branches;
+    return branches;
+  }
+
+  /**
+   * Records the configuration as the last one applied, to be compared with by
+   * the next {@link #prepareNestedDocuments()}
+   */
+  public void saveAppliedDenormalization() throws ViewerException {
+    JsonTransformer.writeObjectToFile(new AppliedDenormalization(denormalizeConfiguration),
+      getAppliedDenormalizationPath());
+  }
+
+  private Path getAppliedDenormalizationPath() {
+    return ViewerConfiguration.getInstance().getDatabasesPath().resolve(databaseUUID)
+      .resolve(ViewerConstants.DENORMALIZATION_STATUS_PREFIX + tableUUID
+        + ViewerConstants.DENORMALIZATION_APPLIED_SUFFIX + ViewerConstants.JSON_EXTENSION);
+  }
+
+  /**
+   * Removes the nested documents created by the current configuration and by
+   * the previous one (the nested columns still in the collection status)
+   *
+   * @return the number of documents deleted or updated
+   */
+  public long cleanNestedDocuments() throws GenericException {
+    Set<String> nestedUUIDs = new HashSet<>();
+    addNestedUUIDs(denormalizeConfiguration.getRelatedTables(), nestedUUIDs);
+
+    final DatabaseStatus databaseStatus = ViewerFactory.getConfigurationManager().getDatabaseStatus(databaseUUID);
+    if (!databaseStatus.getCollections().isEmpty()) {
+      CollectionStatus collectionStatus = ViewerFactory.getConfigurationManager()
+        .getConfigurationCollection(databaseUUID, databaseStatus.getCollections().get(0), true);
+      TableStatus tableStatus = collectionStatus.getTableStatus(tableUUID);
+      if (tableStatus != null) {
+        for (ColumnStatus column : tableStatus.getColumns()) {
+          if (column.getNestedColumns() != null) {
+            nestedUUIDs.add(column.getId());
+          }
+        }
+      }
+    }
+
+    long affectedDocuments = solrManager.deleteNestedDocuments(databaseUUID, denormalizeConfiguration.getTableID(),
+      nestedUUIDs);
+    LOGGER.info("Removed nested documents of {}/{}: {} documents deleted or updated", databaseUUID, tableUUID,
+      affectedDocuments);
+    return affectedDocuments;
+  }
+
+  private void addNestedUUIDs(List<RelatedTablesConfiguration> relatedTables, Set<String> nestedUUIDs) {
+    for (RelatedTablesConfiguration relatedTable : relatedTables) {
+      nestedUUIDs.add(relatedTable.getUuid());
+      addNestedUUIDs(relatedTable.getRelatedTables(), nestedUUIDs);
     }
   }
 
@@ -93,7 +272,7 @@ public class DenormalizeTransformer {
     }
   }
 
-  private void updateCollectionStatus() throws GenericException {
+  public void updateCollectionStatus() throws GenericException {
     ViewerFactory.getConfigurationManager().removeDenormalizationColumns(databaseUUID,
       denormalizeConfiguration.getTableUUID());
     for (RelatedTablesConfiguration relatedTable : denormalizeConfiguration.getRelatedTables()) {
@@ -159,45 +338,143 @@ public class DenormalizeTransformer {
     return list.toString().replace("[", "").replace("]", "");
   }
 
-  private void queryOverRootTable() throws ModuleException {
-    String tableID = denormalizeConfiguration.getTableID();
-    Filter filter = FilterUtils.filterByTable(new Filter(), tableID);
+  public Filter getRootRowsFilter() {
+    return FilterUtils.filterByTable(new Filter(), denormalizeConfiguration.getTableID());
+  }
 
-    List<RelatedTablesConfiguration> relatedTables = denormalizeConfiguration.getRelatedTables();
+  public List<String> getRootFieldsToReturn() {
     List<String> fieldsToReturn = new ArrayList<>();
     fieldsToReturn.add(ViewerConstants.INDEX_ID);
 
-    for (RelatedTablesConfiguration relatedTable : relatedTables) {
+    for (RelatedTablesConfiguration relatedTable : denormalizeConfiguration.getRelatedTables()) {
       for (ReferencesConfiguration reference : relatedTable.getReferences()) {
         fieldsToReturn.add(reference.getReferencedTable().getSolrName());
       }
     }
+    return fieldsToReturn;
+  }
 
-    IterableIndexResult sourceRows = solrManager.findAllRows(databaseUUID, filter, null, fieldsToReturn);
-    long processedRows = 0;
-    long rowToProcess = sourceRows.getTotalCount();
+  /**
+   * Safe to call from several threads, the related rows indexes are built by
+   * the first call.
+   *
+   * @return the nested documents of a row of the root table, fetched with
+   *         {@link #getRootFieldsToReturn()}
+   */
+  public List<SolrInputDocument> createNestedDocuments(ViewerRow row) {
+    indexRelatedRows();
+
+    List<SolrInputDocument> nestedDocuments = new ArrayList<>();
+    for (RelatedTablesConfiguration relatedTable : denormalizeConfiguration.getRelatedTables()) {
+      queryOverRelatedTables(row, relatedTable, nestedDocuments);
+    }
+    return nestedDocuments;
+  }
+
+  /**
+   * Safe to call from several threads, like
+   * {@link #createNestedDocuments(ViewerRow)}.
+   *
+   * @return the partial update that adds the nested documents of the branches
+   *         to compute to a row of the root table. The search tokens of the
+   *         row are rebuilt from all its nested documents, as they are not
+   *         stored, even if the branches to compute have none for the row (the
+   *         tokens of their deleted documents must go). Such an update of a row
+   *         without nested documents is dropped by
+   *         {@link DatabaseRowsSolrManager#addDatabaseFields(String, List)} if
+   *         the row had no tokens either. Null if all branches are computed
+   *         and the row has no nested documents.
+   */
+  public SolrInputDocument createRowUpdate(ViewerRow row) {
+    if (branchesToCompute == null) {
+      List<SolrInputDocument> nestedDocuments = createNestedDocuments(row);
+      return nestedDocuments.isEmpty() ? null : solrManager.createDatabaseFieldDocument(row.getUuid(), nestedDocuments);
+    }
 
-    solrManager.editBatchJob(jobUUID, rowToProcess, processedRows);
-    for (ViewerRow row : sourceRows) {
-      List<SolrInputDocument> nestedDocuments = new ArrayList<>();
-      for (RelatedTablesConfiguration relatedTable : denormalizeConfiguration.getRelatedTables()) {
+    indexRelatedRows();
+    List<SolrInputDocument> nestedDocuments = new ArrayList<>();
+    for (RelatedTablesConfiguration relatedTable : denormalizeConfiguration.getRelatedTables()) {
+      if (branchesToCompute.contains(relatedTable.getUuid())) {
         queryOverRelatedTables(row, relatedTable, nestedDocuments);
       }
+    }
+    List<SolrInputDocument> searchDocuments = new ArrayList<>(nestedDocuments);
+    for (RelatedTablesConfiguration relatedTable : denormalizeConfiguration.getRelatedTables()) {
+      if (!branchesToCompute.contains(relatedTable.getUuid())) {
+        queryOverRelatedTables(row, relatedTable, searchDocuments);
+      }
+    }
+    return solrManager.createDatabaseFieldDocument(row.getUuid(), nestedDocuments, searchDocuments);
+  }
 
-      if (!nestedDocuments.isEmpty()) {
-        solrManager.addDatabaseField(databaseUUID, row.getUuid(), nestedDocuments);
+  private void indexRelatedRows() {
+    if (!relatedRowsIndexed) {
+      synchronized (this) {
+        if (!relatedRowsIndexed) {
+          buildRelatedRowsIndexes(denormalizeConfiguration.getRelatedTables());
+          relatedRowsIndexed = true;
+        }
       }
-      solrManager.editBatchJob(jobUUID, rowToProcess, ++processedRows);
     }
   }
 
   private void queryOverRelatedTables(ViewerRow row, RelatedTablesConfiguration relatedTable,
     List<SolrInputDocument> nestedDocuments) {
-    String tableId = relatedTable.getTableID();
+    List<String> referencedSolrNames = new ArrayList<>();
+    for (ReferencesConfiguration reference : relatedTable.getReferences()) {
+      referencedSolrNames.add(reference.getReferencedTable().getSolrName());
+    }
+
+    List<String> referencedValues = RelatedRowsIndex.getKey(row.getCells(), referencedSolrNames);
+    if (referencedValues == null)
+      return;
+
+    List<String> columnsToDisplay = new ArrayList<>();
+    for (RelatedColumnConfiguration relatedColumnConfiguration : relatedTable.getColumnsIncluded()) {
+      columnsToDisplay.add(relatedColumnConfiguration.getSolrName());
+    }
+
+    RelatedRowsIndex index = relatedRowsIndexes.get(relatedTable.getUuid());
+    if (index != null) {
+      addNestedDocuments(row, relatedTable, index.get(referencedValues), columnsToDisplay, nestedDocuments);
+      return;
+    }
+
+    try (IterableIndexResult relatedRows = findRelatedRows(relatedTable, referencedValues)) {
+      addNestedDocuments(row, relatedTable, relatedRows, columnsToDisplay, nestedDocuments);
+    } catch (IOException e) {
+      LOGGER.debug("Could not close the search for the rows of related table {}", relatedTable.getTableID(), e);
+    }
+  }
+
+  private void addNestedDocuments(ViewerRow row, RelatedTablesConfiguration relatedTable,
+    Iterable<ViewerRow> relatedRows, List<String> columnsToDisplay, List<SolrInputDocument> nestedDocuments) {
+    for (ViewerRow nestedRow : relatedRows) {
+      for (RelatedTablesConfiguration innerRelatedTable : relatedTable.getRelatedTables()) {
+        queryOverRelatedTables(nestedRow, innerRelatedTable, nestedDocuments);
+      }
+      if (!columnsToDisplay.isEmpty()) {
+        createdNestedDocument(nestedRow, row.getUuid(), nestedDocuments, columnsToDisplay);
+      }
+    }
+  }
+
+  private IterableIndexResult findRelatedRows(RelatedTablesConfiguration relatedTable,
+    List<String> referencedValues) {
     Filter resultingFilter = new Filter();
     List<FilterParameter> filterParameterList = new ArrayList<>();
-    List<String> fieldsToReturn = new ArrayList<>();
+    filterParameterList.add(new SimpleFilterParameter(ViewerConstants.SOLR_ROWS_TABLE_ID, relatedTable.getTableID()));
+    for (int i = 0; i < relatedTable.getReferences().size(); i++) {
+      String sourceSolrName = relatedTable.getReferences().get(i).getSourceTable().getSolrName();
+      filterParameterList.add(new SimpleFilterParameter(sourceSolrName, referencedValues.get(i)));
+    }
+    resultingFilter.add(new AndFiltersParameters(filterParameterList));
 
+    return solrManager.findAllRows(databaseUUID, resultingFilter, null, getRelatedFieldsToReturn(relatedTable));
+  }
+
+  private List<String> getRelatedFieldsToReturn(RelatedTablesConfiguration relatedTable) {
+    List<String> fieldsToReturn = new ArrayList<>();
     fieldsToReturn.add(ViewerConstants.INDEX_ID);
     fieldsToReturn.add(ViewerConstants.SOLR_ROWS_TABLE_ID);
     fieldsToReturn.add(String.format("%s:\"%s\"", ViewerConstants.SOLR_ROWS_NESTED_UUID, relatedTable.getUuid()));
@@ -206,52 +483,64 @@ public class DenormalizeTransformer {
     fieldsToReturn
       .add(String.format("%s:%s", ViewerConstants.SOLR_ROWS_NESTED_TABLE_ID, ViewerConstants.SOLR_ROWS_TABLE_ID));
 
-    filterParameterList.add(new SimpleFilterParameter(ViewerConstants.SOLR_ROWS_TABLE_ID, tableId));
-    for (ReferencesConfiguration reference : relatedTable.getReferences()) {
-      String sourceSolrName = reference.getSourceTable().getSolrName();
-      String referencedSolrName = reference.getReferencedTable().getSolrName();
-      String value = null;
-      Map<String, ViewerCell> cells = row.getCells();
-      for (Map.Entry<String, ViewerCell> entry : cells.entrySet()) {
-        if (entry.getKey().equals(referencedSolrName)) {
-          value = entry.getValue().getValue();
-          break;
-        }
-      }
-      if (value == null)
-        return;
-      filterParameterList.add(new SimpleFilterParameter(sourceSolrName, value));
-    }
-
-    resultingFilter.add(new AndFiltersParameters(filterParameterList));
-
     for (RelatedTablesConfiguration innerRelatedTable : relatedTable.getRelatedTables()) {
       for (ReferencesConfiguration reference : innerRelatedTable.getReferences()) {
         fieldsToReturn.add(reference.getReferencedTable().getSolrName());
       }
     }
 
-    List<String> auxColumns = new ArrayList<>();
     for (ReferencesConfiguration reference : relatedTable.getReferences()) {
-      auxColumns.add(reference.getReferencedTable().getSolrName());
+      fieldsToReturn.add(reference.getReferencedTable().getSolrName());
+      // the index groups the rows by their source columns
+      fieldsToReturn.add(reference.getSourceTable().getSolrName());
     }
 
-    List<String> columnsToDisplay = new ArrayList<>();
     for (RelatedColumnConfiguration relatedColumnConfiguration : relatedTable.getColumnsIncluded()) {
-      columnsToDisplay.add(relatedColumnConfiguration.getSolrName());
+      fieldsToReturn.add(relatedColumnConfiguration.getSolrName());
     }
+    return fieldsToReturn;
+  }
 
-    fieldsToReturn.addAll(auxColumns);
-    fieldsToReturn.addAll(columnsToDisplay);
-
-    IterableIndexResult nestedRows = solrManager.findAllRows(databaseUUID, resultingFilter, null, fieldsToReturn);
-    for (ViewerRow nestedRow : nestedRows) {
-      for (RelatedTablesConfiguration innerRelatedTable : relatedTable.getRelatedTables()) {
-        queryOverRelatedTables(nestedRow, innerRelatedTable, nestedDocuments);
+  /**
+   * Reads each related table once and indexes its rows by the source columns
+   * of its references, while the estimated memory taken by all indexes stays
+   * under the configured limit. Only the fields used by the branch are read.
+   * Related tables that are not indexed, including the one that reached the
+   * limit, are queried once per parent row.
+   */
+  private void buildRelatedRowsIndexes(List<RelatedTablesConfiguration> relatedTables) {
+    for (RelatedTablesConfiguration relatedTable : relatedTables) {
+      Filter filter = FilterUtils.filterByTable(new Filter(), relatedTable.getTableID());
+      if (!RelatedRowsIndex.isSupported(relatedTable)) {
+        LOGGER.debug("Related table {} is not joined by exact values, querying it per row", relatedTable.getTableID());
+        buildRelatedRowsIndexes(relatedTable.getRelatedTables());
+        continue;
       }
-      if (!columnsToDisplay.isEmpty()) {
-        createdNestedDocument(nestedRow, row.getUuid(), nestedDocuments, columnsToDisplay);
+      if (indexedBytes < maxIndexedBytes) {
+        indexRelatedTable(relatedTable, filter);
+      } else {
+        LOGGER.debug("No memory left to index related table {}, querying it per row", relatedTable.getTableID());
+      }
+      buildRelatedRowsIndexes(relatedTable.getRelatedTables());
+    }
+  }
+
+  private void indexRelatedTable(RelatedTablesConfiguration relatedTable, Filter filter) {
+    RelatedRowsIndex index = new RelatedRowsIndex(relatedTable);
+    try (IterableIndexResult relatedRows = solrManager.findAllRows(databaseUUID, filter, null,
+      getRelatedFieldsToReturn(relatedTable))) {
+      for (ViewerRow relatedRow : relatedRows) {
+        index.add(relatedRow);
+        if (indexedBytes + index.getEstimatedBytes() > maxIndexedBytes) {
+          LOGGER.debug("Related table {} takes more than the {} bytes left to index it, querying it per row",
+            relatedTable.getTableID(), maxIndexedBytes - indexedBytes);
+          return;
+        }
       }
+      relatedRowsIndexes.put(relatedTable.getUuid(), index);
+      indexedBytes += index.getEstimatedBytes();
+    } catch (IOException e) {
+      LOGGER.warn("Could not index related table {}, querying it per row", relatedTable.getTableID(), e);
     }
   }
 
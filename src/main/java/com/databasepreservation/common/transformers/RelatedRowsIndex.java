@@ -0,0 +1,138 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.transformers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.databasepreservation.common.client.ViewerConstants;
+import com.databasepreservation.common.client.models.status.denormalization.ReferencesConfiguration;
+import com.databasepreservation.common.client.models.status.denormalization.RelatedTablesConfiguration;
+import com.databasepreservation.common.client.models.structure.ViewerCell;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
+
+/**
+ * Rows of a related table grouped by the values of the source columns of its
+ * references, so that the rows related to a parent row are found with a hash
+ * lookup instead of a Solr query per parent row. Rows keep the order in which
+ * they were read, which is the order of the per row queries.
+ *
+ * Values are compared as they are stored, so the index is only used when the
+ * query would also match exact values: both columns of every reference have
+ * the same non tokenized type (text columns match case-insensitively and by
+ * token, numbers would match different representations of the same value).
+ *
+ * The memory taken by the rows is estimated as they are added, so that the
+ * caller can give up on indexing a table that does not fit its budget.
+ */
+class RelatedRowsIndex {
+  private static final List<String> EXACT_MATCH_SUFFIXES = Arrays.asList(ViewerConstants.SOLR_DYN_STRING,
+    ViewerConstants.SOLR_DYN_INT, ViewerConstants.SOLR_DYN_LONG, ViewerConstants.SOLR_DYN_BOOLEAN,
+    ViewerConstants.SOLR_DYN_DATE);
+  // rough heap cost of a row and of a cell, besides the characters of their
+  // strings (two bytes each)
+  private static final int ROW_OVERHEAD_BYTES = 200;
+  private static final int CELL_OVERHEAD_BYTES = 80;
+
+  private final List<String> sourceSolrNames = new ArrayList<>();
+  private final Map<List<String>, List<ViewerRow>> rows = new HashMap<>();
+  private long size = 0;
+  private long estimatedBytes = 0;
+
+  RelatedRowsIndex(RelatedTablesConfiguration relatedTable) {
+    for (ReferencesConfiguration reference : relatedTable.getReferences()) {
+      sourceSolrNames.add(reference.getSourceTable().getSolrName());
+    }
+  }
+
+  /**
+   * @return true if the rows of the related table can be found with the index
+   *         (see the class documentation)
+   */
+  static boolean isSupported(RelatedTablesConfiguration relatedTable) {
+    for (ReferencesConfiguration reference : relatedTable.getReferences()) {
+      String suffix = getExactMatchSuffix(reference.getSourceTable().getSolrName());
+      if (suffix == null || !suffix.equals(getExactMatchSuffix(reference.getReferencedTable().getSolrName()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String getExactMatchSuffix(String solrName) {
+    for (String suffix : EXACT_MATCH_SUFFIXES) {
+      if (solrName != null && solrName.endsWith(suffix)) {
+        return suffix;
+      }
+    }
+    return null;
+  }
+
+  void add(ViewerRow row) {
+    List<String> key = getKey(row.getCells(), sourceSolrNames);
+    if (key != null) {
+      rows.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+      size++;
+      estimatedBytes += estimateSize(row);
+    }
+  }
+
+  /**
+   * @return the rows whose source columns have the given values, in the order
+   *         of the references
+   */
+  List<ViewerRow> get(List<String> referencedValues) {
+    return rows.getOrDefault(referencedValues, Collections.emptyList());
+  }
+
+  long size() {
+    return size;
+  }
+
+  /**
+   * @return the estimated memory taken by the rows added so far
+   */
+  long getEstimatedBytes() {
+    return estimatedBytes;
+  }
+
+  static long estimateSize(ViewerRow row) {
+    long chars = length(row.getUuid()) + length(row.getTableId()) + length(row.getNestedUUID())
+      + length(row.getNestedOriginalUUID()) + length(row.getNestedTableId());
+    long bytes = ROW_OVERHEAD_BYTES;
+    for (Map.Entry<String, ViewerCell> cell : row.getCells().entrySet()) {
+      bytes += CELL_OVERHEAD_BYTES;
+      chars += length(cell.getKey()) + length(cell.getValue().getValue());
+    }
+    return bytes + 2 * chars;
+  }
+
+  private static int length(String value) {
+    return value == null ? 0 : value.length();
+  }
+
+  /**
+   * @return the values of the given columns, or null if any of them has no
+   *         value (such rows never match a reference)
+   */
+  static List<String> getKey(Map<String, ViewerCell> cells, List<String> solrNames) {
+    List<String> key = new ArrayList<>(solrNames.size());
+    for (String solrName : solrNames) {
+      ViewerCell cell = cells.get(solrName);
+      if (cell == null || cell.getValue() == null) {
+        return null;
+      }
+      key.add(cell.getValue());
+    }
+    return key;
+  }
+}
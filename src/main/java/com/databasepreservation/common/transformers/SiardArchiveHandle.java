@@ -0,0 +1,84 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.transformers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-only access to a SIARD archive that is kept open for the whole
+ * ingestion, so that its central directory is only read once. It may be
+ * shared by several conversion threads, {@link ZipFile} supports concurrent
+ * reads.
+ */
+public class SiardArchiveHandle implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SiardArchiveHandle.class);
+
+  private final String path;
+  private final ZipFile zipFile;
+
+  private SiardArchiveHandle(String path, ZipFile zipFile) {
+    this.path = path;
+    this.zipFile = zipFile;
+  }
+
+  /**
+   * Opens the SIARD archive. If it cannot be opened (or the path is blank) a
+   * handle without entries is returned, as LOBs may still be embedded or
+   * external to the SIARD.
+   *
+   * @param path
+   *          the SIARD path
+   * @return the archive handle
+   */
+  public static SiardArchiveHandle open(String path) {
+    ZipFile zipFile = null;
+    if (path != null && !path.isEmpty()) {
+      try {
+        zipFile = new ZipFile(path);
+      } catch (IOException e) {
+        LOGGER.warn("Could not open SIARD archive {}", path, e);
+      }
+    }
+    return new SiardArchiveHandle(path, zipFile);
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return the entry with the given path or null if it does not exist
+   */
+  public ZipEntry getEntry(String entryPath) {
+    if (zipFile == null) {
+      return null;
+    }
+    return zipFile.getEntry(entryPath);
+  }
+
+  public InputStream getInputStream(ZipEntry entry) throws IOException {
+    if (zipFile == null) {
+      throw new IOException("SIARD archive " + path + " is not open");
+    }
+    return zipFile.getInputStream(entry);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (zipFile != null) {
+      zipFile.close();
+    }
+  }
+}
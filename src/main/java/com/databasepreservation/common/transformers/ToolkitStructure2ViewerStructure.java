@@ -11,19 +11,21 @@ import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -34,14 +36,15 @@ import org.apache.tika.mime.MimeTypeException;
 import org.apache.tika.mime.MimeTypes;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
-import org.apache.tika.sax.BodyContentHandler;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import com.databasepreservation.common.client.ViewerConstants;
 import com.databasepreservation.common.client.models.status.collection.CollectionStatus;
+import com.databasepreservation.common.client.models.status.collection.ColumnStatus;
 import com.databasepreservation.common.client.models.status.collection.TableStatus;
 import com.databasepreservation.common.client.models.structure.ViewerCandidateKey;
 import com.databasepreservation.common.client.models.structure.ViewerCell;
@@ -68,11 +71,13 @@ import com.databasepreservation.common.client.models.structure.ViewerTypeStructu
 import com.databasepreservation.common.client.models.structure.ViewerUserStructure;
 import com.databasepreservation.common.client.models.structure.ViewerView;
 import com.databasepreservation.common.exceptions.ViewerException;
+import com.databasepreservation.common.io.providers.InputStreamProvider;
 import com.databasepreservation.common.io.providers.PathInputStreamProvider;
 import com.databasepreservation.common.io.providers.TemporaryPathInputStreamProvider;
 import com.databasepreservation.common.server.ViewerFactory;
 import com.databasepreservation.common.server.index.utils.SolrUtils;
 import com.databasepreservation.common.utils.LobManagerUtils;
+import com.databasepreservation.common.utils.ViewerAbstractConfiguration;
 import com.databasepreservation.common.utils.ViewerUtils;
 import com.databasepreservation.model.data.BinaryCell;
 import com.databasepreservation.model.data.Cell;
@@ -123,7 +128,7 @@ public class ToolkitStructure2ViewerStructure {
   private static final Pattern rowIndexPattern = Pattern.compile("^(.*\\.)?(\\d+)$");
 
   private static final Tika tika = new Tika();
-  private static String currentTable;
+  private static final int MIME_TYPE_DETECTION_PREFIX_SIZE = 1024 * 1024;
 
   /**
    * Private empty constructor
@@ -745,27 +750,71 @@ public class ToolkitStructure2ViewerStructure {
   }
 
   public static ViewerRow getRow(CollectionStatus collectionConfiguration, ViewerTable table, Row row, long rowIndex,
-    String databasePath) {
-    setCurrentTable(table);
-
+    SiardArchiveHandle siardArchive) {
     ViewerRow result = new ViewerRow();
-    // String rowUUID = SolrUtils.UUIDFromString(table.getUuid() + "." + rowIndex);
-    String rowUUID = String.valueOf(rowIndex);
+    String rowUUID = getRowUUID(rowIndex);
     result.setTableId(table.getId());
     result.setTableUUID(table.getUuid());
     result.setUuid(rowUUID);
-    result.setCells(getCells(collectionConfiguration, table, row, databasePath, result));
+    result.setCells(getCells(collectionConfiguration, table, row, siardArchive, result));
     return result;
   }
 
-  private static void setCurrentTable(ViewerTable table) {
-    if (StringUtils.isAllBlank(currentTable) || (!currentTable.equals(table.getId()))) {
-      currentTable = table.getId();
+  private static String getRowUUID(long rowIndex) {
+    // return SolrUtils.UUIDFromString(table.getUuid() + "." + rowIndex);
+    return String.valueOf(rowIndex);
+  }
+
+  /**
+   * Prepares the binary cells of a row, on the thread that reads the SIARD and
+   * before the row is converted (maybe by another thread). The LOBs stored
+   * inside table.xml are only available in temporary files until the next row
+   * is read, so they are extracted to the LOB folder here. The LOB settings of
+   * a column are set when its first binary cell is seen.
+   *
+   * @param configuredColumns
+   *          indexes of the columns of the table whose LOB settings were
+   *          already set, updated by this method
+   */
+  public static void prepareBinaryCells(CollectionStatus collectionConfiguration, ViewerTable table, Row row,
+    long rowIndex, Set<Integer> configuredColumns) throws ViewerException {
+    List<Cell> toolkitCells = row.getCells();
+    int columns = Math.min(toolkitCells.size(), table.getColumns().size());
+    for (int colIndex = 0; colIndex < columns; colIndex++) {
+      Cell cell = toolkitCells.get(colIndex);
+      if (!(cell instanceof BinaryCell)) {
+        continue;
+      }
+
+      InputStreamProvider provider = ((BinaryCell) cell).getInputStreamProvider();
+      if (configuredColumns.add(colIndex)) {
+        ColumnStatus columnStatus = collectionConfiguration.getTableStatusByTableId(table.getId())
+          .getColumnByIndex(colIndex);
+        columnStatus.setExternalLob(
+          provider instanceof PathInputStreamProvider && !(provider instanceof TemporaryPathInputStreamProvider));
+        collectionConfiguration.updateColumnMimeType(table.getUuid(), colIndex);
+        collectionConfiguration.updateLobFileName(table.getUuid(), colIndex);
+      }
+
+      if (provider instanceof TemporaryPathInputStreamProvider) {
+        Path storedPath = LobManagerUtils.getConsolidatedPath(ViewerFactory.getViewerConfiguration(),
+          collectionConfiguration.getDatabaseUUID(), table.getId(), colIndex, getRowUUID(rowIndex));
+        try {
+          Files.createDirectories(storedPath.getParent());
+          try (InputStream inputStream = provider.createInputStream()) {
+            Files.copy(inputStream, storedPath, StandardCopyOption.REPLACE_EXISTING);
+          }
+        } catch (ModuleException e) {
+          throw new ViewerException(e.getMessage(), e);
+        } catch (IOException e) {
+          throw new ViewerException("Could not extract the LOB to the LOB folder", e);
+        }
+      }
     }
   }
 
   private static Map<String, ViewerCell> getCells(CollectionStatus collectionConfiguration, ViewerTable table, Row row,
-    String databasePath, ViewerRow actualViewerRow) {
+    SiardArchiveHandle siardArchive, ViewerRow actualViewerRow) {
     Map<String, ViewerCell> result = new LinkedHashMap<>();
 
     int colIndex = 0;
@@ -774,7 +823,7 @@ public class ToolkitStructure2ViewerStructure {
       String solrColumnName = viewerColumn.getSolrName();
       try {
         result.put(solrColumnName, getCell(collectionConfiguration, table, toolkitCells.get(colIndex), colIndex++,
-          databasePath, actualViewerRow));
+          siardArchive, actualViewerRow));
       } catch (ViewerException e) {
         LOGGER.error("Problem converting cell, omitted it (as if it were NULL)", e);
       }
@@ -784,7 +833,7 @@ public class ToolkitStructure2ViewerStructure {
   }
 
   private static ViewerCell getCell(CollectionStatus collectionConfiguration, ViewerTable table, Cell cell,
-    int colIndex, String databasePath, ViewerRow actualViewerRow) throws ViewerException {
+    int colIndex, SiardArchiveHandle siardArchive, ViewerRow actualViewerRow) throws ViewerException {
     ViewerCell result = new ViewerCell();
 
     ViewerType columnType = table.getColumns().get(colIndex).getType();
@@ -792,27 +841,21 @@ public class ToolkitStructure2ViewerStructure {
     if (cell instanceof BinaryCell) {
       BinaryCell binaryCell = (BinaryCell) cell;
       if (binaryCell.getInputStreamProvider() instanceof TemporaryPathInputStreamProvider) {
-        // BLOB is internal to the SIARD and is stored inside table.xml
-        TemporaryPathInputStreamProvider temporaryPathInputStreamProvider = (TemporaryPathInputStreamProvider) binaryCell
-          .getInputStreamProvider();
+        // BLOB is internal to the SIARD and is stored inside table.xml, it was
+        // extracted to the LOB folder by prepareBinaryCells and the row keeps
+        // only a reference to it
+        final ViewerAbstractConfiguration configuration = ViewerFactory.getViewerConfiguration();
+        final Path storedPath = LobManagerUtils.getConsolidatedPath(configuration,
+          collectionConfiguration.getDatabaseUUID(), table.getId(), colIndex, actualViewerRow.getUuid());
         try {
-          final InputStream inputStream = temporaryPathInputStreamProvider.createInputStream();
-          byte[] bytes = IOUtils.toByteArray(inputStream);
-          final String encodeBase64String = Base64.encodeBase64String(bytes);
-          result.setValue(ViewerConstants.SIARD_EMBEDDED_LOB_PREFIX + encodeBase64String);
-          collectionConfiguration.getTableStatusByTableId(table.getId()).getColumnByIndex(colIndex)
-            .setExternalLob(false);
-          String index = getRowIndex(cell.getId());
-          String lobName = ViewerConstants.SIARD_RECORD_PREFIX + index + ViewerConstants.SIARD_LOB_FILE_EXTENSION;
-
-          detectMimeType(actualViewerRow, result, databasePath, collectionConfiguration, table, colIndex, lobName,
-            true);
-
-        } catch (ModuleException e) {
-          throw new ViewerException(e.getMessage(), e);
+          result.setValue(LobManagerUtils.getStoredLobReference(configuration, storedPath));
         } catch (IOException e) {
-          throw new ViewerException("Could not convert the LOB to BASE64", e);
+          throw new ViewerException("Could not reference the LOB in the LOB folder", e);
         }
+        String index = getRowIndex(cell.getId());
+        String lobName = ViewerConstants.SIARD_RECORD_PREFIX + index + ViewerConstants.SIARD_LOB_FILE_EXTENSION;
+
+        detectMimeType(actualViewerRow, result, siardArchive, collectionConfiguration, table, colIndex, lobName, true);
       } else if (binaryCell.getInputStreamProvider() instanceof PathInputStreamProvider) {
         // BLOB is external to the SIARD
 
@@ -822,18 +865,16 @@ public class ToolkitStructure2ViewerStructure {
         String index = getRowIndex(cell.getId());
         String lobName = ViewerConstants.SIARD_RECORD_PREFIX + index + ViewerConstants.SIARD_LOB_FILE_EXTENSION;
         result.setValue(siardFilesPath.relativize(lobPath).normalize().toString());
-        collectionConfiguration.getTableStatusByTableId(table.getId()).getColumnByIndex(colIndex).setExternalLob(true);
 
-        detectMimeType(actualViewerRow, result, databasePath, collectionConfiguration, table, colIndex, lobName, false);
+        detectMimeType(actualViewerRow, result, siardArchive, collectionConfiguration, table, colIndex, lobName, false);
 
       } else {
         // BLOB is internal to the SIARD but is stored outside the table.xml (Normal)
         String index = getRowIndex(cell.getId());
         String lobName = ViewerConstants.SIARD_RECORD_PREFIX + index + ViewerConstants.SIARD_LOB_FILE_EXTENSION;
         result.setValue(lobName);
-        collectionConfiguration.getTableStatusByTableId(table.getId()).getColumnByIndex(colIndex).setExternalLob(false);
 
-        detectMimeType(actualViewerRow, result, databasePath, collectionConfiguration, table, colIndex, lobName, true);
+        detectMimeType(actualViewerRow, result, siardArchive, collectionConfiguration, table, colIndex, lobName, true);
 
       }
     } else if (cell instanceof ComposedCell) {
@@ -865,63 +906,52 @@ public class ToolkitStructure2ViewerStructure {
     return result;
   }
 
-  private static void detectMimeType(ViewerRow row, ViewerCell cell, String databasePath,
+  private static void detectMimeType(ViewerRow row, ViewerCell cell, SiardArchiveHandle siardArchive,
     CollectionStatus collectionConfiguration, ViewerTable table, int colIndex, String lobName,
     boolean blobIsInsideSiard) {
     try {
       String mimeType;
       String fileExtension;
-      InputStream inputStream;
 
       TableStatus tableStatus = collectionConfiguration.getTableStatusByTableId(table.getId());
       String siardLobPath = LobManagerUtils.getZipFilePath(tableStatus, colIndex, lobName);
 
-      ZipFile zipFile = new ZipFile(databasePath);
-      ZipEntry entry = zipFile.getEntry(siardLobPath);
+      ZipEntry entry = siardArchive.getEntry(siardLobPath);
 
       String lobCellValue = cell.getValue();
 
-      if (entry != null && blobIsInsideSiard) {
-        inputStream = zipFile.getInputStream(entry);
-      } else if (blobIsInsideSiard) {
-        lobCellValue = lobCellValue.replace(ViewerConstants.SIARD_EMBEDDED_LOB_PREFIX, "");
-        inputStream = new ByteArrayInputStream(Base64.decodeBase64(lobCellValue.getBytes()));
-      } else {
-        lobCellValue = cell.getValue();
-        inputStream = new FileInputStream(lobCellValue);
+      // the detection from the magic bytes only reads the first bytes of the
+      // LOB
+      byte[] prefix;
+      try (InputStream inputStream = openLob(siardArchive, entry, blobIsInsideSiard, lobCellValue)) {
+        prefix = readPrefix(inputStream);
       }
 
-      mimeType = tika.detect(inputStream);
+      mimeType = tika.detect(prefix);
       fileExtension = MimeTypes.getDefaultMimeTypes().forName(mimeType).getExtension();
 
       if (StringUtils.isAllBlank(fileExtension)) {
-        try {
-          if (blobIsInsideSiard) {
-            inputStream = zipFile.getInputStream(entry);
-          } else {
-            inputStream = new FileInputStream(lobCellValue);
-          }
-
+        // the parsers need the whole LOB (e.g. the central directory at the end
+        // of an OOXML document), read again unless the prefix already is all
+        // of it; the text found is not kept
+        try (InputStream inputStream = prefix.length < MIME_TYPE_DETECTION_PREFIX_SIZE
+          ? new ByteArrayInputStream(prefix)
+          : openLob(siardArchive, entry, blobIsInsideSiard, lobCellValue)) {
           AutoDetectParser parser = new AutoDetectParser();
           Metadata metadata = new Metadata();
 
-          parser.parse(inputStream, new BodyContentHandler(), metadata, new ParseContext());
+          parser.parse(inputStream, new DefaultHandler(), metadata, new ParseContext());
           mimeType = metadata.get("Content-Type");
           fileExtension = MimeTypes.getDefaultMimeTypes().forName(mimeType).getExtension();
 
-        } catch (SAXException | TikaException e) {
+        } catch (SAXException | TikaException | IOException e) {
           LOGGER.error("Could not calculate mimeType for special extensions in the cell: [{}]", cell.getValue(), e);
         }
       }
 
-      zipFile.close();
-
       cell.setMimeType(mimeType);
       cell.setFileExtension(fileExtension);
 
-      collectionConfiguration.updateColumnMimeType(table.getUuid(), colIndex);
-      collectionConfiguration.updateLobFileName(table.getUuid(), colIndex);
-
       ViewerMimeType viewerMimeType = new ViewerMimeType(mimeType, fileExtension);
       String colName = collectionConfiguration.getTableStatusByTableId(table.getId()).getColumnByIndex(colIndex)
         .getId();
@@ -932,6 +962,22 @@ public class ToolkitStructure2ViewerStructure {
     }
   }
 
+  private static InputStream openLob(SiardArchiveHandle siardArchive, ZipEntry entry, boolean blobIsInsideSiard,
+    String lobCellValue) throws IOException {
+    if (entry != null && blobIsInsideSiard) {
+      return siardArchive.getInputStream(entry);
+    } else if (blobIsInsideSiard) {
+      return Files
+        .newInputStream(LobManagerUtils.getStoredLobPath(ViewerFactory.getViewerConfiguration(), lobCellValue));
+    } else {
+      return new FileInputStream(lobCellValue);
+    }
+  }
+
+  private static byte[] readPrefix(InputStream inputStream) throws IOException {
+    return IOUtils.toByteArray(new BoundedInputStream(inputStream, MIME_TYPE_DETECTION_PREFIX_SIZE));
+  }
+
   private static String getRowIndex(String cellId) throws ViewerException {
     final Matcher matcher = rowIndexPattern.matcher(cellId);
     if (matcher.matches()) {
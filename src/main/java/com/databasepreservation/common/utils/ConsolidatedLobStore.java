@@ -0,0 +1,120 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Stores the consolidated LOBs of a database by content, under
+ * lobs/&lt;db&gt;/store/ab/cd/&lt;sha-256&gt;.bin, so that equal LOBs are kept
+ * once. Each LOB is then linked (a hard link, or a copy where links are not
+ * supported) at its consolidated path (see
+ * {@link LobManagerUtils#getConsolidatedPath}), from where it is read.
+ *
+ * Files are written to a temporary file and moved into place, so that a
+ * consolidation that is stopped leaves no partial LOB behind.
+ */
+public class ConsolidatedLobStore {
+  private static final String STORE_FOLDER = "store";
+  private static final String TEMPORARY_PREFIX = ".tmp-";
+  private static final String LOB_EXTENSION = ".bin";
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  private final Path storePath;
+  private final RateLimiter rateLimiter;
+
+  /**
+   * @param rateLimiter
+   *          bytes stored per second, null for no limit
+   */
+  public ConsolidatedLobStore(ViewerAbstractConfiguration configuration, String databaseUUID,
+    RateLimiter rateLimiter) {
+    this.storePath = configuration.getLobPath().resolve(databaseUUID).resolve(STORE_FOLDER);
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * Stores the LOB, unless the same content is already stored, and links it at
+   * the consolidated path (replacing what was there)
+   *
+   * @return true if the content was not stored before
+   */
+  public boolean consolidate(InputStream inputStream, Path consolidatedPath) throws IOException {
+    Files.createDirectories(storePath);
+    Path temporary = Files.createTempFile(storePath, TEMPORARY_PREFIX, LOB_EXTENSION);
+    try {
+      HashCode hash;
+      try (HashingInputStream in = new HashingInputStream(Hashing.sha256(), inputStream);
+        OutputStream out = Files.newOutputStream(temporary)) {
+        copy(in, out);
+        hash = in.hash();
+      }
+
+      Path contentPath = getContentPath(hash.toString());
+      boolean stored = !Files.exists(contentPath);
+      if (stored) {
+        Files.createDirectories(contentPath.getParent());
+        // another LOB with the same content may be moved at the same time,
+        // either one is kept
+        Files.move(temporary, contentPath, StandardCopyOption.ATOMIC_MOVE);
+      }
+      link(contentPath, consolidatedPath);
+      return stored;
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private Path getContentPath(String hash) {
+    return storePath.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + LOB_EXTENSION);
+  }
+
+  private void link(Path contentPath, Path consolidatedPath) throws IOException {
+    Path parent = consolidatedPath.getParent();
+    Files.createDirectories(parent);
+    Path temporary = parent.resolve(TEMPORARY_PREFIX + consolidatedPath.getFileName());
+    Files.deleteIfExists(temporary);
+    try {
+      Files.createLink(temporary, contentPath);
+    } catch (UnsupportedOperationException | FileSystemException e) {
+      Files.copy(contentPath, temporary, StandardCopyOption.REPLACE_EXISTING);
+    }
+    try {
+      Files.move(temporary, consolidatedPath, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Copies block by block, each block taking its bytes from the rate limiter
+   * before it is written, so that the limit also holds while a large LOB is
+   * copied
+   */
+  private void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] block = new byte[BLOCK_SIZE];
+    int read;
+    while ((read = in.read(block)) >= 0) {
+      if (read > 0 && rateLimiter != null) {
+        rateLimiter.acquire(read);
+      }
+      out.write(block, 0, read);
+    }
+  }
+}
@@ -11,6 +11,7 @@ import com.databasepreservation.common.client.models.activity.logs.ActivityLogEn
 import com.databasepreservation.common.client.models.activity.logs.LogEntryState;
 import com.databasepreservation.common.client.models.user.User;
 import com.databasepreservation.common.server.ViewerFactory;
+import com.databasepreservation.common.server.activity.log.ActivityLogWriter;
 import com.databasepreservation.common.server.index.utils.SolrUtils;
 import org.roda.core.data.exceptions.GenericException;
 import org.slf4j.Logger;
@@ -73,6 +74,12 @@ public class ControllerAssistantUtils {
   }
 
   private static void registerAction(ActivityLogEntry logEntry) {
+    ActivityLogWriter activityLogWriter = ViewerFactory.getActivityLogWriter();
+    if (activityLogWriter != null) {
+      activityLogWriter.add(logEntry);
+      return;
+    }
+
     try {
       ViewerFactory.getConfigurationManager().addLogEntry(logEntry,
         ViewerFactory.getViewerConfiguration().getActivityLogsPath());
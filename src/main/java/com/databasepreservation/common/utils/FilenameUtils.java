@@ -7,6 +7,7 @@
  */
 package com.databasepreservation.common.utils;
 
+import com.databasepreservation.common.api.utils.ExportTemplatePlan;
 import com.databasepreservation.common.api.utils.HandlebarsUtils;
 import com.databasepreservation.common.client.ViewerConstants;
 import com.databasepreservation.common.client.models.status.collection.ColumnStatus;
@@ -37,4 +38,19 @@ public class FilenameUtils {
 
     return FilenameUtils.sanitizeFilename(handlebarsFilename);
   }
+
+  public static String getTemplateFilename(ViewerRow row, ExportTemplatePlan templatePlan, ColumnStatus binaryColumn) {
+    String defaultValue = ViewerConstants.SIARD_RECORD_PREFIX + row.getUuid() + ViewerConstants.SIARD_LOB_FILE_EXTENSION;
+    return getTemplateFilename(row, templatePlan, binaryColumn, defaultValue);
+  }
+
+  public static String getTemplateFilename(ViewerRow row, ExportTemplatePlan templatePlan, ColumnStatus binaryColumn,
+    String defaultValue) {
+    String handlebarsFilename = templatePlan.applyExportTemplate(row, binaryColumn.getColumnIndex());
+    if (ViewerStringUtils.isBlank(handlebarsFilename)) {
+      handlebarsFilename = defaultValue;
+    }
+
+    return FilenameUtils.sanitizeFilename(handlebarsFilename);
+  }
 }
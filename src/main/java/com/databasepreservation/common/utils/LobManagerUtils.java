@@ -7,8 +7,11 @@
  */
 package com.databasepreservation.common.utils;
 
+import java.io.IOException;
 import java.nio.file.Path;
 
+import org.apache.commons.codec.binary.Base64;
+
 import com.databasepreservation.common.client.ViewerConstants;
 import com.databasepreservation.common.client.models.status.collection.TableStatus;
 import com.databasepreservation.common.client.models.structure.ViewerRow;
@@ -19,10 +22,53 @@ import com.databasepreservation.common.server.ViewerConfiguration;
  */
 public class LobManagerUtils {
 
+  /**
+   * @return true if the LOB was stored inside table.xml, either extracted to
+   *         the LOB folder or (in databases ingested before) kept in the cell
+   *         as Base64
+   */
   public static boolean isLobEmbedded(TableStatus config, ViewerRow row, int columnIndex) {
     final String lobCellValue = getLobCellValue(config, row, columnIndex);
 
-    return lobCellValue.startsWith(ViewerConstants.SIARD_EMBEDDED_LOB_PREFIX);
+    return lobCellValue.startsWith(ViewerConstants.SIARD_STORED_LOB_PREFIX)
+      || lobCellValue.startsWith(ViewerConstants.SIARD_EMBEDDED_LOB_PREFIX);
+  }
+
+  public static boolean isLobStored(TableStatus config, ViewerRow row, int columnIndex) {
+    return getLobCellValue(config, row, columnIndex).startsWith(ViewerConstants.SIARD_STORED_LOB_PREFIX);
+  }
+
+  /**
+   * @return the cell value referencing a LOB extracted to the given path of
+   *         the LOB folder
+   */
+  public static String getStoredLobReference(ViewerAbstractConfiguration configuration, Path storedPath) {
+    Path relativePath = configuration.getLobPath().toAbsolutePath().normalize()
+      .relativize(storedPath.toAbsolutePath().normalize());
+    return ViewerConstants.SIARD_STORED_LOB_PREFIX + relativePath.toString().replace('\\', '/');
+  }
+
+  /**
+   * @return the path of the LOB referenced by the cell value
+   * @throws IOException
+   *           if the reference points outside of the LOB folder
+   */
+  public static Path getStoredLobPath(ViewerAbstractConfiguration configuration, String lobCellValue)
+    throws IOException {
+    Path lobPath = configuration.getLobPath().toAbsolutePath().normalize();
+    Path storedPath = lobPath
+      .resolve(lobCellValue.substring(ViewerConstants.SIARD_STORED_LOB_PREFIX.length())).normalize();
+    if (!storedPath.startsWith(lobPath)) {
+      throw new IOException("LOB reference outside of the LOB folder: " + lobCellValue);
+    }
+    return storedPath;
+  }
+
+  /**
+   * @return the bytes of a LOB kept in the cell as Base64
+   */
+  public static byte[] decodeEmbeddedLob(String lobCellValue) {
+    return Base64.decodeBase64(lobCellValue.substring(ViewerConstants.SIARD_EMBEDDED_LOB_PREFIX.length()));
   }
 
   public static String getLobCellValue(TableStatus config, ViewerRow row, int columnIndex) {
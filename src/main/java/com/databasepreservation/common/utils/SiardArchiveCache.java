@@ -0,0 +1,334 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.databasepreservation.common.server.ViewerConfiguration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Keeps the most recently used SIARD archives open, so that their central
+ * directory (which may list hundreds of thousands of LOBs) is not read again
+ * on every LOB download or export.
+ *
+ * Archives are leased and must be released by closing the {@link Lease}. An
+ * archive is reopened when the file changes (modification time or size) and
+ * dropped with {@link #invalidate(String)} before it is deleted or rewritten.
+ * At most siard.archives.cacheSize idle archives are kept and at most
+ * siard.archives.maxOpen are open at once (one file descriptor each): when
+ * all of them are leased, opening another archive waits for one to be
+ * released, and fails after a while. Archives dropped while leased are closed
+ * on their last release.
+ *
+ * Lookups and open archives are exposed in the dbvtk.siard.archives.requests
+ * (hit or miss) and dbvtk.siard.archives.open metrics.
+ */
+public class SiardArchiveCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SiardArchiveCache.class);
+
+  private static final Counter HITS = Metrics.counter("dbvtk.siard.archives.requests", "result", "hit");
+  private static final Counter MISSES = Metrics.counter("dbvtk.siard.archives.requests", "result", "miss");
+
+  private final int cacheSize;
+  private final int maxOpen;
+  private final long openTimeoutMs;
+  // access ordered, the eldest entry is the least recently used
+  private final Map<String, Archive> archives = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicInteger open = new AtomicInteger();
+
+  /**
+   * The cache used by {@link #acquire(String)}, configured on first use
+   */
+  private static class Shared {
+    private static final SiardArchiveCache INSTANCE = new SiardArchiveCache(
+      ViewerConfiguration.getInstance().getViewerConfigurationAsInt(8,
+        ViewerConfiguration.PROPERTY_SIARD_ARCHIVES_CACHE_SIZE),
+      ViewerConfiguration.getInstance().getViewerConfigurationAsInt(16,
+        ViewerConfiguration.PROPERTY_SIARD_ARCHIVES_MAX_OPEN),
+      TimeUnit.SECONDS.toMillis(30));
+
+    static {
+      Metrics.gauge("dbvtk.siard.archives.open", INSTANCE.open);
+    }
+  }
+
+  /**
+   * A cache of its own, not shared with {@link #acquire(String)}, used by the
+   * tests
+   */
+  SiardArchiveCache(int cacheSize, int maxOpen, long openTimeoutMs) {
+    this.cacheSize = Math.max(0, cacheSize);
+    this.maxOpen = Math.max(1, maxOpen);
+    this.openTimeoutMs = openTimeoutMs;
+  }
+
+  /**
+   * @return a lease of the open archive, to close when done reading it
+   * @throws IOException
+   *           if the archive could not be opened, or if siard.archives.maxOpen
+   *           archives stayed leased for too long
+   */
+  public static Lease acquire(String path) throws IOException {
+    return Shared.INSTANCE.lease(path);
+  }
+
+  /**
+   * Drops the archive at the given path, closing it as soon as it is no longer
+   * leased. To call before the file is deleted or rewritten.
+   */
+  public static void invalidate(String path) {
+    Shared.INSTANCE.drop(path);
+  }
+
+  Lease lease(String path) throws IOException {
+    Path file = Paths.get(path).toAbsolutePath().normalize();
+    String key = file.toString();
+    long lastModified = Files.getLastModifiedTime(file).toMillis();
+    long size = Files.size(file);
+
+    Archive archive;
+    boolean opener = false;
+    List<Archive> toClose = new ArrayList<>();
+    long deadline = System.currentTimeMillis() + openTimeoutMs;
+    synchronized (archives) {
+      while (true) {
+        archive = archives.get(key);
+        if (archive != null && (archive.lastModified != lastModified || archive.size != size)) {
+          // the file changed since it was opened
+          archives.remove(key);
+          archive.evicted = true;
+          if (archive.leases == 0) {
+            toClose.add(archive);
+          }
+          archive = null;
+        }
+        if (archive != null) {
+          break;
+        }
+
+        evictIdle(cacheSize - 1, maxOpen - 1, toClose);
+        if (open.get() - toClose.size() < maxOpen) {
+          archive = new Archive(key, lastModified, size);
+          if (cacheSize > 0) {
+            archives.put(key, archive);
+          } else {
+            archive.evicted = true;
+          }
+          // the handle is counted from now, while it is being opened
+          open.incrementAndGet();
+          opener = true;
+          break;
+        }
+
+        // every open archive is leased, wait for one to be released or closed
+        closeAll(toClose);
+        toClose.clear();
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          throw new IOException(
+            "Could not open SIARD archive " + path + ", " + maxOpen + " archives are already open and in use");
+        }
+        try {
+          archives.wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting to open SIARD archive " + path, e);
+        }
+      }
+      archive.leases++;
+    }
+
+    closeAll(toClose);
+
+    if (opener) {
+      MISSES.increment();
+      open(archive, file);
+    } else {
+      HITS.increment();
+    }
+
+    try {
+      return new Lease(this, archive, archive.zipFile.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      release(archive);
+      throw new IOException("Interrupted while opening SIARD archive " + path, e);
+    } catch (ExecutionException e) {
+      release(archive);
+      throw new IOException("Could not open SIARD archive " + path, e.getCause());
+    }
+  }
+
+  void drop(String path) {
+    if (path == null || path.isEmpty()) {
+      return;
+    }
+    String key = Paths.get(path).toAbsolutePath().normalize().toString();
+    Archive archive;
+    synchronized (archives) {
+      archive = archives.remove(key);
+      if (archive == null) {
+        return;
+      }
+      archive.evicted = true;
+      if (archive.leases > 0) {
+        return;
+      }
+    }
+    close(archive);
+  }
+
+  /**
+   * @return the number of archives open or being opened
+   */
+  int getOpenCount() {
+    return open.get();
+  }
+
+  private void open(Archive archive, Path file) {
+    try {
+      archive.zipFile.complete(new ZipFile(file.toFile()));
+    } catch (IOException | RuntimeException e) {
+      synchronized (archives) {
+        archives.remove(archive.key, archive);
+        archive.evicted = true;
+      }
+      open.decrementAndGet();
+      notifyClosed();
+      archive.zipFile.completeExceptionally(e);
+    }
+  }
+
+  private void release(Archive archive) {
+    synchronized (archives) {
+      archive.leases--;
+      if (archive.leases > 0) {
+        return;
+      }
+      if (!archive.evicted) {
+        // idle, it may be evicted to open another archive
+        archives.notifyAll();
+        return;
+      }
+    }
+    close(archive);
+  }
+
+  /**
+   * Removes the least recently used idle archives until at most maxIdle are
+   * cached and at most maxOpen are open. Must hold the lock.
+   */
+  private void evictIdle(int maxIdle, int maxOpen, List<Archive> toClose) {
+    int openCount = open.get() - toClose.size();
+    int idle = 0;
+    for (Archive archive : archives.values()) {
+      if (archive.leases == 0) {
+        idle++;
+      }
+    }
+
+    Iterator<Archive> iterator = archives.values().iterator();
+    while (iterator.hasNext() && (idle > maxIdle || openCount > maxOpen)) {
+      Archive archive = iterator.next();
+      if (archive.leases == 0) {
+        iterator.remove();
+        archive.evicted = true;
+        toClose.add(archive);
+        idle--;
+        openCount--;
+      }
+    }
+  }
+
+  private void closeAll(List<Archive> toClose) {
+    for (Archive archive : toClose) {
+      close(archive);
+    }
+  }
+
+  private void close(Archive archive) {
+    // archives that could not be opened were already discounted
+    if (archive.zipFile.isDone() && !archive.zipFile.isCompletedExceptionally()) {
+      ZipFile.closeQuietly(archive.zipFile.join());
+      open.decrementAndGet();
+      notifyClosed();
+      LOGGER.debug("Closed SIARD archive {}", archive.key);
+    }
+  }
+
+  private void notifyClosed() {
+    synchronized (archives) {
+      archives.notifyAll();
+    }
+  }
+
+  private static class Archive {
+    private final String key;
+    private final long lastModified;
+    private final long size;
+    private final CompletableFuture<ZipFile> zipFile = new CompletableFuture<>();
+    // guarded by archives
+    private int leases = 0;
+    private boolean evicted = false;
+
+    Archive(String key, long lastModified, long size) {
+      this.key = key;
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+  }
+
+  /**
+   * A leased SIARD archive, shared with other readers: entries may be read
+   * concurrently but the archive must not be closed directly
+   */
+  public static class Lease implements Closeable {
+    private final SiardArchiveCache cache;
+    private final Archive archive;
+    private final ZipFile zipFile;
+    private boolean released = false;
+
+    private Lease(SiardArchiveCache cache, Archive archive, ZipFile zipFile) {
+      this.cache = cache;
+      this.archive = archive;
+      this.zipFile = zipFile;
+    }
+
+    public ZipFile getZipFile() {
+      return zipFile;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (!released) {
+        released = true;
+        cache.release(archive);
+      }
+    }
+  }
+}
@@ -8,20 +8,28 @@
 package com.databasepreservation.modules.viewer;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.solr.client.solrj.SolrServerException;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.databasepreservation.common.client.models.status.collection.CollectionStatus;
 import com.databasepreservation.common.client.models.status.collection.LargeObjectConsolidateProperty;
 import com.databasepreservation.common.client.models.structure.ViewerDatabase;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
 import com.databasepreservation.common.client.models.structure.ViewerTable;
+import com.databasepreservation.common.exceptions.ViewerException;
+import com.databasepreservation.common.server.ViewerConfiguration;
 import com.databasepreservation.common.server.ViewerFactory;
 import com.databasepreservation.common.server.index.DatabaseRowsSolrManager;
+import com.databasepreservation.common.server.index.SolrBatchWriter;
 import com.databasepreservation.common.server.index.schema.SolrRowsCollectionRegistry;
+import com.databasepreservation.common.transformers.SiardArchiveHandle;
 import com.databasepreservation.common.transformers.ToolkitStructure2ViewerStructure;
 import com.databasepreservation.model.data.Row;
 import com.databasepreservation.model.exception.ModuleException;
@@ -35,19 +43,28 @@ import com.databasepreservation.modules.DefaultExceptionNormalizer;
  * @author Bruno Ferreira <bferreira@keep.pt>
  */
 public class DbvtkExportModule implements DatabaseFilterModule {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DbvtkExportModule.class);
+
+  // conversions that have started and not finished, by database UUID
+  private static final Map<String, DbvtkExportModule> RUNNING = new ConcurrentHashMap<>();
+
   private final DatabaseRowsSolrManager solrManager;
   private CollectionStatus collectionConfiguration;
   private ViewerDatabase retrieved;
   private ViewerTable currentTable;
+  private final Set<Integer> configuredLobColumns = new HashSet<>();
   private String databaseUUID;
+  private SolrBatchWriter rowsWriter;
+  private RowConversionStage conversionStage;
+  private SiardArchiveHandle siardArchive;
   private long rowIndex = 1;
 
   public DbvtkExportModule(String databaseUUID) {
     solrManager = ViewerFactory.getSolrManager();
     try {
       retrieved = solrManager.retrieve(ViewerDatabase.class, databaseUUID);
-      collectionConfiguration = ViewerFactory.getConfigurationManager().getConfigurationCollection(databaseUUID,
-        databaseUUID);
+      collectionConfiguration = ViewerFactory.getConfigurationManager()
+        .getConfigurationCollectionForUpdate(databaseUUID, databaseUUID);
     } catch (NotFoundException | GenericException e) {
       retrieved = null;
     }
@@ -88,7 +105,20 @@ public class DbvtkExportModule implements DatabaseFilterModule {
    */
   @Override
   public void handleStructure(DatabaseStructure structure) throws ModuleException {
+    RUNNING.put(databaseUUID, this);
     solrManager.addDatabaseRowCollection(databaseUUID);
+    siardArchive = SiardArchiveHandle.open(retrieved.getPath());
+    rowsWriter = solrManager.createRowsBatchWriter(databaseUUID);
+
+    ViewerConfiguration configuration = ViewerFactory.getViewerConfiguration();
+    int conversionThreads = configuration.getViewerConfigurationAsInt(Runtime.getRuntime().availableProcessors(),
+      ViewerConfiguration.PROPERTY_INGEST_CONVERSION_THREADS);
+    int maxPendingRows = configuration.getViewerConfigurationAsInt(1000,
+      ViewerConfiguration.PROPERTY_INGEST_CONVERSION_MAX_PENDING_ROWS);
+    if (conversionThreads > 1) {
+      conversionStage = new RowConversionStage(solrManager, databaseUUID, rowsWriter, conversionThreads,
+        maxPendingRows);
+    }
   }
 
   /**
@@ -118,6 +148,7 @@ public class DbvtkExportModule implements DatabaseFilterModule {
   public void handleDataOpenTable(String tableId) throws ModuleException {
     currentTable = retrieved.getMetadata().getTableById(tableId);
     solrManager.addTable(retrieved.getUuid(), currentTable);
+    configuredLobColumns.clear();
     // rowIndex = 1;
   }
 
@@ -131,8 +162,23 @@ public class DbvtkExportModule implements DatabaseFilterModule {
    */
   @Override
   public void handleDataRow(Row row) throws ModuleException {
-    solrManager.addRow(retrieved.getUuid(),
-      ToolkitStructure2ViewerStructure.getRow(collectionConfiguration, currentTable, row, rowIndex++,retrieved.getPath()));
+    // must be done before the next row is read, and before the row is handed
+    // to the conversion threads
+    ToolkitStructure2ViewerStructure.prepareBinaryCells(collectionConfiguration, currentTable, row, rowIndex,
+      configuredLobColumns);
+
+    if (conversionStage != null) {
+      conversionStage.submit(collectionConfiguration, currentTable, row, rowIndex++, siardArchive);
+      return;
+    }
+
+    ViewerRow viewerRow = ToolkitStructure2ViewerStructure.getRow(collectionConfiguration, currentTable, row,
+      rowIndex++, siardArchive);
+    if (rowsWriter != null) {
+      solrManager.addRow(retrieved.getUuid(), viewerRow, rowsWriter);
+    } else {
+      solrManager.addRow(retrieved.getUuid(), viewerRow);
+    }
   }
 
   /**
@@ -159,11 +205,19 @@ public class DbvtkExportModule implements DatabaseFilterModule {
   @Override
   public void handleDataCloseSchema(String schemaName) throws ModuleException {
     // committing + optimizing after whole database
+    if (conversionStage != null) {
+      conversionStage.await();
+    }
+
+    if (rowsWriter != null) {
+      rowsWriter.commit();
+      return;
+    }
 
     try {
-      ViewerFactory.getSolrClient().commit(SolrRowsCollectionRegistry.get(databaseUUID).getIndexName());
-    } catch (SolrServerException | IOException e) {
-      e.printStackTrace();
+      ViewerFactory.getSolrManager().commit(SolrRowsCollectionRegistry.get(databaseUUID).getIndexName());
+    } catch (ViewerException e) {
+      LOGGER.error("Could not commit the rows of database {}", databaseUUID, e);
     }
   }
 
@@ -175,11 +229,56 @@ public class DbvtkExportModule implements DatabaseFilterModule {
    */
   @Override
   public void finishDatabase() throws ModuleException {
+    if (conversionStage != null) {
+      conversionStage.close();
+    }
+    if (rowsWriter != null) {
+      rowsWriter.close();
+    }
+    closeSiardArchive();
+    RUNNING.remove(databaseUUID, this);
+    solrManager.finishBulkLoad(databaseUUID, true);
     solrManager.markDatabaseAsReady(databaseUUID);
     collectionConfiguration.setConsolidateProperty(LargeObjectConsolidateProperty.NOT_CONSOLIDATED);
     ViewerFactory.getConfigurationManager().updateCollectionStatus(databaseUUID, collectionConfiguration);
   }
 
+  /**
+   * Releases what is held by the conversion of the database, if it started and
+   * did not finish: the conversion threads are stopped, the rows not yet sent
+   * to Solr are discarded and the SIARD archive is closed. Does nothing after
+   * {@link #finishDatabase()}.
+   *
+   * @param databaseUUID
+   *          the database UUID
+   */
+  public static void abort(String databaseUUID) {
+    DbvtkExportModule module = RUNNING.remove(databaseUUID);
+    if (module == null) {
+      return;
+    }
+
+    LOGGER.info("Aborting the conversion of database {}", databaseUUID);
+    if (module.conversionStage != null) {
+      module.conversionStage.abort();
+    }
+    if (module.rowsWriter != null) {
+      module.rowsWriter.abort();
+    }
+    module.closeSiardArchive();
+  }
+
+  private void closeSiardArchive() {
+    if (siardArchive == null) {
+      return;
+    }
+    try {
+      siardArchive.close();
+    } catch (IOException e) {
+      LOGGER.debug("Could not close SIARD archive {}", retrieved.getPath(), e);
+    }
+  }
+
   @Override
   public void updateModuleConfiguration(String s, Map<String, String> map, Map<String, String> map1) {
     // do nothing
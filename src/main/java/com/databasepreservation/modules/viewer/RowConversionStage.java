@@ -0,0 +1,169 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.modules.viewer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.databasepreservation.common.client.models.status.collection.CollectionStatus;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.client.models.structure.ViewerTable;
+import com.databasepreservation.common.exceptions.ViewerException;
+import com.databasepreservation.common.server.index.DatabaseRowsSolrManager;
+import com.databasepreservation.common.server.index.SolrBatchWriter;
+import com.databasepreservation.common.transformers.SiardArchiveHandle;
+import com.databasepreservation.common.transformers.ToolkitStructure2ViewerStructure;
+import com.databasepreservation.model.data.Row;
+
+/**
+ * Converts toolkit rows into Solr documents using a pool of worker threads,
+ * between {@link DbvtkExportModule#handleDataRow(Row)} and the
+ * {@link SolrBatchWriter}.
+ *
+ * The row index is decided by the caller before the row is submitted, so the
+ * row UUIDs do not depend on the order in which the workers finish. The number
+ * of rows submitted but not yet converted is bounded, and the caller blocks
+ * when that limit is reached.
+ */
+public class RowConversionStage implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(RowConversionStage.class);
+
+  private final DatabaseRowsSolrManager solrManager;
+  private final String databaseUUID;
+  private final SolrBatchWriter writer;
+  private final ExecutorService executor;
+  private final Semaphore pendingRows;
+  private final int maxPendingRows;
+  private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+  public RowConversionStage(DatabaseRowsSolrManager solrManager, String databaseUUID, SolrBatchWriter writer,
+    int threads, int maxPendingRows) {
+    this.solrManager = solrManager;
+    this.databaseUUID = databaseUUID;
+    this.writer = writer;
+    this.maxPendingRows = Math.max(1, maxPendingRows);
+    this.pendingRows = new Semaphore(this.maxPendingRows);
+    this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ConversionThreadFactory(databaseUUID));
+  }
+
+  /**
+   * Queues a row to be converted and indexed, blocking while the maximum
+   * number of pending rows is reached.
+   *
+   * @throws ViewerException
+   *           if a previously submitted row could not be converted or indexed
+   */
+  public void submit(CollectionStatus collectionConfiguration, ViewerTable table, Row row, long rowIndex,
+    SiardArchiveHandle siardArchive) throws ViewerException {
+    checkFailure();
+    try {
+      pendingRows.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ViewerException("Interrupted while waiting to convert row " + rowIndex, e);
+    }
+
+    try {
+      executor.execute(() -> {
+        try {
+          if (failure.get() == null) {
+            ViewerRow viewerRow = ToolkitStructure2ViewerStructure.getRow(collectionConfiguration, table, row,
+              rowIndex, siardArchive);
+            if (writer != null) {
+              solrManager.addRow(databaseUUID, viewerRow, writer);
+            } else {
+              solrManager.addRow(databaseUUID, viewerRow);
+            }
+          }
+        } catch (ViewerException | RuntimeException e) {
+          LOGGER.error("Could not convert row {} of table {}", rowIndex, table.getId(), e);
+          failure.compareAndSet(null, e);
+        } finally {
+          pendingRows.release();
+        }
+      });
+    } catch (RuntimeException e) {
+      pendingRows.release();
+      throw new ViewerException("Could not submit row " + rowIndex + " for conversion", e);
+    }
+  }
+
+  /**
+   * Waits until every submitted row has been converted and handed to the
+   * writer.
+   */
+  public void await() throws ViewerException {
+    try {
+      pendingRows.acquire(maxPendingRows);
+      pendingRows.release(maxPendingRows);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ViewerException("Interrupted while waiting for row conversion to finish", e);
+    }
+    checkFailure();
+  }
+
+  @Override
+  public void close() throws ViewerException {
+    try {
+      await();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Stops converting rows without waiting for the pending ones, which are
+   * discarded. Used when the conversion of the database failed.
+   */
+  public void abort() {
+    failure.compareAndSet(null, new ViewerException("Conversion of database " + databaseUUID + " was aborted"));
+    executor.shutdownNow();
+    try {
+      // the writer and the SIARD archive are closed next, the workers must
+      // not be using them anymore
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOGGER.warn("Row conversion threads of database {} did not stop", databaseUUID);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.debug("Interrupted while waiting for the row conversion threads of {}", databaseUUID, e);
+    }
+  }
+
+  private void checkFailure() throws ViewerException {
+    Exception e = failure.get();
+    if (e != null) {
+      throw new ViewerException("Could not convert rows of database " + databaseUUID, e);
+    }
+  }
+
+  private static class ConversionThreadFactory implements ThreadFactory {
+    private final AtomicInteger counter = new AtomicInteger();
+    private final String databaseUUID;
+
+    ConversionThreadFactory(String databaseUUID) {
+      this.databaseUUID = databaseUUID;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "row-conversion-" + databaseUUID + "-" + counter.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.transformers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.mockito.Matchers.any;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.mockito.Mockito;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.databasepreservation.common.client.ViewerConstants;
+import com.databasepreservation.common.client.index.filter.Filter;
+import com.databasepreservation.common.client.index.filter.FilterParameter;
+import com.databasepreservation.common.client.index.filter.FiltersParameters;
+import com.databasepreservation.common.client.index.filter.SimpleFilterParameter;
+import com.databasepreservation.common.client.models.status.denormalization.DenormalizeConfiguration;
+import com.databasepreservation.common.client.models.status.denormalization.ReferencesConfiguration;
+import com.databasepreservation.common.client.models.status.denormalization.RelatedColumnConfiguration;
+import com.databasepreservation.common.client.models.status.denormalization.RelatedTablesConfiguration;
+import com.databasepreservation.common.client.models.structure.ViewerCell;
+import com.databasepreservation.common.client.models.structure.ViewerRow;
+import com.databasepreservation.common.server.index.DatabaseRowsSolrManager;
+import com.databasepreservation.common.server.index.utils.IterableIndexResult;
+
+/**
+ * Compares the nested documents built with the related rows indexes with the
+ * ones built with a query per row, over an in-memory table of customers with
+ * their orders and the items of each order.
+ */
+@Test(groups = {"unit"})
+public class DenormalizeTransformerTest {
+  private static final String DATABASE_UUID = "database";
+
+  @DataProvider
+  public Object[][] maxIndexedBytesProvider() {
+    // enough for the orders but not for the items too
+    long ordersOnly = RelatedRowsIndex.estimateSize(order("o1", "c1", "first")) * 6;
+    return new Object[][] {{Long.MAX_VALUE}, {ordersOnly}, {1L}};
+  }
+
+  @Test(description = "Nested documents built from the indexes match the per row queries", dataProvider = "maxIndexedBytesProvider", groups = {
+    "unit"})
+  public void testIndexedJoinMatchesPerRowQueries(long maxIndexedBytes) {
+    List<ViewerRow> customers = Arrays.asList(row("c1", "customers", "col0_s", "c1"),
+      row("c2", "customers", "col0_s", "c2"), row("c3", "customers", "col0_s", "c3"));
+
+    DenormalizeTransformer perRow = new DenormalizeTransformer(fakeSolrManager(), configuration(), DATABASE_UUID, 0);
+    DenormalizeTransformer indexed = new DenormalizeTransformer(fakeSolrManager(), configuration(), DATABASE_UUID,
+      maxIndexedBytes);
+
+    for (ViewerRow customer : customers) {
+      List<Map<String, Object>> expected = toMaps(perRow.createNestedDocuments(customer));
+      assertThat("customer " + customer.getUuid() + " has no nested documents", expected.size(), greaterThan(0));
+      assertThat("nested documents of " + customer.getUuid(), toMaps(indexed.createNestedDocuments(customer)),
+        equalTo(expected));
+    }
+  }
+
+  @Test(description = "Customers without orders get no nested documents", groups = {"unit"})
+  public void testRowWithoutRelatedRows() {
+    ViewerRow customer = row("c4", "customers", "col0_s", "c4");
+    DenormalizeTransformer indexed = new DenormalizeTransformer(fakeSolrManager(), configuration(), DATABASE_UUID,
+      Long.MAX_VALUE);
+    assertThat(indexed.createNestedDocuments(customer).isEmpty(), equalTo(true));
+  }
+
+  @Test(description = "Each related table is read once when it fits the memory limit", groups = {"unit"})
+  public void testRelatedTablesReadOnce() {
+    DatabaseRowsSolrManager solrManager = fakeSolrManager();
+    DenormalizeTransformer indexed = new DenormalizeTransformer(solrManager, configuration(), DATABASE_UUID,
+      Long.MAX_VALUE);
+    indexed.createNestedDocuments(row("c1", "customers", "col0_s", "c1"));
+    indexed.createNestedDocuments(row("c2", "customers", "col0_s", "c2"));
+
+    Mockito.verify(solrManager, Mockito.times(2)).findAllRows(any(), any(), any(), any());
+  }
+
+  private static DenormalizeConfiguration configuration() {
+    RelatedTablesConfiguration items = relatedTable("items-branch", "items", "col1_s", "col0_s");
+    items.getColumnsIncluded().add(column("col2_s"));
+
+    RelatedTablesConfiguration orders = relatedTable("orders-branch", "orders", "col1_s", "col0_s");
+    orders.getColumnsIncluded().add(column("col2_s"));
+    orders.addRelatedTable(items);
+
+    DenormalizeConfiguration configuration = new DenormalizeConfiguration();
+    configuration.setTableUUID("customers-uuid");
+    configuration.setTableID("customers");
+    configuration.setRelatedTables(new ArrayList<>());
+    configuration.addRelatedTable(orders);
+    return configuration;
+  }
+
+  private static RelatedTablesConfiguration relatedTable(String uuid, String tableId, String sourceSolrName,
+    String referencedSolrName) {
+    ReferencesConfiguration reference = new ReferencesConfiguration();
+    reference.setSourceTable(column(sourceSolrName));
+    reference.setReferencedTable(column(referencedSolrName));
+
+    RelatedTablesConfiguration relatedTable = new RelatedTablesConfiguration();
+    relatedTable.setUuid(uuid);
+    relatedTable.setTableID(tableId);
+    relatedTable.setTableUUID(tableId + "-uuid");
+    relatedTable.getReferences().add(reference);
+    return relatedTable;
+  }
+
+  private static RelatedColumnConfiguration column(String solrName) {
+    RelatedColumnConfiguration column = new RelatedColumnConfiguration();
+    column.setSolrName(solrName);
+    column.setColumnName(solrName);
+    return column;
+  }
+
+  private static List<ViewerRow> relatedRows() {
+    return Arrays.asList(order("o1", "c1", "first"), order("o2", "c1", "second"), order("o3", "c2", "third"),
+      order("o4", "c3", "fourth"), item("i1", "o1", "pen"), item("i2", "o1", "ink"), item("i3", "o2", "paper"),
+      item("i4", "o4", "desk"), item("i5", "missing", "orphan"));
+  }
+
+  private static ViewerRow order(String uuid, String customer, String description) {
+    return row(uuid, "orders", "col0_s", uuid, "col1_s", customer, "col2_s", description);
+  }
+
+  private static ViewerRow item(String uuid, String order, String name) {
+    return row(uuid, "items", "col0_s", uuid, "col1_s", order, "col2_s", name);
+  }
+
+  private static ViewerRow row(String uuid, String tableId, String... cells) {
+    ViewerRow row = new ViewerRow();
+    row.setUuid(uuid);
+    row.setTableId(tableId);
+    for (int i = 0; i < cells.length; i += 2) {
+      row.getCells().put(cells[i], new ViewerCell(cells[i + 1]));
+    }
+    return row;
+  }
+
+  /**
+   * @return a Solr manager whose searches run over {@link #relatedRows()},
+   *         returning the fields asked like Solr would
+   */
+  @SuppressWarnings("unchecked")
+  private static DatabaseRowsSolrManager fakeSolrManager() {
+    DatabaseRowsSolrManager solrManager = Mockito.mock(DatabaseRowsSolrManager.class);
+    Mockito.doAnswer(invocation -> {
+      Filter filter = (Filter) invocation.getArguments()[1];
+      List<String> fieldsToReturn = (List<String>) invocation.getArguments()[3];
+      List<ViewerRow> found = new ArrayList<>();
+      for (ViewerRow row : relatedRows()) {
+        if (matches(row, filter.getParameters())) {
+          found.add(project(row, fieldsToReturn));
+        }
+      }
+      IterableIndexResult result = Mockito.mock(IterableIndexResult.class);
+      Mockito.when(result.iterator()).thenReturn(found.iterator());
+      return result;
+    }).when(solrManager).findAllRows(any(), any(), any(), any());
+    return solrManager;
+  }
+
+  private static boolean matches(ViewerRow row, List<FilterParameter> parameters) {
+    for (FilterParameter parameter : parameters) {
+      if (parameter instanceof FiltersParameters) {
+        if (!matches(row, ((FiltersParameters) parameter).getValues())) {
+          return false;
+        }
+      } else {
+        SimpleFilterParameter simple = (SimpleFilterParameter) parameter;
+        String value = ViewerConstants.SOLR_ROWS_TABLE_ID.equals(simple.getName()) ? row.getTableId()
+          : row.getCells().containsKey(simple.getName()) ? row.getCells().get(simple.getName()).getValue() : null;
+        if (!simple.getValue().equals(value)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static ViewerRow project(ViewerRow row, List<String> fieldsToReturn) {
+    ViewerRow projected = new ViewerRow();
+    projected.setUuid(row.getUuid());
+    projected.setTableId(row.getTableId());
+    projected.setNestedOriginalUUID(row.getUuid());
+    projected.setNestedTableId(row.getTableId());
+    for (String field : fieldsToReturn) {
+      if (field.startsWith(ViewerConstants.SOLR_ROWS_NESTED_UUID + ":")) {
+        projected.setNestedUUID(field.substring(field.indexOf(':') + 1).replace("\"", ""));
+      } else if (row.getCells().containsKey(field)) {
+        projected.getCells().put(field, row.getCells().get(field));
+      }
+    }
+    return projected;
+  }
+
+  private static List<Map<String, Object>> toMaps(List<SolrInputDocument> documents) {
+    List<Map<String, Object>> maps = new ArrayList<>();
+    for (SolrInputDocument document : documents) {
+      Map<String, Object> map = new LinkedHashMap<>();
+      for (SolrInputField field : document) {
+        map.put(field.getName(), field.getValue());
+      }
+      maps.add(map);
+    }
+    return maps;
+  }
+}
@@ -0,0 +1,189 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.common.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.databasepreservation.utils.FileUtils;
+
+/**
+ * Leases of small ZIP archives written to a temporary folder, each test with a
+ * cache of its own.
+ */
+@Test(groups = {"unit"})
+public class SiardArchiveCacheTest {
+  private Path folder;
+  private ExecutorService executor;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    folder = Files.createTempDirectory("siard-archive-cache");
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    executor.shutdownNow();
+    FileUtils.deleteDirectoryRecursiveQuietly(folder);
+  }
+
+  @Test(description = "Opening more than maxOpen archives waits for one to be released", groups = {"unit"})
+  public void testMaxOpenWaitsForRelease() throws Exception {
+    SiardArchiveCache cache = new SiardArchiveCache(4, 2, TimeUnit.SECONDS.toMillis(10));
+    Path a = zip("a.zip", "a");
+    Path b = zip("b.zip", "b");
+    Path c = zip("c.zip", "c");
+
+    SiardArchiveCache.Lease leaseA = cache.lease(a.toString());
+    SiardArchiveCache.Lease leaseB = cache.lease(b.toString());
+    Future<SiardArchiveCache.Lease> leaseC = executor.submit(() -> cache.lease(c.toString()));
+
+    try {
+      leaseC.get(300, TimeUnit.MILLISECONDS);
+      throw new AssertionError("opened a third archive while two were leased");
+    } catch (TimeoutException e) {
+      // still waiting
+    }
+    assertThat(cache.getOpenCount(), equalTo(2));
+
+    leaseA.close();
+    try (SiardArchiveCache.Lease lease = leaseC.get(5, TimeUnit.SECONDS)) {
+      assertThat(lease.getZipFile().getEntry("c"), notNullValue());
+      assertThat(cache.getOpenCount(), lessThanOrEqualTo(2));
+    }
+    leaseB.close();
+  }
+
+  @Test(description = "Opening more than maxOpen archives fails when none is released in time", expectedExceptions = IOException.class, groups = {
+    "unit"})
+  public void testMaxOpenTimeout() throws IOException {
+    SiardArchiveCache cache = new SiardArchiveCache(4, 1, 200);
+    Path a = zip("a.zip", "a");
+    Path b = zip("b.zip", "b");
+
+    try (SiardArchiveCache.Lease lease = cache.lease(a.toString())) {
+      cache.lease(b.toString()).close();
+    } finally {
+      assertThat(cache.getOpenCount(), equalTo(1));
+    }
+  }
+
+  @Test(description = "Idle archives are closed least recently used first", groups = {"unit"})
+  public void testLeastRecentlyUsedEviction() throws IOException {
+    SiardArchiveCache cache = new SiardArchiveCache(2, 10, 1000);
+    Path a = zip("a.zip", "a");
+    Path b = zip("b.zip", "b");
+    Path c = zip("c.zip", "c");
+
+    ZipFile zipA = read(cache, a);
+    ZipFile zipB = read(cache, b);
+    // a becomes the most recently used, b is evicted to keep c
+    assertThat(read(cache, a), sameInstance(zipA));
+    read(cache, c);
+    assertThat(cache.getOpenCount(), equalTo(2));
+
+    assertThat(read(cache, a), sameInstance(zipA));
+    assertThat(read(cache, b), not(sameInstance(zipB)));
+    assertThat(cache.getOpenCount(), equalTo(2));
+  }
+
+  @Test(description = "An archive is reopened when its size changes", groups = {"unit"})
+  public void testReopenAfterSizeChange() throws IOException {
+    SiardArchiveCache cache = new SiardArchiveCache(2, 10, 1000);
+    Path a = zip("a.zip", "first");
+    ZipFile before = read(cache, a);
+
+    FileTime lastModified = Files.getLastModifiedTime(a);
+    zip("a.zip", "first", "second");
+    Files.setLastModifiedTime(a, lastModified);
+
+    try (SiardArchiveCache.Lease lease = cache.lease(a.toString())) {
+      assertThat(lease.getZipFile(), not(sameInstance(before)));
+      assertThat(lease.getZipFile().getEntry("second"), notNullValue());
+    }
+    assertThat(cache.getOpenCount(), equalTo(1));
+  }
+
+  @Test(description = "An archive is reopened when its modification time changes", groups = {"unit"})
+  public void testReopenAfterModificationTimeChange() throws IOException {
+    SiardArchiveCache cache = new SiardArchiveCache(2, 10, 1000);
+    Path a = zip("a.zip", "first");
+    ZipFile before = read(cache, a);
+
+    // same content and size
+    zip("a.zip", "first");
+    Files.setLastModifiedTime(a, FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis() + 10000));
+
+    try (SiardArchiveCache.Lease lease = cache.lease(a.toString())) {
+      assertThat(lease.getZipFile(), not(sameInstance(before)));
+      assertThat(lease.getZipFile().getEntry("first"), notNullValue());
+    }
+    assertThat(cache.getOpenCount(), equalTo(1));
+  }
+
+  @Test(description = "A leased archive that changed is closed on its last release", groups = {"unit"})
+  public void testChangedWhileLeased() throws IOException {
+    SiardArchiveCache cache = new SiardArchiveCache(2, 10, 1000);
+    Path a = zip("a.zip", "first");
+
+    try (SiardArchiveCache.Lease old = cache.lease(a.toString())) {
+      zip("a.zip", "first", "second");
+      Files.setLastModifiedTime(a, FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis() + 10000));
+      try (SiardArchiveCache.Lease lease = cache.lease(a.toString())) {
+        assertThat(lease.getZipFile(), not(sameInstance(old.getZipFile())));
+        assertThat(cache.getOpenCount(), equalTo(2));
+      }
+    }
+    assertThat(cache.getOpenCount(), equalTo(1));
+  }
+
+  private static ZipFile read(SiardArchiveCache cache, Path path) throws IOException {
+    try (SiardArchiveCache.Lease lease = cache.lease(path.toString())) {
+      return lease.getZipFile();
+    }
+  }
+
+  /**
+   * Writes a ZIP archive with an entry for each name, containing the name
+   */
+  private Path zip(String filename, String... entries) throws IOException {
+    Path path = folder.resolve(filename);
+    try (OutputStream out = Files.newOutputStream(path); ZipOutputStream zip = new ZipOutputStream(out)) {
+      for (String entry : entries) {
+        zip.putNextEntry(new ZipEntry(entry));
+        zip.write(entry.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+      }
+    }
+    return path;
+  }
+}
@@ -0,0 +1,201 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/dbptk-ui
+ */
+package com.databasepreservation.visualization.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.anyString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.mockito.Mockito;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.databasepreservation.common.api.utils.RangeDownload;
+
+/**
+ * Conditional and range requests over a download of the ten bytes
+ * "0123456789".
+ */
+@Test(groups = {"unit"})
+public class RangeDownloadTest {
+  private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+  private static final long LAST_MODIFIED = 1500000000000L;
+  private static final String ETAG = "\"v1\"";
+
+  @DataProvider
+  public Object[][] satisfiableRangesProvider() {
+    return new Object[][] {{"bytes=2-4", "bytes 2-4/10", "234"}, {"bytes=4-", "bytes 4-9/10", "456789"},
+      {"bytes=-3", "bytes 7-9/10", "789"}, {"bytes=-20", "bytes 0-9/10", "0123456789"},
+      {"bytes=8-20", "bytes 8-9/10", "89"}, {"bytes=9-9", "bytes 9-9/10", "9"}};
+  }
+
+  @Test(description = "Single, open-ended and suffix ranges get 206", dataProvider = "satisfiableRangesProvider", groups = {
+    "unit"})
+  public void testSatisfiableRange(String range, String contentRange, String body) throws IOException {
+    Response response = download().toResponse(request(headers(range), dates()));
+
+    assertThat(response.getStatus(), equalTo(Response.Status.PARTIAL_CONTENT.getStatusCode()));
+    assertThat(header(response, "Content-Range"), equalTo(contentRange));
+    assertThat(header(response, HttpHeaders.CONTENT_LENGTH), equalTo(String.valueOf(body.length())));
+    assertThat(body(response), equalTo(body));
+  }
+
+  @DataProvider
+  public Object[][] unsatisfiableRangesProvider() {
+    return new Object[][] {{"bytes=10-"}, {"bytes=10-12"}, {"bytes=5-2"}, {"bytes=-0"}};
+  }
+
+  @Test(description = "Ranges outside the content get 416", dataProvider = "unsatisfiableRangesProvider", groups = {
+    "unit"})
+  public void testUnsatisfiableRange(String range) {
+    Response response = download().toResponse(request(headers(range), dates()));
+
+    assertThat(response.getStatus(), equalTo(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode()));
+    assertThat(header(response, "Content-Range"), equalTo("bytes */10"));
+  }
+
+  @DataProvider
+  public Object[][] ignoredRangesProvider() {
+    return new Object[][] {{"bytes=0-1,4-5"}, {"bytes=-2, 0-1"}, {"items=0-1"}, {"bytes=a-b"}, {"bytes=-1-2"}};
+  }
+
+  @Test(description = "Multiple or invalid ranges fall back to the whole content", dataProvider = "ignoredRangesProvider", groups = {
+    "unit"})
+  public void testIgnoredRange(String range) throws IOException {
+    Response response = download().toResponse(request(headers(range), dates()));
+
+    assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+    assertThat(header(response, "Content-Range"), nullValue());
+    assertThat(body(response), equalTo("0123456789"));
+  }
+
+  @Test(description = "If-Range with the current ETag gets the range", groups = {"unit"})
+  public void testIfRangeMatching() throws IOException {
+    Map<String, String> headers = headers("bytes=0-1");
+    headers.put("If-Range", ETAG);
+    Response response = download().toResponse(request(headers, dates()));
+
+    assertThat(response.getStatus(), equalTo(Response.Status.PARTIAL_CONTENT.getStatusCode()));
+    assertThat(body(response), equalTo("01"));
+  }
+
+  @DataProvider
+  public Object[][] staleIfRangeProvider() {
+    return new Object[][] {{"\"v0\""}, {"W/" + ETAG}};
+  }
+
+  @Test(description = "If-Range with another or a weak ETag gets the whole content", dataProvider = "staleIfRangeProvider", groups = {
+    "unit"})
+  public void testIfRangeNotMatching(String ifRange) throws IOException {
+    Map<String, String> headers = headers("bytes=0-1");
+    headers.put("If-Range", ifRange);
+    Response response = download().toResponse(request(headers, dates()));
+
+    assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+    assertThat(header(response, "Content-Range"), nullValue());
+    assertThat(body(response), equalTo("0123456789"));
+  }
+
+  @Test(description = "If-Range with the Last-Modified date gets the range, another date the whole content", groups = {
+    "unit"})
+  public void testIfRangeDate() {
+    Map<String, String> headers = headers("bytes=0-1");
+    headers.put("If-Range", "Fri, 14 Jul 2017 02:40:00 GMT");
+
+    Map<String, Long> dates = dates();
+    dates.put("If-Range", LAST_MODIFIED);
+    assertThat(download().toResponse(request(headers, dates)).getStatus(),
+      equalTo(Response.Status.PARTIAL_CONTENT.getStatusCode()));
+
+    dates.put("If-Range", LAST_MODIFIED - 60000);
+    assertThat(download().toResponse(request(headers, dates)).getStatus(),
+      equalTo(Response.Status.OK.getStatusCode()));
+  }
+
+  @DataProvider
+  public Object[][] conditionalProvider() {
+    return new Object[][] {
+      // If-None-Match wins over If-Modified-Since, both ways
+      {ETAG, LAST_MODIFIED - 60000, 304}, {"\"v0\"", LAST_MODIFIED + 60000, 200},
+      {"\"v0\", W/" + ETAG, -1L, 304}, {"*", -1L, 304},
+      // If-Modified-Since alone, compared in seconds
+      {null, LAST_MODIFIED + 60000, 304}, {null, LAST_MODIFIED + 999, 304}, {null, LAST_MODIFIED - 1000, 200},
+      {null, -1L, 200}};
+  }
+
+  @Test(description = "If-None-Match and If-Modified-Since", dataProvider = "conditionalProvider", groups = {"unit"})
+  public void testConditional(String ifNoneMatch, long ifModifiedSince, int status) {
+    Map<String, String> headers = headers(null);
+    headers.put("If-None-Match", ifNoneMatch);
+    Map<String, Long> dates = dates();
+    dates.put("If-Modified-Since", ifModifiedSince);
+    Response response = download().toResponse(request(headers, dates));
+
+    assertThat(response.getStatus(), equalTo(status));
+    assertThat(header(response, HttpHeaders.ETAG), equalTo(ETAG));
+  }
+
+  @Test(description = "A range is not sent when the client copy is still valid", groups = {"unit"})
+  public void testNotModifiedBeforeRange() {
+    Map<String, String> headers = headers("bytes=0-1");
+    headers.put("If-None-Match", ETAG);
+    Response response = download().toResponse(request(headers, dates()));
+
+    assertThat(response.getStatus(), equalTo(Response.Status.NOT_MODIFIED.getStatusCode()));
+  }
+
+  private static RangeDownload download() {
+    return new RangeDownload("digits.txt", "text/plain", CONTENT.length, LAST_MODIFIED, "v1",
+      (out, offset, length) -> out.write(CONTENT, (int) offset, (int) length));
+  }
+
+  private static Map<String, String> headers(String range) {
+    Map<String, String> headers = new HashMap<>();
+    headers.put("Range", range);
+    return headers;
+  }
+
+  private static Map<String, Long> dates() {
+    return new HashMap<>();
+  }
+
+  /**
+   * @return a request with the given headers, where absent date headers are -1
+   *         like in the servlet API
+   */
+  private static HttpServletRequest request(Map<String, String> headers, Map<String, Long> dates) {
+    HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+    Mockito.when(request.getHeader(anyString())).thenAnswer(invocation -> headers.get(invocation.getArguments()[0]));
+    Mockito.when(request.getDateHeader(anyString()))
+      .thenAnswer(invocation -> dates.getOrDefault(invocation.getArguments()[0], -1L));
+    return request;
+  }
+
+  private static String header(Response response, String name) {
+    Object value = response.getMetadata().getFirst(name);
+    return value == null ? null : value.toString();
+  }
+
+  private static String body(Response response) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(out);
+    return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+  }
+}